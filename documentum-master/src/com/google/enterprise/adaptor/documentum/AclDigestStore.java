@@ -0,0 +1,221 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.enterprise.adaptor.Acl;
+import com.google.enterprise.adaptor.DocId;
+import com.google.enterprise.adaptor.Principal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent store of the digests of the ACLs pushed to the GSA,
+ * keyed by doc ID. The digests are used to skip pushing ACLs that
+ * have not changed since they were last pushed. Every ACL is still
+ * pushed when the last full push is older than the configured
+ * interval, so that ACLs lost by the GSA are eventually restored.
+ *
+ * The store is saved to a local {@link AtomicFile}, one
+ * {@code digest docid} pair per line, along with the time of the last
+ * full push.
+ */
+class AclDigestStore {
+  private static Logger logger =
+      Logger.getLogger(AclDigestStore.class.getName());
+
+  private static final String FULL_PUSH = "fullPush";
+
+  private final File file;
+  private final AtomicFile atomicFile;
+
+  /** The digests of the ACLs that have been pushed. */
+  private final Map<DocId, String> digests = new HashMap<DocId, String>();
+
+  /** The ACLs seen since the current full traversal started. */
+  private final Set<DocId> seen = new HashSet<DocId>();
+
+  /** The time the last full push completed, or zero if never. */
+  private long lastFullPush;
+
+  /** Whether the current full traversal pushes every ACL. */
+  private boolean isFullPush = true;
+
+  AclDigestStore(File file) {
+    this.file = file;
+    this.atomicFile = new AtomicFile(file);
+  }
+
+  /**
+   * Loads the digests from the file. A missing file is treated as an
+   * empty store.
+   */
+  synchronized void load() throws IOException {
+    digests.clear();
+    lastFullPush = 0;
+    try (BufferedReader reader =
+        Files.newBufferedReader(file.toPath(), UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int space = line.indexOf(' ');
+        if (space > 0 && line.substring(0, space).equals(FULL_PUSH)) {
+          try {
+            lastFullPush = Long.parseLong(line.substring(space + 1));
+          } catch (NumberFormatException e) {
+            logger.log(Level.FINE, "Skipping invalid full push time: {0}",
+                line);
+          }
+        } else if (space > 0) {
+          digests.put(new DocId(line.substring(space + 1)),
+              line.substring(0, space));
+        }
+      }
+    } catch (NoSuchFileException e) {
+      logger.log(Level.FINE, "No ACL digests found in {0}", file);
+    }
+    logger.log(Level.FINE, "Loaded {0} ACL digests from {1}",
+        new Object[] {digests.size(), file});
+  }
+
+  /** Saves the digests to the file, replacing it. */
+  synchronized void save() throws IOException {
+    try (Writer writer = new BufferedWriter(
+        new OutputStreamWriter(atomicFile.startWrite(), UTF_8))) {
+      writer.write(FULL_PUSH + " " + lastFullPush + "\n");
+      for (Map.Entry<DocId, String> entry : digests.entrySet()) {
+        writer.write(entry.getValue());
+        writer.write(' ');
+        writer.write(entry.getKey().getUniqueId());
+        writer.write('\n');
+      }
+    }
+    atomicFile.finishWrite();
+    logger.log(Level.FINE, "Saved {0} ACL digests to {1}",
+        new Object[] {digests.size(), file});
+  }
+
+  /**
+   * Starts a new full traversal, deciding whether it pushes every ACL
+   * or only the changed ACLs.
+   *
+   * @param now the current time, in milliseconds
+   * @param fullPushInterval the maximum time between full pushes,
+   *     in milliseconds
+   */
+  synchronized void startTraversal(long now, long fullPushInterval) {
+    isFullPush = (lastFullPush == 0 || now - lastFullPush >= fullPushInterval);
+    seen.clear();
+    logger.log(Level.FINE, "Starting a {0} ACL traversal",
+        isFullPush ? "full" : "differential");
+  }
+
+  /** Returns whether the current full traversal pushes every ACL. */
+  synchronized boolean isFullPush() {
+    return isFullPush;
+  }
+
+  /**
+   * Gets the digests of the ACLs that have changed since they were
+   * last pushed. The digests are not recorded until
+   * {@link #putDigests} is called after a successful push.
+   *
+   * @param acls the ACLs to check
+   * @return a map from the doc IDs of the new or changed ACLs to
+   *     their digests
+   */
+  synchronized Map<DocId, String> getChangedDigests(Map<DocId, Acl> acls) {
+    Map<DocId, String> changed = new LinkedHashMap<DocId, String>();
+    for (Map.Entry<DocId, Acl> entry : acls.entrySet()) {
+      String digest = digest(entry.getValue());
+      if (!digest.equals(digests.get(entry.getKey()))) {
+        changed.put(entry.getKey(), digest);
+      }
+      seen.add(entry.getKey());
+    }
+    return changed;
+  }
+
+  /** Records the digests of ACLs that have been pushed. */
+  synchronized void putDigests(Map<DocId, String> pushed) {
+    digests.putAll(pushed);
+  }
+
+  /**
+   * Completes a full traversal, removing the digests of the ACLs that
+   * were not seen during it, which have been deleted.
+   *
+   * @param now the current time, in milliseconds
+   */
+  synchronized void finishTraversal(long now) {
+    digests.keySet().retainAll(seen);
+    seen.clear();
+    if (isFullPush) {
+      lastFullPush = now;
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int size() {
+    return digests.size();
+  }
+
+  /** Computes a digest of the contents of an ACL. */
+  @VisibleForTesting
+  static String digest(Acl acl) {
+    Hasher hasher = Hashing.murmur3_128().newHasher()
+        .putString(acl.getInheritanceType().name(), UTF_8)
+        .putBoolean(acl.isEverythingCaseSensitive());
+    if (acl.getInheritFrom() != null) {
+      hasher.putString(acl.getInheritFrom().getUniqueId(), UTF_8);
+      if (acl.getInheritFromFragment() != null) {
+        hasher.putByte((byte) 0)
+            .putString(acl.getInheritFromFragment(), UTF_8);
+      }
+    }
+    for (Collection<? extends Principal> principals : Arrays.asList(
+        acl.getPermitUsers(), acl.getPermitGroups(),
+        acl.getDenyUsers(), acl.getDenyGroups())) {
+      hasher.putByte((byte) 1);
+      for (Principal principal : new TreeSet<Principal>(principals)) {
+        hasher.putByte((byte) 0)
+            .putString(principal.getName(), UTF_8)
+            .putByte((byte) 0)
+            .putString(principal.getNamespace(), UTF_8);
+      }
+    }
+    return hasher.hash().toString();
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+/**
+ * A query batch size that tunes itself to the time taken by each
+ * batch, by additive increase and multiplicative decrease.
+ *
+ * After a full batch that took less than the target time, the size
+ * grows by the minimum size. After a batch that took longer than the
+ * target time, or that failed, the size is halved. The size always
+ * stays between the minimum and the maximum.
+ */
+class AdaptiveBatchSize {
+  private final int minSize;
+  private final int maxSize;
+  private final long targetMillis;
+
+  private int size;
+
+  /**
+   * @param initialSize the starting batch size
+   * @param minSize the smallest batch size, which is also the step
+   *     by which the size grows
+   * @param maxSize the largest batch size
+   * @param targetMillis the longest time a batch should take, in
+   *     milliseconds
+   */
+  AdaptiveBatchSize(int initialSize, int minSize, int maxSize,
+      long targetMillis) {
+    if (minSize < 1 || minSize > maxSize) {
+      throw new IllegalArgumentException(
+          "Invalid batch size bounds: " + minSize + ", " + maxSize);
+    }
+    this.minSize = minSize;
+    this.maxSize = maxSize;
+    this.targetMillis = targetMillis;
+    this.size = Math.min(maxSize, Math.max(minSize, initialSize));
+  }
+
+  /** Gets the size to use for the next batch. */
+  int get() {
+    return size;
+  }
+
+  /**
+   * Adjusts the size for the outcome of a batch.
+   *
+   * @param elapsedMillis the time taken by the batch, in milliseconds
+   * @param failed whether the batch failed
+   * @param full whether the batch returned as many rows as it could,
+   *     so that a larger batch would have returned more
+   * @return the new size
+   */
+  int update(long elapsedMillis, boolean failed, boolean full) {
+    if (failed || elapsedMillis > targetMillis) {
+      size = Math.max(minSize, size / 2);
+    } else if (full) {
+      size = (int) Math.min((long) maxSize, (long) size + minSize);
+    }
+    return size;
+  }
+}
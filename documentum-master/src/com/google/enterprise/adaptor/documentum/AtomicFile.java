@@ -0,0 +1,58 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replaces the contents of a file atomically. The new contents are
+ * written to a temporary file beside it, which is synced to the disk
+ * and then renamed over the file, so that a crash leaves either the
+ * old or the new file.
+ */
+class AtomicFile {
+  private final File file;
+  private final File tempFile;
+
+  AtomicFile(File file) {
+    this.file = file;
+    this.tempFile = new File(file.getPath() + ".tmp");
+  }
+
+  /** Opens the temporary file for writing, truncating any old one. */
+  OutputStream startWrite() throws IOException {
+    return Files.newOutputStream(tempFile.toPath());
+  }
+
+  /**
+   * Syncs the temporary file, which must be closed, and replaces the
+   * file with it. Without the sync, the rename could reach the disk
+   * before the contents, leaving a truncated file after a power loss.
+   */
+  void finishWrite() throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE)) {
+      channel.force(true);
+    }
+    Files.move(tempFile.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
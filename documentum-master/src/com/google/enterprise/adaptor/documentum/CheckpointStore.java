@@ -0,0 +1,150 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.enterprise.adaptor.documentum.DocumentumAdaptor.Checkpoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent store of the incremental traversal checkpoints, keyed
+ * by traverser name, so that a restarted adaptor resumes where it
+ * stopped instead of starting a day in the past.
+ *
+ * The store is saved to a local binary {@link AtomicFile}. The
+ * r_modify_date of each checkpoint is saved as a number of
+ * milliseconds rather than as a date string.
+ */
+class CheckpointStore {
+  private static Logger logger =
+      Logger.getLogger(CheckpointStore.class.getName());
+
+  /** Identifies the file format, in case it ever changes. */
+  private static final int FILE_VERSION = 0x43500001;
+
+  private final File file;
+  private final AtomicFile atomicFile;
+
+  /** The checkpoints, by traverser name. */
+  private final Map<String, Checkpoint> checkpoints =
+      new LinkedHashMap<String, Checkpoint>();
+
+  /**
+   * Converts the checkpoint dates to and from milliseconds. The dates
+   * are in the server time zone, but converting them both ways in UTC
+   * loses nothing.
+   */
+  private final SimpleDateFormat dateFormat;
+
+  CheckpointStore(File file) {
+    this.file = file;
+    this.atomicFile = new AtomicFile(file);
+    dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    dateFormat.setLenient(false);
+  }
+
+  /**
+   * Loads the checkpoints from the file. A missing file is treated as
+   * an empty store.
+   */
+  synchronized void load() throws IOException {
+    checkpoints.clear();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        Files.newInputStream(file.toPath())))) {
+      if (in.readInt() != FILE_VERSION) {
+        throw new IOException("Unrecognized checkpoint file " + file);
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String name = in.readUTF();
+        String lastModified =
+            in.readBoolean() ? dateFormat.format(in.readLong()) : null;
+        String objectId = in.readBoolean() ? in.readUTF() : null;
+        checkpoints.put(name, new Checkpoint(lastModified, objectId));
+      }
+    } catch (NoSuchFileException e) {
+      logger.log(Level.FINE, "No checkpoints found in {0}", file);
+    }
+    logger.log(Level.FINE, "Loaded checkpoints from {0}: {1}",
+        new Object[] {file, checkpoints});
+  }
+
+  /** Saves the checkpoints to the file, replacing it. */
+  synchronized void save() throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        atomicFile.startWrite()))) {
+      out.writeInt(FILE_VERSION);
+      out.writeInt(checkpoints.size());
+      for (Map.Entry<String, Checkpoint> entry : checkpoints.entrySet()) {
+        Checkpoint checkpoint = entry.getValue();
+        out.writeUTF(entry.getKey());
+        out.writeBoolean(checkpoint.getLastModified() != null);
+        if (checkpoint.getLastModified() != null) {
+          out.writeLong(toMillis(checkpoint.getLastModified()));
+        }
+        out.writeBoolean(checkpoint.getObjectId() != null);
+        if (checkpoint.getObjectId() != null) {
+          out.writeUTF(checkpoint.getObjectId());
+        }
+      }
+    }
+    atomicFile.finishWrite();
+    logger.log(Level.FINEST, "Saved checkpoints to {0}: {1}",
+        new Object[] {file, checkpoints});
+  }
+
+  /**
+   * Gets the saved checkpoint of a traverser.
+   *
+   * @return the checkpoint, or {@code null} if none was saved
+   */
+  synchronized Checkpoint get(String name) {
+    return checkpoints.get(name);
+  }
+
+  /** Records the checkpoint of a traverser, to be saved later. */
+  synchronized void put(String name, Checkpoint checkpoint) {
+    checkpoints.put(name, checkpoint);
+  }
+
+  @VisibleForTesting
+  synchronized int size() {
+    return checkpoints.size();
+  }
+
+  private long toMillis(String lastModified) throws IOException {
+    try {
+      return dateFormat.parse(lastModified).getTime();
+    } catch (ParseException e) {
+      throw new IOException("Invalid checkpoint date: " + lastModified, e);
+    }
+  }
+}
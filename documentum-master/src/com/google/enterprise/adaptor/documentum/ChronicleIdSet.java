@@ -0,0 +1,112 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import com.google.common.primitives.UnsignedLongs;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The chronicle IDs of the objects already pushed in one incremental
+ * traversal, so that an object changed in more than one way is only
+ * pushed once.
+ *
+ * A Documentum ID is 16 hexadecimal digits, so the IDs are held as
+ * longs in an open-addressed hash table rather than as strings. Any
+ * other IDs are held as strings.
+ */
+class ChronicleIdSet {
+  /** Marks an empty slot. Zero is the null ID, which is never used. */
+  private static final long EMPTY = 0L;
+
+  private long[] table = new long[64];
+  private int size = 0;
+
+  private final Set<String> otherIds = new HashSet<String>();
+
+  /** Returns whether the chronicle ID is in the set. */
+  synchronized boolean contains(String chronicleId) {
+    long id = toLong(chronicleId);
+    if (id == EMPTY) {
+      return otherIds.contains(chronicleId);
+    }
+    return table[indexOf(table, id)] == id;
+  }
+
+  /**
+   * Adds a chronicle ID to the set.
+   *
+   * @return {@code true} if the ID was not already in the set
+   */
+  synchronized boolean add(String chronicleId) {
+    long id = toLong(chronicleId);
+    if (id == EMPTY) {
+      return otherIds.add(chronicleId);
+    }
+    int index = indexOf(table, id);
+    if (table[index] == id) {
+      return false;
+    }
+    table[index] = id;
+    size++;
+    // Keep the table at most half full, so that probes are short.
+    if (size * 2 > table.length) {
+      long[] oldTable = table;
+      table = new long[oldTable.length * 2];
+      for (long oldId : oldTable) {
+        if (oldId != EMPTY) {
+          table[indexOf(table, oldId)] = oldId;
+        }
+      }
+    }
+    return true;
+  }
+
+  synchronized int size() {
+    return size + otherIds.size();
+  }
+
+  /**
+   * Finds the slot holding the ID, or the empty slot where it would
+   * be added.
+   */
+  private static int indexOf(long[] table, long id) {
+    int mask = table.length - 1;
+    // Mix the bits, since the low bits of sequential IDs vary little.
+    long hash = id * 0x9E3779B97F4A7C15L;
+    int index = (int) (hash ^ (hash >>> 32)) & mask;
+    while (table[index] != EMPTY && table[index] != id) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  /**
+   * Converts a 16 digit hexadecimal ID to a long.
+   *
+   * @return the ID, or {@code EMPTY} if it is not a valid ID
+   */
+  private static long toLong(String chronicleId) {
+    if (chronicleId.length() != 16) {
+      return EMPTY;
+    }
+    try {
+      return UnsignedLongs.parseUnsignedLong(chronicleId, 16);
+    } catch (NumberFormatException e) {
+      return EMPTY;
+    }
+  }
+}
@@ -0,0 +1,202 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.enterprise.adaptor.GroupPrincipal;
+import com.google.enterprise.adaptor.Principal;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The members of the dm_world group, kept between full traversals so
+ * that the incremental traversal can apply the changes to the users
+ * instead of reading every user again.
+ *
+ * The members are held in parallel arrays sorted by user name, which
+ * take much less memory than a sorted map of the same users. Users are
+ * keyed by their dm_user user_name, because a user that is no longer
+ * active cannot be resolved to a principal in order to remove it.
+ */
+class DmWorldMembers {
+  /**
+   * The members read by a full rebuild, in the order they are read.
+   * They are appended to parallel arrays, which are sorted once when
+   * the rebuild completes and then become the members.
+   */
+  static class Builder {
+    private String[] userNames = new String[16];
+    private Principal[] principals = new Principal[16];
+    private int size = 0;
+
+    void add(String userName, Principal principal) {
+      if (size == userNames.length) {
+        int capacity = size + (size >> 1);
+        userNames = Arrays.copyOf(userNames, capacity);
+        principals = Arrays.copyOf(principals, capacity);
+      }
+      userNames[size] = userName;
+      principals[size] = principal;
+      size++;
+    }
+  }
+
+  private GroupPrincipal dmWorld;
+  private String[] userNames = new String[0];
+  private Principal[] principals = new Principal[0];
+  private int size = 0;
+
+  /** The time of the last full rebuild, or zero if never. */
+  private long lastRebuild = 0;
+
+  /** Returns whether the members have been read by a full rebuild. */
+  synchronized boolean isInitialized() {
+    return lastRebuild != 0;
+  }
+
+  /**
+   * Returns whether a full rebuild is needed, because there has not
+   * been one within the given interval.
+   *
+   * @param now the current time, in milliseconds
+   * @param rebuildInterval the maximum time between full rebuilds, in
+   *     milliseconds
+   */
+  synchronized boolean isRebuildDue(long now, long rebuildInterval) {
+    return lastRebuild == 0 || now - lastRebuild >= rebuildInterval;
+  }
+
+  /**
+   * Replaces the members with the ones read by a full rebuild. The
+   * arrays of the builder are used in place, so the builder must not
+   * be used again. If a user was read more than once, the last one
+   * read is kept.
+   *
+   * @param dmWorld the dm_world group principal
+   * @param members the members read by the rebuild
+   * @param now the current time, in milliseconds
+   */
+  synchronized void reset(GroupPrincipal dmWorld, Builder members,
+      long now) {
+    this.dmWorld = dmWorld;
+    userNames = members.userNames;
+    principals = members.principals;
+    sort(userNames, principals, 0, members.size,
+        new String[members.size], new Principal[members.size]);
+    size = 0;
+    for (int i = 0; i < members.size; i++) {
+      if (size > 0 && userNames[size - 1].equals(userNames[i])) {
+        size--;
+      }
+      userNames[size] = userNames[i];
+      principals[size] = principals[i];
+      size++;
+    }
+    Arrays.fill(userNames, size, userNames.length, null);
+    Arrays.fill(principals, size, principals.length, null);
+    lastRebuild = now;
+  }
+
+  /**
+   * Sorts a range of the parallel arrays by user name. The sort is a
+   * stable merge sort, so users read more than once stay in the order
+   * they were read.
+   */
+  private static void sort(String[] userNames, Principal[] principals,
+      int from, int to, String[] tempNames, Principal[] tempPrincipals) {
+    if (to - from < 2) {
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    sort(userNames, principals, from, mid, tempNames, tempPrincipals);
+    sort(userNames, principals, mid, to, tempNames, tempPrincipals);
+    System.arraycopy(userNames, from, tempNames, from, to - from);
+    System.arraycopy(principals, from, tempPrincipals, from, to - from);
+    int i = from;
+    int j = mid;
+    for (int k = from; k < to; k++) {
+      if (j >= to || (i < mid && tempNames[i].compareTo(tempNames[j]) <= 0)) {
+        userNames[k] = tempNames[i];
+        principals[k] = tempPrincipals[i];
+        i++;
+      } else {
+        userNames[k] = tempNames[j];
+        principals[k] = tempPrincipals[j];
+        j++;
+      }
+    }
+  }
+
+  /**
+   * Adds or updates an active user.
+   *
+   * @return {@code true} if the members changed
+   */
+  synchronized boolean put(String userName, Principal principal) {
+    int index = Arrays.binarySearch(userNames, 0, size, userName);
+    if (index >= 0) {
+      if (principals[index].equals(principal)) {
+        return false;
+      }
+      principals[index] = principal;
+      return true;
+    }
+    index = -(index + 1);
+    if (size == userNames.length) {
+      int capacity = Math.max(16, size + (size >> 1));
+      userNames = Arrays.copyOf(userNames, capacity);
+      principals = Arrays.copyOf(principals, capacity);
+    }
+    System.arraycopy(userNames, index, userNames, index + 1, size - index);
+    System.arraycopy(principals, index, principals, index + 1, size - index);
+    userNames[index] = userName;
+    principals[index] = principal;
+    size++;
+    return true;
+  }
+
+  /**
+   * Removes a user that is no longer active.
+   *
+   * @return {@code true} if the members changed
+   */
+  synchronized boolean remove(String userName) {
+    int index = Arrays.binarySearch(userNames, 0, size, userName);
+    if (index < 0) {
+      return false;
+    }
+    System.arraycopy(userNames, index + 1, userNames, index,
+        size - index - 1);
+    System.arraycopy(principals, index + 1, principals, index,
+        size - index - 1);
+    size--;
+    userNames[size] = null;
+    principals[size] = null;
+    return true;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  /** Gets the definition of the dm_world group to push. */
+  synchronized Map<GroupPrincipal, Set<Principal>> getGroupDefinition() {
+    return ImmutableMap.of(dmWorld,
+        ImmutableSet.copyOf(Arrays.asList(principals).subList(0, size)));
+  }
+}
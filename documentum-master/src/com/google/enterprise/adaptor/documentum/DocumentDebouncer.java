@@ -0,0 +1,178 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.enterprise.adaptor.DocIdPusher.Record;
+import com.google.enterprise.adaptor.documentum.DocumentumAdaptor.Checkpoint;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the records of modified documents until they have not changed
+ * for a quiet period, so that a document saved many times in a row is
+ * pushed once instead of once for each save.
+ *
+ * A document is held no longer than the maximum delay after its first
+ * change, however often it changes. If more documents are pending than
+ * the maximum, the ones held longest are released early. Pending
+ * documents are kept only in memory, so the checkpoint of the oldest
+ * one is kept, to resume from if they are lost.
+ */
+class DocumentDebouncer {
+  /** A document waiting for its quiet period to end. */
+  private static class Pending {
+    private final long firstChange;
+    private final Checkpoint checkpoint;
+    private long lastChange;
+    private List<Record> records;
+
+    Pending(long now, Checkpoint checkpoint, List<Record> records) {
+      this.firstChange = now;
+      this.checkpoint = checkpoint;
+      this.lastChange = now;
+      this.records = records;
+    }
+  }
+
+  private final long quietPeriod;
+  private final long maxDelay;
+  private final int maxPending;
+
+  /** The pending documents by chronicle ID, in order of first change. */
+  private final LinkedHashMap<String, Pending> pending =
+      new LinkedHashMap<String, Pending>();
+
+  /** Records released early because too many documents were pending. */
+  private final ListMultimap<String, Record> overflow =
+      LinkedListMultimap.create();
+
+  private long suppressedCount = 0;
+  private long releasedCount = 0;
+  private long forcedCount = 0;
+
+  /**
+   * @param quietPeriod the time without changes before a document is
+   *     pushed, in milliseconds
+   * @param maxDelay the maximum time a document is held after its
+   *     first change, in milliseconds
+   * @param maxPending the maximum number of documents held
+   */
+  DocumentDebouncer(long quietPeriod, long maxDelay, int maxPending) {
+    this.quietPeriod = quietPeriod;
+    this.maxDelay = maxDelay;
+    this.maxPending = maxPending;
+  }
+
+  /**
+   * Holds the records for a changed document, replacing any records
+   * already held for it.
+   *
+   * @param chronicleId the chronicle ID of the document
+   * @param records the records for the paths of the document
+   * @param checkpoint a checkpoint before the change, from which the
+   *     change would be read again. The checkpoints must be added in
+   *     the order they are traversed.
+   * @param now the current time, in milliseconds
+   */
+  synchronized void add(String chronicleId, List<Record> records,
+      Checkpoint checkpoint, long now) {
+    Pending document = pending.get(chronicleId);
+    if (document != null) {
+      suppressedCount++;
+      document.lastChange = now;
+      document.records = records;
+      return;
+    }
+    pending.put(chronicleId, new Pending(now, checkpoint, records));
+    if (pending.size() > maxPending) {
+      Iterator<Map.Entry<String, Pending>> iterator =
+          pending.entrySet().iterator();
+      Map.Entry<String, Pending> entry = iterator.next();
+      overflow.putAll(entry.getKey(), entry.getValue().records);
+      iterator.remove();
+      forcedCount++;
+    }
+  }
+
+  /**
+   * Removes and returns the records of the documents that are ready
+   * to push, because they have been quiet for the quiet period, held
+   * for the maximum delay, or released early.
+   *
+   * @param now the current time, in milliseconds
+   * @return the records, by chronicle ID
+   */
+  synchronized ListMultimap<String, Record> release(long now) {
+    ListMultimap<String, Record> records =
+        LinkedListMultimap.create(overflow);
+    overflow.clear();
+    Iterator<Map.Entry<String, Pending>> iterator =
+        pending.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Pending> entry = iterator.next();
+      Pending document = entry.getValue();
+      if (now - document.lastChange >= quietPeriod) {
+        releasedCount++;
+      } else if (now - document.firstChange >= maxDelay) {
+        forcedCount++;
+      } else {
+        continue;
+      }
+      records.putAll(entry.getKey(), document.records);
+      iterator.remove();
+    }
+    return records;
+  }
+
+  /**
+   * Gets the checkpoint before the oldest document being held, or
+   * {@code null} if none are held. Resuming from this checkpoint
+   * reads all of the held documents again.
+   */
+  synchronized Checkpoint getOldestCheckpoint() {
+    if (pending.isEmpty()) {
+      return null;
+    }
+    return pending.values().iterator().next().checkpoint;
+  }
+
+  /** Gets the number of documents being held. */
+  synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  /** Gets the number of changes merged into a document already held. */
+  synchronized long getSuppressedCount() {
+    return suppressedCount;
+  }
+
+  /** Gets the number of documents released after their quiet period. */
+  synchronized long getReleasedCount() {
+    return releasedCount;
+  }
+
+  /**
+   * Gets the number of documents released before their quiet period
+   * ended, because of the maximum delay or the maximum pending.
+   */
+  synchronized long getForcedCount() {
+    return forcedCount;
+  }
+}
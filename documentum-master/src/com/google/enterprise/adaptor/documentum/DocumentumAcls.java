@@ -16,8 +16,15 @@ package com.google.enterprise.adaptor.documentum;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.singletonList;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.enterprise.adaptor.Acl;
 import com.google.enterprise.adaptor.DocId;
 import com.google.enterprise.adaptor.Principal;
@@ -25,18 +32,20 @@ import com.google.enterprise.adaptor.documentum.DocumentumAdaptor.CaseSensitivit
 import com.google.enterprise.adaptor.documentum.DocumentumAdaptor.Checkpoint;
 
 import com.documentum.com.IDfClientX;
-import com.documentum.fc.client.DfIdNotFoundException;
 import com.documentum.fc.client.IDfACL;
 import com.documentum.fc.client.IDfCollection;
 import com.documentum.fc.client.IDfPermitType;
 import com.documentum.fc.client.IDfQuery;
 import com.documentum.fc.client.IDfSession;
 import com.documentum.fc.common.DfException;
-import com.documentum.fc.common.DfId;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -55,6 +64,29 @@ class DocumentumAcls {
   private static Logger logger =
       Logger.getLogger(DocumentumAcls.class.getName());
 
+  /**
+   * Maximum number of ACL IDs in the IN list of a single accessors
+   * query, to keep the DQL statement to a reasonable length.
+   */
+  private static final int MAX_IN_LIST_SIZE = 250;
+
+  /**
+   * Receives the Adaptor Acls for each Documentum ACL traversed by
+   * {@link #getAcls}, instead of adding them to the map.
+   */
+  interface AclListener {
+    /**
+     * @param acls the chain of Adaptor Acls for one Documentum ACL
+     * @param checkpoint the checkpoint for this ACL
+     * @throws DfException if the Acls could not be consumed
+     */
+    void aclRead(Map<DocId, Acl> acls, Checkpoint checkpoint)
+        throws DfException;
+  }
+
+  /** Shares identical Acls, such as those of ACLs cloned from templates. */
+  private static final Interner<Acl> aclInterner = Interners.newWeakInterner();
+
   private enum State { GET_ACLS, GET_UPDATE_ACLS };
 
   private State state = null;
@@ -66,6 +98,9 @@ class DocumentumAcls {
 
   private Checkpoint aclCheckpoint;
 
+  private AclListener aclListener = null;
+  private boolean sharedRequiredGroupAcls = false;
+
   DocumentumAcls(IDfClientX dmClientX, IDfSession dmSession,
       Principals principals, CaseSensitivityType caseSensitivityType) {
     this.dmClientX = checkNotNull(dmClientX, "dmClientX may not be null");
@@ -74,13 +109,30 @@ class DocumentumAcls {
     this.caseSensitivityType = caseSensitivityType;
   }
 
-  private IDfQuery makeAclQuery(String aclId, int batchSize) {
+  /**
+   * Sets whether the Adaptor Acls for required groups and required
+   * group sets are shared by all ACLs with the same required groups.
+   * Shared Acls are named by a hash of the ordered required groups,
+   * rather than by the ACL ID.
+   */
+  void setSharedRequiredGroupAcls(boolean sharedRequiredGroupAcls) {
+    this.sharedRequiredGroupAcls = sharedRequiredGroupAcls;
+  }
+
+  /**
+   * Sets a listener to stream the ACLs traversed by {@link #getAcls}.
+   * The ACLs are then not added to the map passed to {@code getAcls}.
+   */
+  void setAclListener(AclListener aclListener) {
+    this.aclListener = aclListener;
+  }
+
+  private IDfQuery makeAclQuery(String aclId, String endAclId,
+      int batchSize) {
     IDfQuery query = dmClientX.getQuery();
     StringBuilder queryStr = new StringBuilder()
-      .append("SELECT r_object_id FROM dm_acl");
-    if (aclId != null) {
-      queryStr.append(" WHERE r_object_id > '").append(aclId).append("'");
-    }
+      .append("SELECT r_object_id FROM dm_acl")
+      .append(makeRangeWhereClause(aclId, endAclId));
     queryStr.append(" ORDER BY r_object_id");
     if (batchSize > 0) {
       queryStr.append(" ENABLE(RETURN_TOP ").append(batchSize).append(")");
@@ -90,6 +142,52 @@ class DocumentumAcls {
     return query;
   }
 
+  /**
+   * Builds the DQL query to retrieve the accessors of the ACLs
+   * matching the given WHERE clause, one accessor per row.
+   *
+   * DQL queries that return repeating attributes do not work
+   * properly on a DB2 back-end, and RETURN_TOP limits the rows
+   * generated by ROW_BASED, so callers restrict the ACLs with a
+   * bounded WHERE clause rather than a batch size.
+   *
+   * @param whereClause a DQL WHERE clause, or an empty string
+   */
+  private IDfQuery makeAclAccessorsQuery(String whereClause) {
+    IDfQuery query = dmClientX.getQuery();
+    StringBuilder queryStr = new StringBuilder()
+        .append("SELECT r_object_id, r_accessor_count, i_position, ")
+        .append("r_accessor_name, r_accessor_permit, r_permit_type, ")
+        .append("r_is_group FROM dm_acl")
+        .append(whereClause)
+        // i_position is negative, and counts down from -1 for index 0.
+        .append(" ORDER BY r_object_id, i_position DESC ENABLE(ROW_BASED)");
+    logger.log(Level.FINER, "ACL accessors query: {0}", queryStr);
+    query.setDQL(queryStr.toString());
+    return query;
+  }
+
+  /**
+   * Builds a DQL WHERE clause for the ACLs after the given start ID,
+   * up to and including the given end ID.
+   *
+   * @param aclId the start ACL ID, exclusive, or {@code null}
+   * @param endAclId the end ACL ID, inclusive, or {@code null}
+   * @return a DQL WHERE clause, or an empty string if both IDs are
+   *     {@code null}
+   */
+  private static String makeRangeWhereClause(String aclId, String endAclId) {
+    StringBuilder whereClause = new StringBuilder();
+    if (aclId != null) {
+      whereClause.append(" WHERE r_object_id > '").append(aclId).append("'");
+    }
+    if (endAclId != null) {
+      whereClause.append((aclId == null) ? " WHERE " : " AND ")
+          .append("r_object_id <= '").append(endAclId).append("'");
+    }
+    return whereClause.toString();
+  }
+
   private IDfQuery makeUpdateAclQuery(Checkpoint checkpoint, int batchSize)
       throws DfException {
     //TODO(sveldurthi): Create utility function for getServerVersion().matches()
@@ -131,6 +229,11 @@ class DocumentumAcls {
    * An ACL can be applied to one or many content objects. Or, each object 
    * can have its own individual ACL applied to it. So need to send all
    * the ACLs in Documentum to GSA.
+   *
+   * The accessors are read with a single ROW_BASED query rather than
+   * fetching each ACL object. When fetching ACLs in batches, we first
+   * get a batch-sized range of object IDs for use in a BETWEEN query,
+   * because RETURN_TOP would limit the rows generated by ROW_BASED.
    * 
    * @param checkpoint the last checkpoint
    * @param batchSize number of ACLs to fetch in each query
@@ -141,40 +244,81 @@ class DocumentumAcls {
    */
   public boolean getAcls(Checkpoint checkpoint, int batchSize,
       Map<DocId, Acl> aclMap) throws DfException {
+    return getAcls(checkpoint, null, batchSize, aclMap);
+  }
+
+  /**
+   * Returns the Documentum ACLs in a range of object IDs in map with
+   * doc id and Acl.
+   *
+   * @param checkpoint the last checkpoint
+   * @param endObjectId the last ACL ID in the range, inclusive, or
+   *     {@code null} to continue through the last ACL
+   * @param batchSize number of ACLs to fetch in each query
+   * @param aclMap a map of Adaptor Acls for the Documentum ACLs
+   * @return {@code true} if the traversal of the range is complete,
+   *     or {@code false} otherwise
+   * @throws DfException if error in getting ACL information.
+   * @see #getAcls(Checkpoint, int, Map)
+   */
+  public boolean getAcls(Checkpoint checkpoint, String endObjectId,
+      int batchSize, Map<DocId, Acl> aclMap) throws DfException {
     checkState(state != State.GET_UPDATE_ACLS,
         "Only one of getAcls or getUpdateAcls may be called.");
     state = State.GET_ACLS;
 
     aclCheckpoint = checkpoint;
-    IDfQuery query = makeAclQuery(checkpoint.getObjectId(), batchSize);
-    IDfCollection dmAclCollection =
-        query.execute(dmSession, IDfQuery.DF_EXECREAD_QUERY);
-    try {
-      boolean isComplete = true;
-      while (dmAclCollection.next()) {
-        isComplete = (batchSize == 0);
-        String objectId = dmAclCollection.getString("r_object_id");
-        logger.log(Level.FINE, "ACL ID: {0}", objectId);
+    String startObjectId = checkpoint.getObjectId();
+    String stopObjectId = null;
+    if (batchSize > 0) {
+      IDfQuery query = makeAclQuery(startObjectId, endObjectId, batchSize);
+      IDfCollection dmAclCollection =
+          query.execute(dmSession, IDfQuery.DF_EXECREAD_QUERY);
+      try {
+        while (dmAclCollection.next()) {
+          String objectId = dmAclCollection.getString("r_object_id");
+          if (stopObjectId == null) {
+            startObjectId = objectId;
+          }
+          stopObjectId = objectId;
+        }
+      } catch (DfException e) {
+        if (stopObjectId == null) {
+          throw e;
+        } else {
+          // Continue on with a reduced BETWEEN range.
+          logger.log(Level.WARNING,
+              "Processing through ACL " + stopObjectId + " after error.", e);
+        }
+      } finally {
         try {
-          IDfACL dmAcl = (IDfACL) dmSession.getObject(new DfId(objectId));
-          addAclChainToMap(dmAcl, objectId, aclMap);
-        } catch (DfIdNotFoundException e) {
-          logger.log(Level.FINE,
-              "Skipping ACL {0}: {1}", new Object[] {objectId, e});
+          dmAclCollection.close();
+        } catch (DfException e) {
+          logger.log(Level.WARNING, "Error closing collection", e);
         }
-        aclCheckpoint = new Checkpoint(objectId);
       }
-      if (isComplete) {
-        // for a successful completion, reset to full.
+      if (stopObjectId == null) {
+        // No more ACLs. For a successful completion, reset to full.
         aclCheckpoint = Checkpoint.full();
+        return true;
       }
-      return isComplete;
-    } finally {
-      try {
-        dmAclCollection.close();
-      } catch (DfException e) {
-        logger.log(Level.WARNING, "Error closing collection", e);
-      }
+    }
+
+    String whereClause;
+    if (stopObjectId != null) {
+      whereClause = " WHERE r_object_id BETWEEN '" + startObjectId
+          + "' AND '" + stopObjectId + "'";
+    } else {
+      whereClause = makeRangeWhereClause(startObjectId, endObjectId);
+    }
+    loadAcls(makeAclAccessorsQuery(whereClause), aclMap, true);
+    if (stopObjectId == null) {
+      // for a successful completion, reset to full.
+      aclCheckpoint = Checkpoint.full();
+      return true;
+    } else {
+      aclCheckpoint = new Checkpoint(stopObjectId);
+      return false;
     }
   }
 
@@ -186,6 +330,10 @@ class DocumentumAcls {
    * can have it's own individual ACL applied to it. So this method needs to
    * send all the ACLs in Documentum to GSA.
    *
+   * The modified ACLs are collected from the audit trail first, and
+   * then their accessors are read with ROW_BASED queries on lists of
+   * ACL IDs rather than fetching each ACL object.
+   *
    * @param checkpoint the last checkpoint
    * @param batchSize number of ACLs to fetch in each query
    * @param aclMap a map of Adaptor Acls for all Documentum ACLs.
@@ -201,13 +349,16 @@ class DocumentumAcls {
 
     aclCheckpoint = checkpoint;
     HashSet<String> aclModifiedIds = new HashSet<String>();
+    Set<String> aclSavedIds = new LinkedHashSet<String>();
+    Checkpoint eventCheckpoint = checkpoint;
     String aclModifiedDate = checkpoint.getLastModified();
     String aclModifyId = checkpoint.getObjectId();
+    boolean isComplete = true;
+    DfException caughtException = null;
     IDfQuery query = makeUpdateAclQuery(checkpoint, batchSize);
     IDfCollection dmAclCollection =
         query.execute(dmSession, IDfQuery.DF_EXECREAD_QUERY);
     try {
-      boolean isComplete = true;
       while (dmAclCollection.next()) {
         isComplete = (batchSize == 0);
         aclModifiedDate = dmAclCollection.getString("time_stamp_utc_str");
@@ -225,20 +376,14 @@ class DocumentumAcls {
           if ("dm_destroy".equalsIgnoreCase(eventName)) {
             aclMap.put(new DocId(modifyObjectId), Acl.EMPTY);
           } else {
-            try {
-              IDfACL dmAcl =
-                  (IDfACL) dmSession.getObject(new DfId(modifyObjectId));
-              addAclChainToMap(dmAcl, modifyObjectId, aclMap);
-            } catch (DfIdNotFoundException e) {
-              logger.log(Level.FINER,
-                  "Deleting ACL {0}: {1}", new Object[] {modifyObjectId, e});
-              aclMap.put(new DocId(modifyObjectId), Acl.EMPTY);
-            }
+            aclSavedIds.add(modifyObjectId);
           }
         }
-        aclCheckpoint = new Checkpoint(aclModifiedDate, aclModifyId);
+        eventCheckpoint = new Checkpoint(aclModifiedDate, aclModifyId);
       }
-      return isComplete;
+    } catch (DfException e) {
+      // Load the ACLs for the events we have processed before rethrowing.
+      caughtException = e;
     } finally {
       try {
         dmAclCollection.close();
@@ -246,6 +391,74 @@ class DocumentumAcls {
         logger.log(Level.WARNING, "Error closing collection", e);
       }
     }
+
+    Iterator<String> iterator = aclSavedIds.iterator();
+    while (iterator.hasNext()) {
+      StringBuilder inList = new StringBuilder();
+      for (int i = 0; i < MAX_IN_LIST_SIZE && iterator.hasNext(); i++) {
+        inList.append((i == 0) ? "'" : ", '").append(iterator.next())
+            .append("'");
+      }
+      loadAcls(makeAclAccessorsQuery(" WHERE r_object_id IN (" + inList
+          + ")"), aclMap, false);
+    }
+    for (String objectId : aclSavedIds) {
+      DocId docId = new DocId(objectId);
+      if (!aclMap.containsKey(docId)) {
+        logger.log(Level.FINER, "Deleting ACL {0}: not found", objectId);
+        aclMap.put(docId, Acl.EMPTY);
+      }
+    }
+    aclCheckpoint = eventCheckpoint;
+
+    if (caughtException != null) {
+      throw caughtException;
+    }
+    return isComplete;
+  }
+
+  /**
+   * Splits the ACL IDs into contiguous ranges with roughly the same
+   * number of ACLs in each range.
+   *
+   * @param rangeCount the maximum number of ranges
+   * @return the last ACL ID in each range, inclusive, except for the
+   *     final range, which continues through the last ACL
+   * @throws DfException if error in getting ACL information.
+   */
+  public List<String> getRangeEnds(int rangeCount) throws DfException {
+    IDfQuery query = dmClientX.getQuery();
+    query.setDQL(
+        "SELECT COUNT(DISTINCT r_object_id) AS acl_count FROM dm_acl");
+    IDfCollection dmAclCollection =
+        query.execute(dmSession, IDfQuery.DF_EXECREAD_QUERY);
+    int aclCount;
+    try {
+      aclCount = dmAclCollection.next()
+          ? dmAclCollection.getInt("acl_count") : 0;
+    } finally {
+      dmAclCollection.close();
+    }
+    int rangeSize = (aclCount + rangeCount - 1) / rangeCount;
+    logger.log(Level.FINE, "Splitting {0} ACLs into ranges of {1}",
+        new Object[] {aclCount, rangeSize});
+
+    List<String> rangeEnds = new ArrayList<String>();
+    if (rangeSize == 0) {
+      return rangeEnds;
+    }
+    dmAclCollection = makeAclQuery(null, null, 0)
+        .execute(dmSession, IDfQuery.DF_EXECREAD_QUERY);
+    try {
+      for (int i = 1; dmAclCollection.next() && i < aclCount; i++) {
+        if (i % rangeSize == 0) {
+          rangeEnds.add(dmAclCollection.getString("r_object_id"));
+        }
+      }
+    } finally {
+      dmAclCollection.close();
+    }
+    return rangeEnds;
   }
 
   /**
@@ -259,27 +472,188 @@ class DocumentumAcls {
     return aclCheckpoint;
   }
 
+  /**
+   * Streams the rows of an ACL accessors query, and adds the Adaptor
+   * Acls for each Documentum ACL to the map. An ACL is complete once
+   * r_accessor_count accessors have been read, or, failing that, when
+   * the next ACL starts, so an ACL interrupted by an error is not
+   * added. Complete ACLs are held until they have enough accessors to
+   * resolve their principals in a single batch.
+   *
+   * @param query a query from {@link #makeAclAccessorsQuery}
+   * @param aclMap Map with doc id and acl.
+   * @param updateCheckpoint {@code true} to advance the checkpoint
+   *     to each ACL as it is added to the map
+   * @throws DfException if error in getting acl info.
+   */
+  private void loadAcls(IDfQuery query, Map<DocId, Acl> aclMap,
+      boolean updateCheckpoint) throws DfException {
+    IDfCollection dmAclCollection =
+        query.execute(dmSession, IDfQuery.DF_EXECREAD_QUERY);
+    List<Accessors> pending = new ArrayList<Accessors>();
+    try {
+      int pendingCount = 0;
+      Accessors accessors = null;
+      boolean isComplete = false;
+      while (dmAclCollection.next()) {
+        String objectId = dmAclCollection.getString("r_object_id");
+        if (accessors == null || !accessors.objectId.equals(objectId)) {
+          // We have transitioned to a new ACL.
+          if (accessors != null && !isComplete) {
+            logger.log(Level.FINER, "ACL {0} has {1} of {2} accessors",
+                new Object[] {accessors.objectId, accessors.size(),
+                    accessors.accessorCount});
+            pending.add(accessors);
+            pendingCount += accessors.size();
+          }
+          logger.log(Level.FINE, "ACL ID: {0}", objectId);
+          accessors = new Accessors(objectId,
+              dmAclCollection.getInt("r_accessor_count"));
+          isComplete = false;
+        } else if (isComplete) {
+          logger.log(Level.FINER, "Skipping extra accessor of ACL {0}",
+              objectId);
+          continue;
+        }
+        String accessorName = dmAclCollection.getString("r_accessor_name");
+        // An ACL with no accessors still returns a single, empty row.
+        if (!Strings.isNullOrEmpty(accessorName)) {
+          accessors.add(accessorName,
+              dmAclCollection.getInt("r_permit_type"),
+              dmAclCollection.getInt("r_accessor_permit"),
+              dmAclCollection.getBoolean("r_is_group"));
+        }
+        if (accessors.size() >= accessors.accessorCount) {
+          // This was the last row, so the ACL is complete.
+          isComplete = true;
+          pending.add(accessors);
+          pendingCount += accessors.size();
+        }
+        if (pendingCount >= MAX_IN_LIST_SIZE) {
+          addAcls(pending, aclMap, updateCheckpoint);
+          pendingCount = 0;
+        }
+      }
+      if (accessors != null && !isComplete) {
+        pending.add(accessors);
+      }
+      addAcls(pending, aclMap, updateCheckpoint);
+    } catch (DfException e) {
+      // Add the complete ACLs that were read before the error.
+      try {
+        addAcls(pending, aclMap, updateCheckpoint);
+      } catch (DfException suppressed) {
+        if (suppressed != e) {
+          e.addSuppressed(suppressed);
+        }
+      }
+      throw e;
+    } finally {
+      try {
+        dmAclCollection.close();
+      } catch (DfException e) {
+        logger.log(Level.WARNING, "Error closing collection", e);
+      }
+    }
+  }
+
+  /**
+   * Resolves the principals of the pending ACLs in a batch, and then
+   * adds the ACLs, removing each one from the list as it is added.
+   */
+  private void addAcls(List<Accessors> pending, Map<DocId, Acl> aclMap,
+      boolean updateCheckpoint) throws DfException {
+    if (pending.isEmpty()) {
+      return;
+    }
+    Map<String, Boolean> accessorNames = new HashMap<String, Boolean>();
+    for (Accessors accessors : pending) {
+      for (int i = 0; i < accessors.size(); i++) {
+        int permitType = accessors.permitTypes.get(i);
+        accessorNames.put(accessors.names.get(i),
+            permitType == IDfPermitType.REQUIRED_GROUP
+            || permitType == IDfPermitType.REQUIRED_GROUP_SET
+            || accessors.isGroups.get(i));
+      }
+    }
+    principals.resolvePrincipals(accessorNames);
+
+    Iterator<Accessors> iterator = pending.iterator();
+    while (iterator.hasNext()) {
+      addAcl(iterator.next(), aclMap, updateCheckpoint);
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Adds the Adaptor Acls for a complete Documentum ACL to the map,
+   * or passes them to the listener when traversing all ACLs.
+   */
+  private void addAcl(Accessors accessors, Map<DocId, Acl> aclMap,
+      boolean updateCheckpoint) throws DfException {
+    if (updateCheckpoint && aclListener != null) {
+      Map<DocId, Acl> acls = new LinkedHashMap<DocId, Acl>();
+      addAclChainToMap(accessors, acls);
+      aclCheckpoint = new Checkpoint(accessors.objectId);
+      aclListener.aclRead(acls, aclCheckpoint);
+    } else {
+      addAclChainToMap(accessors, aclMap);
+      if (updateCheckpoint) {
+        aclCheckpoint = new Checkpoint(accessors.objectId);
+      }
+    }
+  }
+
+  /** The accessors of a Documentum ACL, in index order. */
+  private static class Accessors {
+    private final String objectId;
+    private final int accessorCount;
+    private final List<String> names = new ArrayList<String>();
+    private final List<Integer> permitTypes = new ArrayList<Integer>();
+    private final List<Integer> permits = new ArrayList<Integer>();
+    private final List<Boolean> isGroups = new ArrayList<Boolean>();
+
+    Accessors(String objectId, int accessorCount) {
+      this.objectId = objectId;
+      this.accessorCount = accessorCount;
+    }
+
+    void add(String name, int permitType, int permit, boolean isGroup) {
+      names.add(name);
+      permitTypes.add(permitType);
+      permits.add(permit);
+      isGroups.add(isGroup);
+    }
+
+    int size() {
+      return names.size();
+    }
+  }
+
   /**
    * Adds all of the Adaptor Acls for the Documentum ACL to the map.
    *
-   * @param dmAcl Documentum ACL object.
-   * @param objectId Documentum ACL object id.
+   * @param dmAcl Documentum ACL accessors.
    * @param aclMap Map with doc id and acl.
    * @throws DfException if error in getting acl info.
    */
-  private void addAclChainToMap(IDfACL dmAcl, String objectId,
-      Map<DocId, Acl> aclMap) throws DfException {
+  private void addAclChainToMap(Accessors dmAcl, Map<DocId, Acl> aclMap)
+      throws DfException {
+    String objectId = dmAcl.objectId;
     List<String> requiredGroupSet = new ArrayList<String>();
     String parentAclId = null;
     Set<Principal> permits = new HashSet<Principal>();
     Set<Principal> denies = new HashSet<Principal>();
 
-    for (int i = 0; i < dmAcl.getAccessorCount(); i++) {
-      String accessorName = dmAcl.getAccessorName(i);
-      int permitType = dmAcl.getAccessorPermitType(i);
+    for (int i = 0; i < dmAcl.size(); i++) {
+      String accessorName = dmAcl.names.get(i);
+      int permitType = dmAcl.permitTypes.get(i);
 
       if (permitType == IDfPermitType.REQUIRED_GROUP) {
-        String aclId = objectId + "_" + accessorName;
+        String aclId = sharedRequiredGroupAcls
+            ? makeSharedAclId("reqGroup_", parentAclId,
+                singletonList(accessorName))
+            : objectId + "_" + accessorName;
         Acl acl = getRequiredAcl(parentAclId, singletonList(accessorName));
         aclMap.put(new DocId(aclId), acl);
         parentAclId = aclId;
@@ -287,12 +661,15 @@ class DocumentumAcls {
         requiredGroupSet.add(accessorName);
       } else {
         processBasicPermissions(accessorName, permitType,
-            dmAcl.getAccessorPermit(i), dmAcl.isGroup(i), permits, denies);
+            dmAcl.permits.get(i), dmAcl.isGroups.get(i), permits, denies);
       }
     }
 
     if (!requiredGroupSet.isEmpty()) {
-      String aclId = objectId + "_reqGroupSet";
+      String aclId = sharedRequiredGroupAcls
+          ? makeSharedAclId("reqGroupSet_", parentAclId,
+              Ordering.natural().sortedCopy(requiredGroupSet))
+          : objectId + "_reqGroupSet";
       Acl acl = getRequiredAcl(parentAclId, requiredGroupSet);
       aclMap.put(new DocId(aclId), acl);
       parentAclId = aclId;
@@ -307,6 +684,27 @@ class DocumentumAcls {
     aclMap.put(new DocId(objectId), acl);
   }
 
+  /**
+   * Makes the doc ID of a shared required group or required group set
+   * Acl. The ID is a hash of the parent Acl ID and the group names, so
+   * it identifies the entire ordered sequence of required groups.
+   *
+   * @param prefix the prefix of the doc ID
+   * @param parentAclId the doc ID of the parent ACL in the chain
+   * @param groups the group names
+   */
+  private static String makeSharedAclId(String prefix, String parentAclId,
+      List<String> groups) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    if (parentAclId != null) {
+      hasher.putString(parentAclId, UTF_8);
+    }
+    for (String group : groups) {
+      hasher.putByte((byte) 0).putString(group, UTF_8);
+    }
+    return prefix + hasher.hash();
+  }
+
   /**
    * Creates an Adaptor Acl object with required groups or required group sets.
    *
@@ -397,6 +795,6 @@ class DocumentumAcls {
     if (parentAclId != null) {
       builder.setInheritFrom(new DocId(parentAclId));
     }
-    return builder.build();
+    return aclInterner.intern(builder.build());
   }
 }
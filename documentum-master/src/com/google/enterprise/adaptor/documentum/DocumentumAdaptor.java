@@ -18,9 +18,13 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Ordering;
 import com.google.enterprise.adaptor.AbstractAdaptor;
 import com.google.enterprise.adaptor.Acl;
 import com.google.enterprise.adaptor.AdaptorContext;
@@ -59,6 +63,7 @@ import com.documentum.fc.common.IDfLoginInfo;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
@@ -70,6 +75,7 @@ import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -77,15 +83,26 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /** Adaptor to feed Documentum repository content into a 
  *  Google Search Appliance.
@@ -110,12 +127,40 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
 
   private static final String DM_CABINET_TAG = "0c";
 
+  /**
+   * The approximate number of user and group names read before their
+   * principals are resolved together in a batch.
+   */
+  private static final int PRINCIPAL_BATCH_SIZE = 250;
+
+  /**
+   * The number of modified objects read before their paths are read
+   * together in a batch, when the folder paths are cached.
+   */
+  private static final int PATH_BATCH_SIZE = 250;
+
+  /**
+   * Matches the ORDER BY of a modified documents query that can be
+   * paged by r_modify_date and r_object_id.
+   */
+  private static final Pattern MODIFIED_DOCUMENTS_ORDER_PATTERN =
+      Pattern.compile("\\bORDER\\s+BY\\s+(\\w+\\.)?r_modify_date(\\s+ASC)?"
+          + "\\s*,\\s*(\\w+\\.)?r_object_id(\\s+ASC)?\\s*($|\\bENABLE\\b)",
+          Pattern.CASE_INSENSITIVE);
+
+  /** Matches the start of the DQL hints in a query. */
+  private static final Pattern ENABLE_HINTS_PATTERN =
+      Pattern.compile("\\bENABLE\\s*\\(\\s*", Pattern.CASE_INSENSITIVE);
+
   private AdaptorContext context;
   private final IDfClientX dmClientX;
   private List<String> startPaths;
   private List<String> documentTypes;
   private CopyOnWriteArrayList<String> validatedStartPaths =
       new CopyOnWriteArrayList<String>();
+  /** Matches paths against validatedStartPaths, rebuilt when they change. */
+  private volatile StartPathMatcher startPathMatcher =
+      new StartPathMatcher(validatedStartPaths);
   private CopyOnWriteArrayList<String> validatedDocumentTypes =
       new CopyOnWriteArrayList<String>();
   private boolean indexFolders;
@@ -135,8 +180,44 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
   private boolean pushLocalGroupsOnly;
   private CaseSensitivityType caseSensitivityType;
   private int queryBatchSize;
+  private boolean adaptiveQueryBatchSize;
+  private int minQueryBatchSize;
+  private int maxQueryBatchSize;
+  private long queryBatchTargetMillis;
+  private int aclTraversalThreads;
+  private int groupTraversalThreads;
+  private int traverserThreads;
+  private int aclPushChunkSize;
+  private long aclPushChunkBytes;
+  private long groupPushChunkBytes;
+  private int largeGroupMemberThreshold;
+  private AclDigestStore aclDigestStore;
+  private GroupDigestStore groupDigestStore;
+  private CheckpointStore checkpointStore;
+
+  /**
+   * The chronicle IDs of the objects pushed so far in the current
+   * incremental traversal, or {@code null} outside of one.
+   */
+  private volatile ChronicleIdSet pushedChronicleIds;
+
+  /** Holds back frequently modified documents, or {@code null}. */
+  private DocumentDebouncer documentDebouncer;
+  private long groupFullPushIntervalHours;
+  private long aclFullPushIntervalHours;
+  private long dmWorldRebuildIntervalHours;
+  /** The dm_world members kept by incremental traversals, or null. */
+  private DmWorldMembers dmWorldMembers;
+  private boolean cacheFolderPaths;
+  /** The cached paths of the folders, or null if not cached. */
+  private FolderPathCache folderPathCache;
+  private boolean sharedRequiredGroupAcls;
+  private boolean preloadPrincipals;
+  private PrincipalCacheStore principalCacheStore;
   private int maxHtmlSize;
   private String modifiedDocumentsQuery;
+  /** Whether the custom modified documents query may be paged. */
+  private volatile boolean pageModifiedDocumentsQuery;
   private String cabinetWhereCondition;
 
   /* Cache to store all types */
@@ -147,9 +228,13 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
   @VisibleForTesting String dateToStringFunction;
 
   @VisibleForTesting AclTraverser aclTraverser = new AclTraverser();
+  @VisibleForTesting ParallelAclTraverser parallelAclTraverser =
+      new ParallelAclTraverser();
   @VisibleForTesting ModifiedAclTraverser modifiedAclTraverser =
       new ModifiedAclTraverser();
   @VisibleForTesting GroupTraverser groupTraverser = new GroupTraverser();
+  @VisibleForTesting ParallelGroupTraverser parallelGroupTraverser =
+      new ParallelGroupTraverser();
   @VisibleForTesting DmWorldTraverser dmWorldTraverser = new DmWorldTraverser();
   @VisibleForTesting ModifiedDocumentTraverser modifiedDocumentTraverser =
       new ModifiedDocumentTraverser();
@@ -157,6 +242,8 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
       new ModifiedGroupTraverser();
   @VisibleForTesting ModifiedPermissionsTraverser modifiedPermissionsTraverser =
       new ModifiedPermissionsTraverser();
+  @VisibleForTesting ModifiedDmWorldTraverser modifiedDmWorldTraverser =
+      new ModifiedDmWorldTraverser();
 
   /** Case-sensitivity of user and group names. */
   public enum CaseSensitivityType {
@@ -320,11 +407,27 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
   }
 
   private static String docIdToPath(DocId docId) {
-    String path = docIdToRawPath(docId);
-    if (path.matches(".*:\\p{XDigit}{16}")) {
-      path = path.substring(0, path.length() - 17);
+    String id = docId.getUniqueId();
+    return "/" + id.substring(0, pathLength(id));
+  }
+
+  /**
+   * Gets the length of the path in a DocId unique ID, without any
+   * trailing ":" and 16 digit object ID.
+   */
+  private static int pathLength(String id) {
+    int length = id.length() - 17;
+    if (length < 0 || id.charAt(length) != ':') {
+      return id.length();
+    }
+    for (int i = length + 1; i < id.length(); i++) {
+      char c = id.charAt(i);
+      if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f')
+          || (c >= 'A' && c <= 'F'))) {
+        return id.length();
+      }
     }
-    return path;
+    return length;
   }
 
   private static DocId docIdWithObjectId(DocId docId, IDfId objectId) {
@@ -355,6 +458,34 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     config.addKey("documentum.windowsDomain", "");
     config.addKey("documentum.pushLocalGroupsOnly", "false");
     config.addKey("documentum.queryBatchSize", "0");
+    config.addKey("documentum.adaptiveQueryBatchSize", "false");
+    config.addKey("documentum.minQueryBatchSize", "100");
+    config.addKey("documentum.maxQueryBatchSize", "10000");
+    config.addKey("documentum.queryBatchTargetSeconds", "10");
+    config.addKey("documentum.aclTraversalThreads", "1");
+    config.addKey("documentum.groupTraversalThreads", "1");
+    config.addKey("documentum.traverserThreads", "1");
+    config.addKey("documentum.aclPushChunkSize", "0");
+    config.addKey("documentum.aclPushChunkBytes", "0");
+    config.addKey("documentum.groupPushChunkBytes", "0");
+    config.addKey("documentum.largeGroupMemberThreshold", "0");
+    config.addKey("documentum.aclDigestFile", "");
+    config.addKey("documentum.sharedRequiredGroupAcls", "false");
+    config.addKey("documentum.groupDigestFile", "");
+    config.addKey("documentum.checkpointFile", "");
+    config.addKey("documentum.groupFullPushIntervalHours", "24");
+    config.addKey("documentum.aclFullPushIntervalHours", "24");
+    config.addKey("documentum.dmWorldRebuildIntervalHours", "0");
+    config.addKey("documentum.cacheFolderPaths", "false");
+    config.addKey("documentum.debounceQuietSeconds", "0");
+    config.addKey("documentum.debounceMaxDelaySeconds", "3600");
+    config.addKey("documentum.debounceMaxPending", "100000");
+    config.addKey("documentum.preloadPrincipals", "false");
+    config.addKey("documentum.principalCacheFile", "");
+    config.addKey("documentum.principalCacheSize", "100000");
+    config.addKey("documentum.principalCacheMaxBytes", "0");
+    config.addKey("documentum.principalCacheExpireMinutes", "1440");
+    config.addKey("documentum.missingPrincipalCacheExpireMinutes", "60");
     config.addKey("documentum.maxHtmlSize", "1000");
     config.addKey("adaptor.caseSensitivityType",
         "everything-case-sensitive");
@@ -438,6 +569,199 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     logger.log(Level.CONFIG, "documentum.indexFolders: {0}", indexFolders);
     queryBatchSize = getPositiveInt(config, "documentum.queryBatchSize");
     logger.log(Level.CONFIG, "documentum.queryBatchSize: {0}", queryBatchSize);
+    adaptiveQueryBatchSize = Boolean.parseBoolean(
+        config.getValue("documentum.adaptiveQueryBatchSize"));
+    logger.log(Level.CONFIG, "documentum.adaptiveQueryBatchSize: {0}",
+        adaptiveQueryBatchSize);
+    minQueryBatchSize = getPositiveInt(config, "documentum.minQueryBatchSize");
+    logger.log(Level.CONFIG, "documentum.minQueryBatchSize: {0}",
+        minQueryBatchSize);
+    maxQueryBatchSize = getPositiveInt(config, "documentum.maxQueryBatchSize");
+    logger.log(Level.CONFIG, "documentum.maxQueryBatchSize: {0}",
+        maxQueryBatchSize);
+    long queryBatchTargetSeconds =
+        getPositiveLong(config, "documentum.queryBatchTargetSeconds");
+    logger.log(Level.CONFIG, "documentum.queryBatchTargetSeconds: {0}",
+        queryBatchTargetSeconds);
+    queryBatchTargetMillis =
+        TimeUnit.SECONDS.toMillis(queryBatchTargetSeconds);
+    if (adaptiveQueryBatchSize) {
+      if (queryBatchSize == 0) {
+        throw new InvalidConfigurationException(
+            "documentum.adaptiveQueryBatchSize requires "
+            + "documentum.queryBatchSize to be greater than 0");
+      }
+      if (minQueryBatchSize < 1 || minQueryBatchSize > maxQueryBatchSize) {
+        throw new InvalidConfigurationException(
+            "documentum.minQueryBatchSize must be greater than 0 and no "
+            + "greater than documentum.maxQueryBatchSize");
+      }
+    }
+    aclTraversalThreads =
+        getPositiveInt(config, "documentum.aclTraversalThreads");
+    logger.log(Level.CONFIG, "documentum.aclTraversalThreads: {0}",
+        aclTraversalThreads);
+    groupTraversalThreads =
+        getPositiveInt(config, "documentum.groupTraversalThreads");
+    logger.log(Level.CONFIG, "documentum.groupTraversalThreads: {0}",
+        groupTraversalThreads);
+    traverserThreads = getPositiveInt(config, "documentum.traverserThreads");
+    logger.log(Level.CONFIG, "documentum.traverserThreads: {0}",
+        traverserThreads);
+    aclPushChunkSize = getPositiveInt(config, "documentum.aclPushChunkSize");
+    logger.log(Level.CONFIG, "documentum.aclPushChunkSize: {0}",
+        aclPushChunkSize);
+    aclPushChunkBytes = getPositiveLong(config, "documentum.aclPushChunkBytes");
+    logger.log(Level.CONFIG, "documentum.aclPushChunkBytes: {0}",
+        aclPushChunkBytes);
+    groupPushChunkBytes =
+        getPositiveLong(config, "documentum.groupPushChunkBytes");
+    logger.log(Level.CONFIG, "documentum.groupPushChunkBytes: {0}",
+        groupPushChunkBytes);
+    largeGroupMemberThreshold =
+        getPositiveInt(config, "documentum.largeGroupMemberThreshold");
+    logger.log(Level.CONFIG, "documentum.largeGroupMemberThreshold: {0}",
+        largeGroupMemberThreshold);
+    if (aclPushChunkSize > 0 || aclPushChunkBytes > 0) {
+      if (aclTraversalThreads > 1) {
+        throw new InvalidConfigurationException(
+            "documentum.aclPushChunkSize and documentum.aclPushChunkBytes "
+            + "cannot be used when documentum.aclTraversalThreads is "
+            + "greater than 1");
+      }
+      aclTraverser = new StreamingAclTraverser();
+    }
+    sharedRequiredGroupAcls = Boolean.parseBoolean(
+        config.getValue("documentum.sharedRequiredGroupAcls"));
+    logger.log(Level.CONFIG, "documentum.sharedRequiredGroupAcls: {0}",
+        sharedRequiredGroupAcls);
+    preloadPrincipals = Boolean.parseBoolean(
+        config.getValue("documentum.preloadPrincipals"));
+    logger.log(Level.CONFIG, "documentum.preloadPrincipals: {0}",
+        preloadPrincipals);
+    int principalCacheSize =
+        getPositiveInt(config, "documentum.principalCacheSize");
+    logger.log(Level.CONFIG, "documentum.principalCacheSize: {0}",
+        principalCacheSize);
+    long principalCacheMaxBytes =
+        getPositiveLong(config, "documentum.principalCacheMaxBytes");
+    logger.log(Level.CONFIG, "documentum.principalCacheMaxBytes: {0}",
+        principalCacheMaxBytes);
+    int principalCacheExpireMinutes =
+        getPositiveInt(config, "documentum.principalCacheExpireMinutes");
+    logger.log(Level.CONFIG, "documentum.principalCacheExpireMinutes: {0}",
+        principalCacheExpireMinutes);
+    int missingPrincipalCacheExpireMinutes = getPositiveInt(config,
+        "documentum.missingPrincipalCacheExpireMinutes");
+    logger.log(Level.CONFIG,
+        "documentum.missingPrincipalCacheExpireMinutes: {0}",
+        missingPrincipalCacheExpireMinutes);
+    if (principalCacheSize < 1) {
+      throw new InvalidConfigurationException(
+          "documentum.principalCacheSize must be greater than 0");
+    }
+    if (principalCacheExpireMinutes < 1) {
+      throw new InvalidConfigurationException(
+          "documentum.principalCacheExpireMinutes must be greater than 0");
+    }
+    Principals.configureCache(principalCacheSize, principalCacheMaxBytes,
+        principalCacheExpireMinutes, missingPrincipalCacheExpireMinutes);
+    String principalCacheFile =
+        config.getValue("documentum.principalCacheFile").trim();
+    logger.log(Level.CONFIG, "documentum.principalCacheFile: {0}",
+        principalCacheFile);
+    if (!principalCacheFile.isEmpty()) {
+      principalCacheStore =
+          new PrincipalCacheStore(new File(principalCacheFile));
+      try {
+        principalCacheStore.load();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to load the cached principals from "
+            + principalCacheFile, e);
+      }
+    }
+    String aclDigestFile = config.getValue("documentum.aclDigestFile").trim();
+    logger.log(Level.CONFIG, "documentum.aclDigestFile: {0}", aclDigestFile);
+    if (!aclDigestFile.isEmpty()) {
+      aclDigestStore = new AclDigestStore(new File(aclDigestFile));
+      try {
+        aclDigestStore.load();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to load the ACL digests from "
+            + aclDigestFile, e);
+      }
+    }
+    String groupDigestFile =
+        config.getValue("documentum.groupDigestFile").trim();
+    logger.log(Level.CONFIG, "documentum.groupDigestFile: {0}",
+        groupDigestFile);
+    if (!groupDigestFile.isEmpty()) {
+      groupDigestStore = new GroupDigestStore(new File(groupDigestFile));
+      try {
+        groupDigestStore.load();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to load the group digests from "
+            + groupDigestFile, e);
+      }
+    }
+    String checkpointFile =
+        config.getValue("documentum.checkpointFile").trim();
+    logger.log(Level.CONFIG, "documentum.checkpointFile: {0}",
+        checkpointFile);
+    if (!checkpointFile.isEmpty()) {
+      checkpointStore = new CheckpointStore(new File(checkpointFile));
+      try {
+        checkpointStore.load();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to load the checkpoints from "
+            + checkpointFile, e);
+      }
+      modifiedDocumentTraverser.setCheckpointStore(checkpointStore,
+          "modifiedDocuments");
+      modifiedAclTraverser.setCheckpointStore(checkpointStore,
+          "modifiedAcls");
+      modifiedGroupTraverser.setCheckpointStore(checkpointStore,
+          "modifiedGroups");
+      modifiedPermissionsTraverser.setCheckpointStore(checkpointStore,
+          "modifiedPermissions");
+    }
+    groupFullPushIntervalHours =
+        getPositiveLong(config, "documentum.groupFullPushIntervalHours");
+    logger.log(Level.CONFIG, "documentum.groupFullPushIntervalHours: {0}",
+        groupFullPushIntervalHours);
+    aclFullPushIntervalHours =
+        getPositiveLong(config, "documentum.aclFullPushIntervalHours");
+    logger.log(Level.CONFIG, "documentum.aclFullPushIntervalHours: {0}",
+        aclFullPushIntervalHours);
+    dmWorldRebuildIntervalHours =
+        getPositiveLong(config, "documentum.dmWorldRebuildIntervalHours");
+    logger.log(Level.CONFIG, "documentum.dmWorldRebuildIntervalHours: {0}",
+        dmWorldRebuildIntervalHours);
+    if (dmWorldRebuildIntervalHours > 0) {
+      dmWorldMembers = new DmWorldMembers();
+    }
+    cacheFolderPaths = Boolean.parseBoolean(
+        config.getValue("documentum.cacheFolderPaths"));
+    logger.log(Level.CONFIG, "documentum.cacheFolderPaths: {0}",
+        cacheFolderPaths);
+    long debounceQuietSeconds =
+        getPositiveLong(config, "documentum.debounceQuietSeconds");
+    logger.log(Level.CONFIG, "documentum.debounceQuietSeconds: {0}",
+        debounceQuietSeconds);
+    long debounceMaxDelaySeconds =
+        getPositiveLong(config, "documentum.debounceMaxDelaySeconds");
+    logger.log(Level.CONFIG, "documentum.debounceMaxDelaySeconds: {0}",
+        debounceMaxDelaySeconds);
+    int debounceMaxPending =
+        getPositiveInt(config, "documentum.debounceMaxPending");
+    logger.log(Level.CONFIG, "documentum.debounceMaxPending: {0}",
+        debounceMaxPending);
+    if (debounceQuietSeconds > 0) {
+      documentDebouncer = new DocumentDebouncer(
+          TimeUnit.SECONDS.toMillis(debounceQuietSeconds),
+          TimeUnit.SECONDS.toMillis(debounceMaxDelaySeconds),
+          debounceMaxPending);
+    }
     maxHtmlSize = getPositiveInt(config, "documentum.maxHtmlSize");
     logger.log(Level.CONFIG, "documentum.maxHtmlSize: {0}", maxHtmlSize);
     modifiedDocumentsQuery =
@@ -458,6 +782,9 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     IDfSession dmSession = dmSessionManager.getSession(docbase);
     dateToStringFunction = dmSession.getServerVersion().matches("[456]\\..*")
         ? "DATETOSTRING" : "DATETOSTRING_LOCAL";
+    if (cacheFolderPaths) {
+      folderPathCache = new FolderPathCache(dmClientX, dateToStringFunction);
+    }
     try {
       validateStartPaths(dmSession);
       validateDocumentTypes(dmSession);
@@ -484,6 +811,16 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     }
   }
 
+  private static long getPositiveLong(Config config, String propName) {
+    try {
+      return Math.max(0L,
+          Long.parseLong(config.getValue(propName).trim()));
+    } catch (NumberFormatException e) {
+      throw new InvalidConfigurationException(
+          propName + " must be a positive integer.", e);
+    }
+  }
+
   private static void validateConfig(Config config) {
     if (Strings.isNullOrEmpty(config.getValue("documentum.username"))) {
       throw new InvalidConfigurationException(
@@ -567,7 +904,9 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
             new Object[] { documentumFolderPath, e.getMessage() });
       }
     }
-    validatedStartPaths.addAllAbsent(validStartPaths);
+    if (validatedStartPaths.addAllAbsent(validStartPaths) > 0) {
+      startPathMatcher = new StartPathMatcher(validatedStartPaths);
+    }
   }
 
   // TODO (bmj): Don't catch DfException here. Let it throw out (or use a
@@ -627,6 +966,17 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
         result.close();
       }
     }
+    // Paging skips documents unless each page ends at the latest
+    // r_modify_date and r_object_id returned.
+    pageModifiedDocumentsQuery = !modifiedDocumentsQuery.isEmpty()
+        && MODIFIED_DOCUMENTS_ORDER_PATTERN.matcher(
+            modifiedDocumentsQuery.trim()).find();
+    if (!modifiedDocumentsQuery.isEmpty() && !pageModifiedDocumentsQuery
+        && queryBatchSize > 0) {
+      logger.log(Level.WARNING, "The modified documents query is not paged "
+          + "by documentum.queryBatchSize, because it does not end with "
+          + "ORDER BY r_modify_date, r_object_id");
+    }
   }
 
   @VisibleForTesting
@@ -690,10 +1040,67 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
 
     if (!markAllDocsAsPublic) {
       // Push the ACLs and groups.
-      Principals.clearCache();
-      aclTraverser.run(pusher, savedExceptions);
-      groupTraverser.run(pusher, savedExceptions);
-      dmWorldTraverser.run(pusher, savedExceptions);
+      refreshPrincipalCache();
+      if (preloadPrincipals) {
+        setPrincipalDirectory(loadPrincipalDirectory());
+      }
+      List<Traversal> traversals = new ArrayList<>();
+      traversals.add(new Traversal() {
+          @Override
+          public void run(DocIdPusher pusher,
+              Collection<DfException> savedExceptions)
+              throws IOException, InterruptedException {
+            if (aclTraversalThreads > 1) {
+              if (parallelAclTraverser.getRanges() == null) {
+                startAclDigests();
+              }
+              parallelAclTraverser.run(pusher, savedExceptions);
+            } else {
+              if (aclTraverser.getCheckpoint().equals(Checkpoint.full())) {
+                startAclDigests();
+              }
+              aclTraverser.run(pusher, savedExceptions);
+            }
+            saveAclDigests();
+          }
+        });
+      traversals.add(new Traversal() {
+          @Override
+          public void run(DocIdPusher pusher,
+              Collection<DfException> savedExceptions)
+              throws IOException, InterruptedException {
+            if (groupTraversalThreads > 1) {
+              parallelGroupTraverser.run(pusher, savedExceptions);
+            } else {
+              groupTraverser.run(pusher, savedExceptions);
+            }
+            saveGroupDigests();
+          }
+        });
+      traversals.add(new Traversal() {
+          @Override
+          public void run(DocIdPusher pusher,
+              Collection<DfException> savedExceptions)
+              throws IOException, InterruptedException {
+            if (dmWorldMembers != null && !dmWorldMembers.isRebuildDue(
+                System.currentTimeMillis(),
+                TimeUnit.HOURS.toMillis(dmWorldRebuildIntervalHours))) {
+              // The incremental traversals have kept dm_world up to date.
+              pusher.pushGroupDefinitions(dmWorldMembers.getGroupDefinition(),
+                  caseSensitivityType
+                  == CaseSensitivityType.EVERYTHING_CASE_SENSITIVE);
+            } else {
+              dmWorldTraverser.run(pusher, savedExceptions);
+            }
+          }
+        });
+      try {
+        runTraversals(pusher, traversals, savedExceptions);
+      } finally {
+        setPrincipalDirectory(null);
+      }
+      savePrincipalCache();
+      logPrincipalCacheStats();
     }
 
     if (!savedExceptions.isEmpty()) {
@@ -738,11 +1145,439 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     return cabinets.build();
   }
 
+  /**
+   * Pushes the ACLs. If an ACL digest store is configured, and the
+   * current full traversal is not pushing every ACL, ACLs that have
+   * not changed since they were last pushed may be skipped. The
+   * digests of the pushed ACLs are recorded if the push succeeds.
+   * If any ACL fails to push, no digests are recorded, so that the
+   * changed ACLs are pushed again on the next traversal.
+   *
+   * @param pusher the pusher
+   * @param acls the ACLs to push
+   * @param skipUnchanged {@code true} to skip unchanged ACLs, unless
+   *     every ACL is being pushed
+   */
+  private void pushAcls(DocIdPusher pusher, Map<DocId, Acl> acls,
+      boolean skipUnchanged) throws InterruptedException {
+    if (aclDigestStore == null) {
+      pusher.pushNamedResources(acls);
+      return;
+    }
+    Map<DocId, String> changed = aclDigestStore.getChangedDigests(acls);
+    DocId failed;
+    if (skipUnchanged && !aclDigestStore.isFullPush()) {
+      logger.log(Level.FINE, "Skipping {0} unchanged ACLs",
+          acls.size() - changed.size());
+      Map<DocId, Acl> changedAcls = new HashMap<>();
+      for (DocId docId : changed.keySet()) {
+        changedAcls.put(docId, acls.get(docId));
+      }
+      failed = pusher.pushNamedResources(changedAcls);
+    } else {
+      failed = pusher.pushNamedResources(acls);
+    }
+    if (failed == null) {
+      aclDigestStore.putDigests(changed);
+    } else {
+      logger.log(Level.WARNING, "Failed to push ACL {0}. The ACL digests "
+          + "were not recorded.", failed);
+    }
+  }
+
+  /** Starts tracking the ACLs seen in a new full traversal. */
+  private void startAclDigests() {
+    if (aclDigestStore != null) {
+      aclDigestStore.startTraversal(System.currentTimeMillis(),
+          TimeUnit.HOURS.toMillis(aclFullPushIntervalHours));
+    }
+  }
+
+  /** Forgets the digests of ACLs not seen in a full traversal. */
+  private void finishAclDigests() {
+    if (aclDigestStore != null) {
+      aclDigestStore.finishTraversal(System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Pushes the group definitions. If a group digest store is
+   * configured, and the current full traversal is not pushing every
+   * group, groups that have not changed since they were last pushed
+   * are skipped, and the rest are pushed incrementally. The digests of
+   * the pushed groups are recorded if the push succeeds. If any group
+   * fails to push, no digests are recorded, so that the changed groups
+   * are pushed again on the next traversal.
+   *
+   * @param pusher the pusher
+   * @param groupDefs the group definitions to push
+   * @param feedType the feed type to use if every group is pushed
+   */
+  private void pushGroups(DocIdPusher pusher,
+      Map<GroupPrincipal, ? extends Collection<Principal>> groupDefs,
+      FeedType feedType) throws InterruptedException {
+    boolean caseSensitive =
+        caseSensitivityType == CaseSensitivityType.EVERYTHING_CASE_SENSITIVE;
+    if (groupDigestStore == null) {
+      pusher.pushGroupDefinitions(groupDefs, caseSensitive, feedType, null,
+          null);
+      return;
+    }
+    Map<GroupPrincipal, String> changed =
+        groupDigestStore.getChangedDigests(groupDefs);
+    GroupPrincipal failed;
+    if (groupDigestStore.isFullPush()) {
+      failed = pusher.pushGroupDefinitions(groupDefs, caseSensitive,
+          feedType, null, null);
+    } else {
+      logger.log(Level.FINE, "Skipping {0} unchanged groups",
+          groupDefs.size() - changed.size());
+      Map<GroupPrincipal, Collection<Principal>> changedGroups =
+          new HashMap<>();
+      for (GroupPrincipal group : changed.keySet()) {
+        changedGroups.put(group, groupDefs.get(group));
+      }
+      failed = pusher.pushGroupDefinitions(changedGroups, caseSensitive,
+          FeedType.INCREMENTAL, null, null);
+    }
+    if (failed == null) {
+      groupDigestStore.putDigests(changed);
+    } else {
+      logger.log(Level.WARNING, "Failed to push group {0}. The group "
+          + "digests were not recorded.", failed);
+    }
+  }
+
+  /**
+   * Pushes group definitions that have been partly moved to a spill
+   * file. A replacement must include every group in one push, so the
+   * groups are read lazily from the file. Otherwise, the groups are
+   * pushed one chunk at a time.
+   *
+   * @param pusher the pusher
+   * @param spillFile the spilled groups
+   * @param remaining the groups that have not been spilled
+   * @param feedType the feed type
+   */
+  private void pushSpilledGroups(DocIdPusher pusher, GroupSpillFile spillFile,
+      Map<GroupPrincipal, ? extends Collection<Principal>> remaining,
+      FeedType feedType) throws InterruptedException {
+    if (feedType == FeedType.REPLACE) {
+      pushGroups(pusher, spillFile.getGroups(remaining), feedType);
+    } else {
+      for (Map<GroupPrincipal, Collection<Principal>> chunk
+          : spillFile.getChunks()) {
+        pushGroups(pusher, chunk, feedType);
+      }
+      pushGroups(pusher, remaining, feedType);
+    }
+  }
+
+  private static void closeSpillFile(GroupSpillFile spillFile) {
+    try {
+      spillFile.close();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to delete the group spill file", e);
+    }
+  }
+
+  /** Starts tracking the groups seen in a new full traversal. */
+  private void startGroupDigests() {
+    if (groupDigestStore != null) {
+      groupDigestStore.startTraversal(System.currentTimeMillis(),
+          TimeUnit.HOURS.toMillis(groupFullPushIntervalHours));
+    }
+  }
+
+  /**
+   * Completes a full traversal of the groups, pushing empty definitions
+   * for the groups that were not seen, and forgetting their digests.
+   */
+  private void finishGroupDigests(DocIdPusher pusher)
+      throws InterruptedException {
+    if (groupDigestStore == null) {
+      return;
+    }
+    Map<GroupPrincipal, Collection<Principal>> deletedGroups =
+        new HashMap<>();
+    for (GroupPrincipal group :
+        groupDigestStore.finishTraversal(System.currentTimeMillis())) {
+      deletedGroups.put(group, ImmutableSet.<Principal>of());
+    }
+    if (!deletedGroups.isEmpty()) {
+      logger.log(Level.FINE, "Pushing {0} deleted groups",
+          deletedGroups.size());
+      pusher.pushGroupDefinitions(deletedGroups, caseSensitivityType
+          == CaseSensitivityType.EVERYTHING_CASE_SENSITIVE,
+          FeedType.INCREMENTAL, null, null);
+    }
+  }
+
+  /**
+   * Removes the cached principals that may be stale before a full
+   * traversal. With a persistent cache, only the users and groups
+   * modified since the high-water mark are removed. Otherwise, or if
+   * the modified users and groups cannot be read, the whole cache is
+   * cleared.
+   */
+  private void refreshPrincipalCache() throws IOException {
+    if (principalCacheStore == null) {
+      Principals.clearCache();
+      return;
+    }
+    String highWaterMark = principalCacheStore.getHighWaterMark();
+    IDfSession dmSession = getDfSession();
+    try {
+      String userMark = invalidateModifiedPrincipals(dmSession, "dm_user",
+          "user_name", highWaterMark);
+      String groupMark = invalidateModifiedPrincipals(dmSession, "dm_group",
+          "group_name", highWaterMark);
+      if (highWaterMark == null) {
+        Principals.clearCache();
+      }
+      principalCacheStore.setHighWaterMark(
+          Ordering.<String>natural().nullsFirst().max(userMark, groupMark));
+    } catch (DfException e) {
+      logger.log(Level.WARNING,
+          "Failed to read modified users and groups; clearing the cache", e);
+      Principals.clearCache();
+      principalCacheStore.setHighWaterMark(null);
+    } finally {
+      dmSessionManager.release(dmSession);
+    }
+  }
+
+  /**
+   * Removes the cached principals for the users or groups modified at
+   * or after the high-water mark. If there is no high-water mark, no
+   * principals are removed.
+   *
+   * @param dmSession the session to query
+   * @param type the dm_user or dm_group type to query
+   * @param nameAttribute the name of the user or group attribute
+   * @param highWaterMark the earliest r_modify_date to find, or
+   *     {@code null} to only find the latest r_modify_date
+   * @return the latest r_modify_date found, or the given high-water
+   *     mark if nothing was found
+   */
+  private String invalidateModifiedPrincipals(IDfSession dmSession,
+      String type, String nameAttribute, String highWaterMark)
+      throws DfException {
+    StringBuilder queryStr = new StringBuilder();
+    queryStr.append("SELECT ").append(nameAttribute)
+        .append(", r_modify_date, ")
+        .append(dateToStringFunction)
+        .append("(r_modify_date, 'yyyy-mm-dd hh:mi:ss') ")
+        .append("AS r_modify_date_str FROM ").append(type);
+    if (highWaterMark == null) {
+      queryStr.append(" ORDER BY r_modify_date DESC ENABLE(RETURN_TOP 1)");
+    } else {
+      queryStr.append(MessageFormat.format(" WHERE r_modify_date >= "
+          + "DATE(''{0}'',''yyyy-mm-dd hh:mi:ss'') ORDER BY r_modify_date",
+          highWaterMark));
+    }
+    logger.log(Level.FINER, "Modified Principals Query: {0}", queryStr);
+    IDfQuery query = dmClientX.getQuery();
+    query.setDQL(queryStr.toString());
+    IDfCollection result =
+        query.execute(dmSession, IDfQuery.DF_EXECREAD_QUERY);
+    Set<String> modified = new HashSet<String>();
+    String latest = highWaterMark;
+    try {
+      while (result.next()) {
+        modified.add(result.getString(nameAttribute));
+        latest = Ordering.<String>natural().nullsFirst()
+            .max(latest, result.getString("r_modify_date_str"));
+      }
+    } finally {
+      result.close();
+    }
+    if (highWaterMark != null) {
+      logger.log(Level.FINE, "Invalidating {0} modified principals from {1}",
+          new Object[] {modified.size(), type});
+      Principals.invalidate(modified);
+    }
+    return latest;
+  }
+
+  private void logDocumentDebouncerStats() {
+    logger.log(Level.INFO, "Modified documents: {0} held, {1} changes "
+        + "suppressed, {2} pushed after the quiet period, {3} pushed early",
+        new Object[] {documentDebouncer.getPendingCount(),
+            documentDebouncer.getSuppressedCount(),
+            documentDebouncer.getReleasedCount(),
+            documentDebouncer.getForcedCount()});
+  }
+
+  @VisibleForTesting
+  DocumentDebouncer getDocumentDebouncer() {
+    return documentDebouncer;
+  }
+
+  private void logPrincipalCacheStats() {
+    CacheStats stats = Principals.getCacheStats();
+    logger.log(Level.INFO, "Principal cache: {0} entries, hit rate {1}, "
+        + "miss rate {2}, {3} evictions, "
+        + "average load time {4,number,0.000} ms",
+        new Object[] {Principals.getCacheSize(), stats.hitRate(),
+            stats.missRate(), stats.evictionCount(),
+            stats.averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1)});
+  }
+
+  private void savePrincipalCache() {
+    if (principalCacheStore != null) {
+      try {
+        principalCacheStore.save();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to save the cached principals", e);
+      }
+    }
+  }
+
+  /**
+   * Reads all of the users and groups, or returns {@code null} if they
+   * could not be read, in which case they will be looked up one batch
+   * at a time.
+   */
+  private PrincipalDirectory loadPrincipalDirectory() throws IOException {
+    IDfSession dmSession = getDfSession();
+    try {
+      return PrincipalDirectory.load(dmClientX, dmSession);
+    } catch (DfException e) {
+      logger.log(Level.WARNING, "Failed to preload the users and groups", e);
+      return null;
+    } finally {
+      dmSessionManager.release(dmSession);
+    }
+  }
+
+  /** Sets the directory used by the full ACL and group traversals. */
+  private void setPrincipalDirectory(PrincipalDirectory directory) {
+    aclTraverser.setPrincipalDirectory(directory);
+    parallelAclTraverser.setPrincipalDirectory(directory);
+    groupTraverser.setPrincipalDirectory(directory);
+    parallelGroupTraverser.setPrincipalDirectory(directory);
+    dmWorldTraverser.setPrincipalDirectory(directory);
+  }
+
+  private void saveAclDigests() {
+    if (aclDigestStore != null) {
+      try {
+        aclDigestStore.save();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to save the ACL digests", e);
+      }
+    }
+  }
+
+  @VisibleForTesting
+  AclDigestStore getAclDigestStore() {
+    return aclDigestStore;
+  }
+
+  private void saveGroupDigests() {
+    if (groupDigestStore != null) {
+      try {
+        groupDigestStore.save();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to save the group digests", e);
+      }
+    }
+  }
+
+  @VisibleForTesting
+  GroupDigestStore getGroupDigestStore() {
+    return groupDigestStore;
+  }
+
   @VisibleForTesting
   interface Sleeper {
     void sleep() throws InterruptedException;
   }
 
+  private static final Sleeper DEFAULT_SLEEPER = new Sleeper() {
+      private final int sleepDuration = 5;
+      private final TimeUnit sleepUnit = TimeUnit.SECONDS;
+
+      @Override public void sleep() throws InterruptedException {
+        sleepUnit.sleep(sleepDuration);
+      }
+      @Override public String toString() {
+        return sleepDuration + " " + sleepUnit;
+      }
+    };
+
+  /**
+   * A traversal that reads from the repository with its own sessions
+   * and checkpoints, independently of the other traversals.
+   */
+  private interface Traversal {
+    void run(DocIdPusher pusher, Collection<DfException> savedExceptions)
+        throws IOException, InterruptedException;
+  }
+
+  /**
+   * Runs the traversals in order, or concurrently if more than one
+   * traverser thread is configured. Every traversal is run to
+   * completion before an exception thrown by any of them is rethrown.
+   * The pusher must be thread-safe, as the one from the adaptor
+   * context is.
+   */
+  private void runTraversals(final DocIdPusher pusher,
+      List<Traversal> traversals, Collection<DfException> savedExceptions)
+      throws IOException, InterruptedException {
+    if (traverserThreads <= 1 || traversals.size() <= 1) {
+      for (Traversal traversal : traversals) {
+        traversal.run(pusher, savedExceptions);
+      }
+      return;
+    }
+
+    final Collection<DfException> concurrentExceptions =
+        new ConcurrentLinkedQueue<>();
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(traverserThreads, traversals.size()));
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (final Traversal traversal : traversals) {
+        futures.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException, InterruptedException {
+              traversal.run(pusher, concurrentExceptions);
+              return null;
+            }
+          }));
+      }
+
+      Throwable failure = null;
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+          } else {
+            failure.addSuppressed(e.getCause());
+          }
+        }
+      }
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      } else if (failure instanceof InterruptedException) {
+        throw (InterruptedException) failure;
+      } else if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      } else if (failure instanceof Error) {
+        throw (Error) failure;
+      } else if (failure != null) {
+        throw new IOException(failure);
+      }
+    } finally {
+      executor.shutdownNow();
+      savedExceptions.addAll(concurrentExceptions);
+    }
+  }
+
   /**
    * A template method for traversing ACLs and groups. Each subclass
    * must implement methods to create a collection of objects, to fill
@@ -750,25 +1585,50 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
    * the GSA. Each instance is long-lived and encapsulates a checkpoint.
    */
   @VisibleForTesting
-  abstract class TraverserTemplate {
-    private Sleeper sleeper = new Sleeper() {
-        private final int sleepDuration = 5;
-        private final TimeUnit sleepUnit = TimeUnit.SECONDS;
+  abstract class TraverserTemplate implements Traversal {
+    private Sleeper sleeper = DEFAULT_SLEEPER;
 
-        @Override public void sleep() throws InterruptedException {
-          sleepUnit.sleep(sleepDuration);
-        }
-        @Override public String toString() {
-          return sleepDuration + " " + sleepUnit;
-        }
-      };
+    /** The checkpoint, which other traversals may read. */
+    private volatile Checkpoint checkpoint;
+    private boolean isComplete;
+    private PrincipalDirectory principalDirectory;
+    private CheckpointStore checkpointStore;
+    private String checkpointName;
 
-    private Checkpoint checkpoint;
+    /** The batch size of this traverser, if adaptive, or {@code null}. */
+    private AdaptiveBatchSize adaptiveBatchSize;
 
     protected TraverserTemplate(Checkpoint checkpoint) {
       this.checkpoint = checkpoint;
     }
 
+    /**
+     * Sets the directory used to look up users and groups, or
+     * {@code null} to query the repository for them.
+     */
+    void setPrincipalDirectory(PrincipalDirectory principalDirectory) {
+      this.principalDirectory = principalDirectory;
+    }
+
+    /**
+     * Saves the checkpoint to the store after each push that advances
+     * it, and resumes from the checkpoint already saved there, if any.
+     *
+     * @param checkpointStore the store to use
+     * @param checkpointName the name of this traverser in the store
+     */
+    void setCheckpointStore(CheckpointStore checkpointStore,
+        String checkpointName) {
+      this.checkpointStore = checkpointStore;
+      this.checkpointName = checkpointName;
+      Checkpoint savedCheckpoint = checkpointStore.get(checkpointName);
+      if (savedCheckpoint != null) {
+        logger.log(Level.FINE, "{0} resuming from saved checkpoint {1}",
+            new Object[] {getClass().getSimpleName(), savedCheckpoint});
+        checkpoint = savedCheckpoint;
+      }
+    }
+
     @VisibleForTesting
     void setSleeper(Sleeper sleeper) {
       this.sleeper = sleeper;
@@ -784,6 +1644,22 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
       return checkpoint;
     }
 
+    /**
+     * Gets the number of objects to fetch in each fill, or 0 to fetch
+     * them all. If the batch size is adaptive, each traverser tunes its
+     * own size to the time taken by each fill.
+     */
+    protected int getQueryBatchSize() {
+      if (!adaptiveQueryBatchSize) {
+        return queryBatchSize;
+      }
+      if (adaptiveBatchSize == null) {
+        adaptiveBatchSize = new AdaptiveBatchSize(queryBatchSize,
+            minQueryBatchSize, maxQueryBatchSize, queryBatchTargetMillis);
+      }
+      return adaptiveBatchSize.get();
+    }
+
     protected abstract void createCollection();
 
     /**
@@ -798,30 +1674,102 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     protected abstract Checkpoint pushCollection(DocIdPusher pusher)
         throws InterruptedException;
 
-    public void run(DocIdPusher pusher, Collection<DfException> savedExceptions)
-        throws IOException, InterruptedException {
-      boolean isComplete;
-      do {
-        logger.log(Level.FINE, "{0} running from checkpoint {1}",
-            new Object[] {getClass().getSimpleName(), checkpoint});
-        Checkpoint previousCheckpoint = checkpoint;
-        DfException caughtException = null;
-        createCollection();
-        IDfSession dmSession = getDfSession();
-        try {
-          Principals principals = new Principals(dmSession, localNamespace,
-              globalNamespace, windowsDomain);
-          isComplete = fillCollection(dmSession, principals, checkpoint);
-        } catch (DfException e) {
-          logger.log(Level.FINER, "Caught exception: " + e);
-          isComplete = false;
-          caughtException = e;
-        } finally {
-          dmSessionManager.release(dmSession);
-        }
-        checkpoint = pushCollection(pusher);
+    /** @return {@code true} if the last fill completed the traversal */
+    boolean isComplete() {
+      return isComplete;
+    }
 
-        if (caughtException != null) {
+    /**
+     * Creates a new collection and fills it from the repository,
+     * using a new session.
+     *
+     * @return the exception thrown while filling the collection,
+     *     or {@code null} if there was none
+     */
+    protected DfException fill() throws IOException {
+      createCollection();
+      IDfSession dmSession = getDfSession();
+      long start = System.currentTimeMillis();
+      DfException caughtException = null;
+      try {
+        Principals principals = new Principals(dmClientX, dmSession,
+            principalDirectory, localNamespace, globalNamespace,
+            windowsDomain);
+        isComplete = fillCollection(dmSession, principals, checkpoint);
+        return null;
+      } catch (DfException e) {
+        logger.log(Level.FINER, "Caught exception: " + e);
+        isComplete = false;
+        caughtException = e;
+        return e;
+      } finally {
+        dmSessionManager.release(dmSession);
+        if (adaptiveBatchSize != null) {
+          updateQueryBatchSize(
+              System.currentTimeMillis() - start - getWaitMillis(),
+              caughtException != null);
+        }
+      }
+    }
+
+    private void updateQueryBatchSize(long elapsedMillis, boolean failed) {
+      int oldSize = adaptiveBatchSize.get();
+      int newSize = adaptiveBatchSize.update(elapsedMillis, failed,
+          !isComplete && !failed);
+      if (newSize != oldSize) {
+        logger.log(Level.FINE, "{0} query batch size changed from {1} to {2}"
+            + " after {3} ms", new Object[] {getClass().getSimpleName(),
+                oldSize, newSize, elapsedMillis});
+      }
+    }
+
+    /**
+     * Gets the time spent by the current fill waiting for something
+     * other than the repository, which is not counted as query time.
+     */
+    protected long getWaitMillis() {
+      return 0;
+    }
+
+    @VisibleForTesting
+    AdaptiveBatchSize getAdaptiveBatchSize() {
+      return adaptiveBatchSize;
+    }
+
+    /**
+     * Gets the checkpoint to save, from which a restarted adaptor
+     * resumes. This is the current checkpoint, unless some of the
+     * objects before it have not been pushed yet.
+     */
+    protected Checkpoint getSavedCheckpoint() {
+      return checkpoint;
+    }
+
+    private void saveCheckpoint(Checkpoint savedCheckpoint) {
+      checkpointStore.put(checkpointName, savedCheckpoint);
+      try {
+        checkpointStore.save();
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to save the checkpoints", e);
+      }
+    }
+
+    public void run(DocIdPusher pusher, Collection<DfException> savedExceptions)
+        throws IOException, InterruptedException {
+      do {
+        logger.log(Level.FINE, "{0} running from checkpoint {1}",
+            new Object[] {getClass().getSimpleName(), checkpoint});
+        Checkpoint previousCheckpoint = checkpoint;
+        DfException caughtException = fill();
+        checkpoint = pushCollection(pusher);
+        if (checkpointStore != null) {
+          Checkpoint savedCheckpoint = getSavedCheckpoint();
+          if (!savedCheckpoint.equals(checkpointStore.get(checkpointName))) {
+            saveCheckpoint(savedCheckpoint);
+          }
+        }
+
+        if (caughtException != null) {
           if (!Objects.equals(checkpoint, previousCheckpoint)) {
             logger.log(Level.WARNING, "Error in traversal", caughtException);
             logger.log(Level.FINEST, "Waiting for {0}", sleeper);
@@ -860,18 +1808,370 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
         Principals principals, Checkpoint checkpoint) throws DfException {
       dctmAcls = new DocumentumAcls(dmClientX, dmSession, principals,
           caseSensitivityType);
+      dctmAcls.setSharedRequiredGroupAcls(sharedRequiredGroupAcls);
       return getAcls(checkpoint);
     }
 
     @Override
     protected Checkpoint pushCollection(DocIdPusher pusher)
         throws InterruptedException {
-      pusher.pushNamedResources(aclMap);
+      pushAcls(pusher, aclMap, true);
+      if (isComplete()) {
+        finishAclDigests();
+      }
       return dctmAcls.getCheckpoint();
     }
 
     protected boolean getAcls(Checkpoint checkpoint) throws DfException {
-      return dctmAcls.getAcls(checkpoint, queryBatchSize, aclMap);
+      return dctmAcls.getAcls(checkpoint, getQueryBatchSize(), aclMap);
+    }
+  }
+
+  /**
+   * Streams the ACLs to the GSA while they are read. The ACLs are
+   * gathered into chunks limited by a count or an estimated size, and
+   * the chunks are handed through a bounded queue to a separate thread
+   * that pushes them. Reading blocks while the queue is full, so the
+   * memory used does not depend on the number of ACLs. The time spent
+   * waiting for the queue is not counted as query time by the adaptive
+   * query batch size. The checkpoint advances as each chunk is pushed.
+   */
+  @VisibleForTesting
+  class StreamingAclTraverser extends AclTraverser
+      implements DocumentumAcls.AclListener {
+    /** The number of chunks that may be waiting to be pushed. */
+    private static final int MAX_QUEUED_CHUNKS = 2;
+
+    private final AclChunk endOfChunks = new AclChunk(null, null);
+
+    private DocIdPusher pusher;
+    private ExecutorService executor;
+    private BlockingQueue<AclChunk> chunks;
+    private Future<Checkpoint> chunkPusher;
+    private long chunkBytes;
+    private long queueWaitMillis;
+
+    @Override
+    public void run(DocIdPusher pusher, Collection<DfException> savedExceptions)
+        throws IOException, InterruptedException {
+      this.pusher = pusher;
+      executor = Executors.newSingleThreadExecutor();
+      try {
+        super.run(pusher, savedExceptions);
+      } finally {
+        executor.shutdownNow();
+        this.pusher = null;
+      }
+    }
+
+    @Override
+    protected void createCollection() {
+      super.createCollection();
+      chunkBytes = 0;
+      queueWaitMillis = 0;
+      chunks = new ArrayBlockingQueue<>(MAX_QUEUED_CHUNKS);
+      chunkPusher = executor.submit(new Callable<Checkpoint>() {
+          @Override
+          public Checkpoint call() throws InterruptedException {
+            Checkpoint pushedCheckpoint = null;
+            for (AclChunk chunk = chunks.take(); chunk != endOfChunks;
+                 chunk = chunks.take()) {
+              if (!chunk.acls.isEmpty()) {
+                logger.log(Level.FINE, "Pushing {0} ACLs through {1}",
+                    new Object[] {chunk.acls.size(), chunk.checkpoint});
+                pushAcls(pusher, chunk.acls, true);
+              }
+              pushedCheckpoint = chunk.checkpoint;
+            }
+            return pushedCheckpoint;
+          }
+        });
+    }
+
+    @Override
+    protected boolean getAcls(Checkpoint checkpoint) throws DfException {
+      dctmAcls.setAclListener(this);
+      return super.getAcls(checkpoint);
+    }
+
+    @Override
+    public void aclRead(Map<DocId, Acl> acls, Checkpoint checkpoint)
+        throws DfException {
+      for (Map.Entry<DocId, Acl> entry : acls.entrySet()) {
+        aclMap.put(entry.getKey(), entry.getValue());
+        chunkBytes += estimateSize(entry.getKey(), entry.getValue());
+      }
+      if ((aclPushChunkSize > 0 && aclMap.size() >= aclPushChunkSize)
+          || (aclPushChunkBytes > 0 && chunkBytes >= aclPushChunkBytes)) {
+        try {
+          if (!queueChunk(new AclChunk(aclMap, checkpoint))) {
+            throw new DfException("ACL push failed; stopping ACL traversal");
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new DfException(e);
+        }
+        aclMap = new HashMap<>();
+        chunkBytes = 0;
+      }
+    }
+
+    @Override
+    protected Checkpoint pushCollection(DocIdPusher pusher)
+        throws InterruptedException {
+      // Queue the remaining ACLs, along with the final checkpoint.
+      if (queueChunk(new AclChunk(aclMap, dctmAcls.getCheckpoint()))) {
+        queueChunk(endOfChunks);
+      }
+      Checkpoint pushedCheckpoint;
+      try {
+        pushedCheckpoint = chunkPusher.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof InterruptedException) {
+          throw (InterruptedException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else {
+          throw new AssertionError(cause);
+        }
+      }
+      if (isComplete()) {
+        finishAclDigests();
+      }
+      return pushedCheckpoint;
+    }
+
+    @Override
+    protected long getWaitMillis() {
+      return queueWaitMillis;
+    }
+
+    /**
+     * Adds a chunk to the queue, waiting while the queue is full.
+     *
+     * @return {@code true} if the chunk was queued, or {@code false}
+     *     if the pusher thread has stopped
+     */
+    private boolean queueChunk(AclChunk chunk) throws InterruptedException {
+      long start = System.currentTimeMillis();
+      try {
+        while (!chunks.offer(chunk, 1, TimeUnit.SECONDS)) {
+          if (chunkPusher.isDone()) {
+            return false;
+          }
+        }
+        return true;
+      } finally {
+        queueWaitMillis += System.currentTimeMillis() - start;
+      }
+    }
+  }
+
+  /** A chunk of ACLs to push, with the checkpoint for the last ACL. */
+  private static class AclChunk {
+    private final Map<DocId, Acl> acls;
+    private final Checkpoint checkpoint;
+
+    AclChunk(Map<DocId, Acl> acls, Checkpoint checkpoint) {
+      this.acls = acls;
+      this.checkpoint = checkpoint;
+    }
+  }
+
+  /**
+   * Estimates the heap used by an ACL, for limiting the size of ACL
+   * chunks. Strings are assumed to be two bytes per character.
+   */
+  @VisibleForTesting
+  static long estimateSize(DocId docId, Acl acl) {
+    long size = 64 + 2 * docId.getUniqueId().length();
+    for (Collection<? extends Principal> principals : Arrays.asList(
+        acl.getPermitUsers(), acl.getPermitGroups(),
+        acl.getDenyUsers(), acl.getDenyGroups())) {
+      for (Principal principal : principals) {
+        size += 48 + 2 * (principal.getName().length()
+            + principal.getNamespace().length());
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Traverses the ACLs in one contiguous range of object IDs, as part
+   * of a {@link ParallelAclTraverser}.
+   */
+  @VisibleForTesting
+  class AclRangeTraverser extends AclTraverser {
+    private final String endObjectId;
+
+    /**
+     * @param checkpoint the start of the range, exclusive
+     * @param endObjectId the end of the range, inclusive, or {@code null}
+     *     for the last range
+     */
+    protected AclRangeTraverser(Checkpoint checkpoint, String endObjectId) {
+      super(checkpoint);
+      this.endObjectId = endObjectId;
+    }
+
+    @Override
+    protected boolean getAcls(Checkpoint checkpoint) throws DfException {
+      return dctmAcls.getAcls(checkpoint, endObjectId, getQueryBatchSize(),
+          aclMap);
+    }
+
+    @Override
+    public String toString() {
+      return "ACL range ending at " + endObjectId;
+    }
+  }
+
+  /**
+   * Traverses the ACLs in parallel by splitting the r_object_id space
+   * into contiguous ranges, one for each thread. Each range is
+   * traversed by an {@link AclRangeTraverser} with its own session and
+   * checkpoint, so a failure in one range is resumed in that range
+   * alone. The ACLs read by all of the ranges in each pass are merged
+   * and pushed together.
+   */
+  @VisibleForTesting
+  class ParallelAclTraverser {
+    private Sleeper sleeper = DEFAULT_SLEEPER;
+
+    /** The incomplete ranges, or {@code null} to start a new traversal. */
+    private List<AclRangeTraverser> ranges = null;
+
+    private PrincipalDirectory principalDirectory;
+
+    void setPrincipalDirectory(PrincipalDirectory principalDirectory) {
+      this.principalDirectory = principalDirectory;
+    }
+
+    @VisibleForTesting
+    void setSleeper(Sleeper sleeper) {
+      this.sleeper = sleeper;
+    }
+
+    @VisibleForTesting
+    List<AclRangeTraverser> getRanges() {
+      return ranges;
+    }
+
+    /** Creates one traverser for each range of ACLs. */
+    private List<AclRangeTraverser> createRanges()
+        throws DfException, IOException {
+      List<String> rangeEnds;
+      IDfSession dmSession = getDfSession();
+      try {
+        Principals principals = new Principals(dmClientX, dmSession,
+            localNamespace, globalNamespace, windowsDomain);
+        rangeEnds = new DocumentumAcls(dmClientX, dmSession, principals,
+            caseSensitivityType).getRangeEnds(aclTraversalThreads);
+      } finally {
+        dmSessionManager.release(dmSession);
+      }
+      logger.log(Level.FINE, "ACL range ends: {0}", rangeEnds);
+
+      List<AclRangeTraverser> traversers = new ArrayList<>();
+      Checkpoint start = Checkpoint.full();
+      for (String rangeEnd : rangeEnds) {
+        traversers.add(new AclRangeTraverser(start, rangeEnd));
+        start = new Checkpoint(rangeEnd);
+      }
+      traversers.add(new AclRangeTraverser(start, null));
+      return traversers;
+    }
+
+    public void run(DocIdPusher pusher, Collection<DfException> savedExceptions)
+        throws IOException, InterruptedException {
+      if (ranges == null) {
+        try {
+          ranges = createRanges();
+        } catch (DfException e) {
+          savedExceptions.add(e);
+          return;
+        }
+      }
+
+      List<AclRangeTraverser> incomplete = new ArrayList<>();
+      ExecutorService executor = Executors.newFixedThreadPool(ranges.size());
+      try {
+        while (!ranges.isEmpty()) {
+          List<Future<DfException>> futures = new ArrayList<>();
+          for (final AclRangeTraverser range : ranges) {
+            logger.log(Level.FINE, "{0} running from checkpoint {1}",
+                new Object[] {range, range.getCheckpoint()});
+            range.setPrincipalDirectory(principalDirectory);
+            futures.add(executor.submit(new Callable<DfException>() {
+                @Override
+                public DfException call() throws IOException {
+                  return range.fill();
+                }
+              }));
+          }
+
+          List<DfException> caughtExceptions = new ArrayList<>();
+          Map<DocId, Acl> aclMap = new HashMap<>();
+          for (int i = 0; i < ranges.size(); i++) {
+            try {
+              caughtExceptions.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+              Throwable cause = e.getCause();
+              if (cause instanceof IOException) {
+                throw (IOException) cause;
+              } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+              } else if (cause instanceof Error) {
+                throw (Error) cause;
+              }
+              throw new IOException(cause);
+            }
+            aclMap.putAll(ranges.get(i).aclMap);
+          }
+          pushAcls(pusher, aclMap, true);
+
+          boolean isSleeping = false;
+          List<AclRangeTraverser> running = new ArrayList<>();
+          for (int i = 0; i < ranges.size(); i++) {
+            AclRangeTraverser range = ranges.get(i);
+            DfException caughtException = caughtExceptions.get(i);
+            Checkpoint previousCheckpoint = range.getCheckpoint();
+            range.setCheckpoint(range.dctmAcls.getCheckpoint());
+            if (caughtException != null) {
+              if (!Objects.equals(range.getCheckpoint(), previousCheckpoint)) {
+                logger.log(Level.WARNING, "Error in traversal of " + range,
+                    caughtException);
+                isSleeping = true;
+                running.add(range);
+              } else {
+                logger.log(Level.FINE,
+                    "Error with no progress in {0} at checkpoint {1}",
+                    new Object[] {range, range.getCheckpoint()});
+                savedExceptions.add(caughtException);
+                incomplete.add(range);
+              }
+            } else if (!range.isComplete()) {
+              running.add(range);
+            }
+          }
+          if (isSleeping) {
+            logger.log(Level.FINEST, "Waiting for {0}", sleeper);
+            sleeper.sleep();
+          }
+          ranges = running;
+        }
+        if (incomplete.isEmpty()) {
+          finishAclDigests();
+        }
+      } finally {
+        executor.shutdownNow();
+        // Resume any failed ranges on the next traversal.
+        ranges.addAll(incomplete);
+        if (ranges.isEmpty()) {
+          ranges = null;
+        }
+      }
     }
   }
 
@@ -879,8 +2179,19 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
   class GroupTraverser extends TraverserTemplate {
     protected ImmutableMap.Builder<GroupPrincipal, Collection<Principal>>
         groups;
+    protected PrincipalTable principalTable;
     protected Checkpoint groupsCheckpoint;
 
+    /** The chunks of groups moved out of the heap, or {@code null}. */
+    protected GroupSpillFile spillFile;
+    private long chunkBytes;
+
+    /** The large group whose members are being read, or {@code null}. */
+    private LargeGroupMembers largeGroup;
+
+    /** The large groups already added in the current traversal. */
+    private final Set<String> completedLargeGroups = new HashSet<String>();
+
     private final FeedType feedType;
     private boolean prevError;
     private boolean caughtException;
@@ -899,6 +2210,8 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     @Override
     protected void createCollection() {
       groups = ImmutableMap.builder();
+      principalTable = new PrincipalTable();
+      chunkBytes = 0;
     }
 
     @Override
@@ -906,8 +2219,16 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
         Principals principals, Checkpoint checkpoint) throws DfException {
       groupsCheckpoint = checkpoint;
       caughtException = false;
+      if (feedType == FeedType.REPLACE && checkpoint.getObjectId() == null) {
+        // This is the start of a new full traversal.
+        startGroupDigests();
+      }
       try {
-        return getGroups(dmSession, principals);
+        boolean isComplete = getGroups(dmSession, principals);
+        if (isComplete) {
+          completedLargeGroups.clear();
+        }
+        return isComplete;
       } catch (DfException e) {
         caughtException = true;
         throw e;
@@ -924,10 +2245,19 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
         feedType = this.feedType;
       }
 
-      Map<GroupPrincipal, Collection<Principal>> groupDefs = groups.build();
-      pusher.pushGroupDefinitions(groupDefs,
-          caseSensitivityType == CaseSensitivityType.EVERYTHING_CASE_SENSITIVE,
-          feedType, null, null);
+      if (spillFile == null) {
+        pushGroups(pusher, groups.build(), feedType);
+      } else {
+        try {
+          pushSpilledGroups(pusher, spillFile, groups.build(), feedType);
+        } finally {
+          closeSpillFile(spillFile);
+          spillFile = null;
+        }
+      }
+      if (this.feedType == FeedType.REPLACE && isComplete()) {
+        finishGroupDigests(pusher);
+      }
       // If we caught an exception, then the next push will also be incomplete,
       // else (modulo batching) we finished sending all the groups, and the
       // next push can be full again.
@@ -947,13 +2277,15 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
         throws DfException {
       String startObjectId = groupsCheckpoint.getObjectId();
       String stopObjectId = null;
+      int batchSize = getQueryBatchSize();
 
       // When fetching groups in batches, we cannot use both ROW_BASED and
       // RETURN_TOP in the same query because the TOP limit applies to the
       // rows generated by ROW_BASED. So we first get a batch-sized range of
       // object ids for use in a BETWEEN query to fetch the group's members.
-      if (queryBatchSize > 0) {
-        String queryStr = makeGroupsQuery(startObjectId, null, queryBatchSize);
+      if (batchSize > 0) {
+        String queryStr = makeGroupsQuery(startObjectId, null,
+            getEndObjectId(), ImmutableList.<String>of(), batchSize);
         logger.log(Level.FINER, "Between Groups Query: {0}", queryStr);
         IDfQuery query = dmClientX.getQuery();
         query.setDQL(queryStr);
@@ -985,79 +2317,459 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
         }
       }
 
-      String queryStr = makeGroupsQuery(startObjectId, stopObjectId, 0);
+      List<String> largeGroupIds = ImmutableList.of();
+      if (largeGroupMemberThreshold > 0) {
+        largeGroupIds = addLargeGroups(session, principals, startObjectId,
+            stopObjectId);
+      }
+
+      String queryStr = makeGroupsQuery(startObjectId, stopObjectId,
+          getEndObjectId(), largeGroupIds, 0);
       logger.log(Level.FINER, "Get Groups Query: {0}", queryStr);
       IDfQuery query = dmClientX.getQuery();
       query.setDQL(queryStr);
       IDfCollection result = query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
+      List<GroupMembers> pending = new ArrayList<GroupMembers>();
       try {
-        ImmutableSet.Builder<Principal> members = null;
-        String groupName = null;
+        int pendingCount = 0;
+        GroupMembers members = null;
         String objectId = groupsCheckpoint.getObjectId();
         while (result.next()) {
           if (!Objects.equals(objectId, result.getString("r_object_id"))) {
             // We have transitioned to a new group.
-            addGroup(groupName, groups, members, principals);
-            groupsCheckpoint = new Checkpoint(objectId);
-            members = ImmutableSet.builder();
-            groupName = result.getString("group_name");
             objectId = result.getString("r_object_id");
-            logger.log(Level.FINE, "Found Group: {0}", groupName);
+            if (members != null) {
+              pending.add(members);
+              pendingCount += members.size();
+              if (pendingCount >= PRINCIPAL_BATCH_SIZE) {
+                addGroups(pending, principals);
+                pendingCount = 0;
+              }
+            }
+            members = new GroupMembers(result.getString("group_name"),
+                new Checkpoint(objectId));
+            logger.log(Level.FINE, "Found Group: {0}", members.groupName);
           }
-          addMemberPrincipal(members, principals,
-              result.getString("users_names"), false);
-          addMemberPrincipal(members, principals,
-              result.getString("groups_names"), true);
+          members.add(result.getString("users_names"), false);
+          members.add(result.getString("groups_names"), true);
         }
-        addGroup(groupName, groups, members, principals);
+        if (members != null) {
+          pending.add(members);
+        }
+        addGroups(pending, principals);
         groupsCheckpoint = new Checkpoint(stopObjectId);
+      } catch (DfException e) {
+        addGroupsAfterError(pending, principals, e);
+        throw e;
       } finally {
         result.close();
       }
       return (stopObjectId == null);
     }
+
+    /**
+     * Adds the groups in the range with more than
+     * largeGroupMemberThreshold users or groups, reading their members
+     * in pages instead of with the other groups. Each large group is
+     * assembled in its own spill file, and moved to the spill file
+     * pushed with the other groups only once all of its members have
+     * been read. The last member read is kept across errors, so a
+     * failed large group resumes with the page that failed.
+     *
+     * @return the object IDs of the large groups in the range, which
+     *     are excluded from the query for the other groups
+     */
+    private List<String> addLargeGroups(IDfSession session,
+        Principals principals, String startObjectId, String stopObjectId)
+        throws DfException {
+      String queryStr = makeLargeGroupsQuery(startObjectId, stopObjectId,
+          getEndObjectId());
+      logger.log(Level.FINER, "Large Groups Query: {0}", queryStr);
+      IDfQuery query = dmClientX.getQuery();
+      query.setDQL(queryStr);
+      Map<String, String> largeGroups = new LinkedHashMap<String, String>();
+      IDfCollection result = query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
+      try {
+        while (result.next()) {
+          largeGroups.put(result.getString("r_object_id"),
+              result.getString("group_name"));
+        }
+      } finally {
+        result.close();
+      }
+
+      for (Map.Entry<String, String> entry : largeGroups.entrySet()) {
+        String objectId = entry.getKey();
+        if (completedLargeGroups.contains(objectId)) {
+          continue;
+        }
+        if (largeGroup != null && !largeGroup.objectId.equals(objectId)) {
+          // The group we were reading is gone or no longer large.
+          largeGroup.close();
+          largeGroup = null;
+        }
+        GroupPrincipal groupPrincipal =
+            (GroupPrincipal) principals.getPrincipal(entry.getValue(), true);
+        if (groupPrincipal != null) {
+          logger.log(Level.FINE, "Found Large Group: {0}", entry.getValue());
+          try {
+            if (largeGroup == null) {
+              largeGroup = new LargeGroupMembers(objectId, groupPrincipal);
+            }
+            readLargeGroupMembers(session, principals, largeGroup);
+            if (spillFile == null) {
+              spillFile = new GroupSpillFile();
+            }
+            largeGroup.members.writeTo(spillFile);
+          } catch (IOException e) {
+            throw new DfException(e);
+          }
+          largeGroup.close();
+          largeGroup = null;
+        }
+        completedLargeGroups.add(objectId);
+      }
+      return new ArrayList<String>(largeGroups.keySet());
+    }
+
+    /**
+     * Reads the remaining members of a large group, one page of
+     * largeGroupMemberThreshold names at a time, adding each page to
+     * the group's spill file.
+     */
+    private void readLargeGroupMembers(IDfSession session,
+        Principals principals, LargeGroupMembers largeGroup)
+        throws DfException, IOException {
+      while (!largeGroup.isComplete()) {
+        String attribute = largeGroup.getAttribute();
+        boolean isGroup = largeGroup.isReadingGroups();
+        String queryStr = makeGroupMembersQuery(largeGroup.objectId,
+            attribute, largeGroup.lastMember, largeGroupMemberThreshold);
+        logger.log(Level.FINER, "Large Group Members Query: {0}", queryStr);
+        IDfQuery query = dmClientX.getQuery();
+        query.setDQL(queryStr);
+        List<String> names = new ArrayList<String>();
+        IDfCollection result =
+            query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
+        try {
+          while (result.next()) {
+            names.add(result.getString(attribute));
+          }
+        } finally {
+          result.close();
+        }
+
+        Map<String, Boolean> accessorNames = new HashMap<String, Boolean>();
+        for (String name : names) {
+          accessorNames.put(name, isGroup);
+        }
+        principals.resolvePrincipals(accessorNames);
+        List<Principal> members = new ArrayList<Principal>(names.size());
+        for (String name : names) {
+          Principal principal = principals.getPrincipal(name, isGroup);
+          if (principal != null) {
+            members.add(principal);
+          }
+        }
+        largeGroup.members.write(
+            ImmutableMap.of(largeGroup.groupPrincipal, members));
+        largeGroup.advance(names, largeGroupMemberThreshold);
+      }
+    }
+
+    /**
+     * Gets the last object ID to traverse, inclusive.
+     *
+     * @return the end of the range, or {@code null} to traverse
+     *     through the last group
+     */
+    protected String getEndObjectId() {
+      return null;
+    }
+
+    /**
+     * Resolves the principals of the pending groups and their members
+     * in a batch, and then adds the groups, advancing the checkpoint
+     * and removing each group from the list as it is added.
+     */
+    protected void addGroups(List<GroupMembers> pending,
+        Principals principals) throws DfException {
+      if (pending.isEmpty()) {
+        return;
+      }
+      Map<String, Boolean> accessorNames = new HashMap<String, Boolean>();
+      for (GroupMembers members : pending) {
+        accessorNames.put(members.groupName, true);
+        for (int i = 0; i < members.names.size(); i++) {
+          accessorNames.put(members.names.get(i), members.isGroups.get(i));
+        }
+      }
+      principals.resolvePrincipals(accessorNames);
+
+      Iterator<GroupMembers> iterator = pending.iterator();
+      while (iterator.hasNext()) {
+        GroupMembers members = iterator.next();
+        chunkBytes += addGroup(members.groupName, groups,
+            members.getPrincipals(principalTable, principals), principals);
+        groupsCheckpoint = members.checkpoint;
+        iterator.remove();
+        if (groupPushChunkBytes > 0 && chunkBytes >= groupPushChunkBytes) {
+          spillChunk();
+        }
+      }
+    }
+
+    /**
+     * Moves the groups read so far to the spill file, so that the heap
+     * used does not depend on the number of groups.
+     */
+    private void spillChunk() throws DfException {
+      try {
+        if (spillFile == null) {
+          spillFile = new GroupSpillFile();
+        }
+        spillFile.write(groups.build());
+      } catch (IOException e) {
+        throw new DfException(e);
+      }
+      groups = ImmutableMap.builder();
+      chunkBytes = 0;
+    }
+
+    /** Adds the complete groups that were read before an error. */
+    protected void addGroupsAfterError(List<GroupMembers> pending,
+        Principals principals, DfException e) {
+      try {
+        addGroups(pending, principals);
+      } catch (DfException suppressed) {
+        if (suppressed != e) {
+          e.addSuppressed(suppressed);
+        }
+      }
+    }
   }
 
-  /** Adds a group and its members to the collection of groups. */
-  private void addGroup(String groupName,
+  /**
+   * The member names of a group that has been read, held until the
+   * principals can be resolved in a batch with other groups.
+   */
+  private static class GroupMembers {
+    private final String groupName;
+    private final Checkpoint checkpoint;
+    private final List<String> names = new ArrayList<String>();
+    private final List<Boolean> isGroups = new ArrayList<Boolean>();
+
+    GroupMembers(String groupName, Checkpoint checkpoint) {
+      this.groupName = groupName;
+      this.checkpoint = checkpoint;
+    }
+
+    /** Adds a user or group member, ignoring {@code null} names. */
+    void add(String memberName, boolean isGroup) {
+      if (memberName != null) {
+        names.add(memberName);
+        isGroups.add(isGroup);
+      }
+    }
+
+    int size() {
+      return names.size() + 1;
+    }
+
+    /** Gets the principals for the members that exist. */
+    PrincipalTable.SetBuilder getPrincipals(PrincipalTable principalTable,
+        Principals principals) throws DfException {
+      PrincipalTable.SetBuilder members = principalTable.newSetBuilder();
+      for (int i = 0; i < names.size(); i++) {
+        Principal principal =
+            principals.getPrincipal(names.get(i), isGroups.get(i));
+        if (principal != null) {
+          members.add(principal);
+        }
+      }
+      return members;
+    }
+  }
+
+  /**
+   * The progress of reading the members of a large group, page by
+   * page. The users are read first, then the groups, each in order of
+   * their names.
+   */
+  private static class LargeGroupMembers {
+    private final String objectId;
+    private final GroupPrincipal groupPrincipal;
+    private final GroupSpillFile members;
+    private boolean isReadingGroups = false;
+    private boolean isComplete = false;
+
+    /** The last member name read, or {@code null} for none. */
+    private String lastMember = null;
+
+    LargeGroupMembers(String objectId, GroupPrincipal groupPrincipal)
+        throws IOException {
+      this.objectId = objectId;
+      this.groupPrincipal = groupPrincipal;
+      this.members = new GroupSpillFile();
+    }
+
+    String getAttribute() {
+      return isReadingGroups ? "groups_names" : "users_names";
+    }
+
+    boolean isReadingGroups() {
+      return isReadingGroups;
+    }
+
+    boolean isComplete() {
+      return isComplete;
+    }
+
+    /** Records the page of names that has been read. */
+    void advance(List<String> names, int pageSize) {
+      if (names.size() < pageSize) {
+        lastMember = null;
+        isComplete = isReadingGroups;
+        isReadingGroups = true;
+      } else {
+        lastMember = names.get(names.size() - 1);
+      }
+    }
+
+    void close() {
+      closeSpillFile(members);
+    }
+  }
+
+  /**
+   * Adds a group and its members to the collection of groups. The
+   * members are held compactly by the traversal's principal table.
+   *
+   * @return the estimated size of the group definition, or zero if the
+   *     group was not added
+   */
+  private long addGroup(String groupName,
       ImmutableMap.Builder<GroupPrincipal, Collection<Principal>> groupsBuilder,
-      ImmutableSet.Builder<Principal> membersBuilder, Principals principals)
+      PrincipalTable.SetBuilder membersBuilder, Principals principals)
       throws DfException {
     if (membersBuilder == null) {
-      return;
+      return 0;
     }
     GroupPrincipal groupPrincipal = (GroupPrincipal)
         principals.getPrincipal(groupName, true);
     if (groupPrincipal == null) {
-      return;
+      return 0;
     }
-    ImmutableSet<Principal> members = membersBuilder.build();
+    Set<Principal> members = membersBuilder.build();
     groupsBuilder.put(groupPrincipal, members);
     logger.log(Level.FINEST, "Pushing Group {0}: {1}",
         new Object[] { groupPrincipal.getName(), members });
+    return estimateSize(groupPrincipal, members);
   }
 
-  /** Adds a Principal for a user or group to the set of members. */
-  private void addMemberPrincipal(ImmutableSet.Builder<Principal> members,
-     Principals principals, String memberName, boolean isGroup)
-     throws DfException {
-   if (memberName != null) {
-      Principal principal = principals.getPrincipal(memberName, isGroup);
-      if (principal != null) {
-        members.add(principal);
-      }
+  /**
+   * Estimates the heap used by a group definition, for limiting the
+   * size of group chunks. Strings are assumed to be two bytes per
+   * character.
+   */
+  @VisibleForTesting
+  static long estimateSize(GroupPrincipal group,
+      Collection<? extends Principal> members) {
+    long size = 64 + 2 * group.getName().length();
+    for (Principal principal : members) {
+      size += estimateSize(principal);
     }
+    return size;
   }
 
-  /** Builds the DQL query to retrieve the groups. */
+  private static long estimateSize(Principal principal) {
+    return 48 + 2 * (principal.getName().length()
+        + principal.getNamespace().length());
+  }
+
+  /**
+   * Builds the DQL query to retrieve the groups.
+   *
+   * @param excludedObjectIds the large groups to leave out, which are
+   *     read separately
+   */
   private String makeGroupsQuery(String startObjectId, String stopObjectId,
-      int batchSize) {
+      String endObjectId, List<String> excludedObjectIds, int batchSize) {
     StringBuilder query = new StringBuilder();
     query.append("SELECT r_object_id");
     if (batchSize == 0) {
       query.append(", group_name, groups_names, users_names");
     }
     query.append(" FROM dm_group");
+    boolean hasWhere = appendGroupsWhereClause(query, startObjectId,
+        stopObjectId, endObjectId);
+    if (!excludedObjectIds.isEmpty()) {
+      query.append(hasWhere ? " AND " : " WHERE ")
+          .append("r_object_id NOT IN ('")
+          .append(Joiner.on("', '").join(excludedObjectIds)).append("')");
+    }
+    query.append(" ORDER BY r_object_id");
+    if (batchSize == 0) {
+      query.append(" ENABLE(ROW_BASED)");
+    } else {
+      query.append(" ENABLE(RETURN_TOP ").append(batchSize).append(")");
+    }
+    return query.toString();
+  }
+
+  /**
+   * Builds the DQL query to find the groups in a range with more than
+   * largeGroupMemberThreshold users or groups.
+   */
+  private String makeLargeGroupsQuery(String startObjectId,
+      String stopObjectId, String endObjectId) {
+    StringBuilder query = new StringBuilder();
+    query.append("SELECT r_object_id, group_name FROM dm_group");
+    appendGroupsWhereClause(query, startObjectId, stopObjectId, endObjectId);
+    query.append(" GROUP BY r_object_id, group_name")
+        .append(" HAVING COUNT(users_names) > ")
+        .append(largeGroupMemberThreshold)
+        .append(" OR COUNT(groups_names) > ")
+        .append(largeGroupMemberThreshold)
+        .append(" ORDER BY r_object_id ENABLE(ROW_BASED)");
+    return query.toString();
+  }
+
+  /**
+   * Builds the DQL query to retrieve a page of the users or groups in
+   * a large group.
+   *
+   * @param objectId the group's object ID
+   * @param attribute users_names or groups_names
+   * @param lastMember the last member name read, exclusive, or
+   *     {@code null} to start with the first member
+   * @param pageSize the maximum number of members to return
+   */
+  private static String makeGroupMembersQuery(String objectId,
+      String attribute, String lastMember, int pageSize) {
+    StringBuilder query = new StringBuilder();
+    query.append("SELECT ").append(attribute)
+        .append(" FROM dm_group WHERE r_object_id = '").append(objectId)
+        .append("' AND ").append(attribute).append(" IS NOT NULL");
+    if (lastMember != null) {
+      query.append(" AND ").append(attribute).append(" > '")
+          .append(lastMember.replace("'", "''")).append("'");
+    }
+    // The TOP limit applies to the rows generated by ROW_BASED, which is
+    // what we want here.
+    query.append(" ORDER BY ").append(attribute)
+        .append(" ENABLE(ROW_BASED, RETURN_TOP ").append(pageSize)
+        .append(")");
+    return query.toString();
+  }
+
+  /**
+   * Appends the WHERE clause for a range of groups to the query.
+   *
+   * @return whether a WHERE clause was appended
+   */
+  private boolean appendGroupsWhereClause(StringBuilder query,
+      String startObjectId, String stopObjectId, String endObjectId) {
     boolean hasWhere;
     if (stopObjectId != null) {
       query.append(
@@ -1070,27 +2782,297 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     } else {
       hasWhere = false;
     }
+    // If we have BETWEEN, the range query was already limited to the end.
+    if (endObjectId != null && stopObjectId == null) {
+      query.append(hasWhere ? " AND " : " WHERE ")
+          .append("r_object_id <= '").append(endObjectId).append("'");
+      hasWhere = true;
+    }
     // If we have BETWEEN, we already restricted to local groups in range query.
     if (pushLocalGroupsOnly && stopObjectId == null) {
       query.append(hasWhere ? " AND " : " WHERE ")
           .append("(group_source IS NULL OR group_source <> 'LDAP')");
+      hasWhere = true;
     }
-    query.append(" ORDER BY r_object_id");
-    if (batchSize == 0) {
-      query.append(" ENABLE(ROW_BASED)");
-    } else {
-      query.append(" ENABLE(RETURN_TOP ").append(batchSize).append(")");
+    return hasWhere;
+  }
+
+  /**
+   * Splits the group IDs into contiguous ranges with roughly the same
+   * number of groups in each range.
+   *
+   * @param session the session to query
+   * @param rangeCount the maximum number of ranges
+   * @return the last group ID in each range, inclusive, except for the
+   *     final range, which continues through the last group
+   * @throws DfException if error in getting group information
+   */
+  private List<String> getGroupRangeEnds(IDfSession session, int rangeCount)
+      throws DfException {
+    String where = pushLocalGroupsOnly
+        ? " WHERE (group_source IS NULL OR group_source <> 'LDAP')" : "";
+    IDfQuery query = dmClientX.getQuery();
+    query.setDQL("SELECT COUNT(DISTINCT r_object_id) AS group_count "
+        + "FROM dm_group" + where);
+    IDfCollection result = query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
+    int groupCount;
+    try {
+      groupCount = result.next() ? result.getInt("group_count") : 0;
+    } finally {
+      result.close();
+    }
+    int rangeSize = (groupCount + rangeCount - 1) / rangeCount;
+    logger.log(Level.FINE, "Splitting {0} groups into ranges of {1}",
+        new Object[] {groupCount, rangeSize});
+
+    List<String> rangeEnds = new ArrayList<String>();
+    if (rangeSize == 0) {
+      return rangeEnds;
+    }
+    query.setDQL("SELECT r_object_id FROM dm_group" + where
+        + " ORDER BY r_object_id");
+    result = query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
+    try {
+      for (int i = 1; result.next() && i < groupCount; i++) {
+        if (i % rangeSize == 0) {
+          rangeEnds.add(result.getString("r_object_id"));
+        }
+      }
+    } finally {
+      result.close();
+    }
+    return rangeEnds;
+  }
+
+  /**
+   * Traverses the groups in one contiguous range of object IDs, as part
+   * of a {@link ParallelGroupTraverser}. The groups are pushed by the
+   * parallel traverser, not by this one.
+   */
+  @VisibleForTesting
+  class GroupRangeTraverser extends GroupTraverser {
+    private final String endObjectId;
+
+    /**
+     * @param checkpoint the start of the range, exclusive
+     * @param endObjectId the end of the range, inclusive, or {@code null}
+     *     for the last range
+     */
+    protected GroupRangeTraverser(Checkpoint checkpoint, String endObjectId) {
+      super(checkpoint, FeedType.INCREMENTAL);
+      this.endObjectId = endObjectId;
+    }
+
+    @Override
+    protected String getEndObjectId() {
+      return endObjectId;
+    }
+
+    @Override
+    public String toString() {
+      return "Group range ending at " + endObjectId;
+    }
+  }
+
+  /**
+   * Traverses the groups in parallel by splitting the r_object_id space
+   * into contiguous ranges, one for each thread. Each range is
+   * traversed by a {@link GroupRangeTraverser} with its own session,
+   * principals and checkpoint, so a failure in one range is resumed in
+   * that range alone. The groups read by all of the ranges in each pass
+   * are merged and pushed together.
+   *
+   * As with {@link GroupTraverser}, the push replaces all of the groups
+   * only if it holds every group: a new traversal, without batching,
+   * that completes in a single pass with no errors. Every other push is
+   * incremental.
+   */
+  @VisibleForTesting
+  class ParallelGroupTraverser {
+    private Sleeper sleeper = DEFAULT_SLEEPER;
+
+    /** The incomplete ranges, or {@code null} to start a new traversal. */
+    private List<GroupRangeTraverser> ranges = null;
+
+    private PrincipalDirectory principalDirectory;
+
+    void setPrincipalDirectory(PrincipalDirectory principalDirectory) {
+      this.principalDirectory = principalDirectory;
+    }
+
+    @VisibleForTesting
+    void setSleeper(Sleeper sleeper) {
+      this.sleeper = sleeper;
+    }
+
+    @VisibleForTesting
+    List<GroupRangeTraverser> getRanges() {
+      return ranges;
+    }
+
+    /** Creates one traverser for each range of groups. */
+    private List<GroupRangeTraverser> createRanges()
+        throws DfException, IOException {
+      List<String> rangeEnds;
+      IDfSession dmSession = getDfSession();
+      try {
+        rangeEnds = getGroupRangeEnds(dmSession, groupTraversalThreads);
+      } finally {
+        dmSessionManager.release(dmSession);
+      }
+      logger.log(Level.FINE, "Group range ends: {0}", rangeEnds);
+
+      List<GroupRangeTraverser> traversers = new ArrayList<>();
+      Checkpoint start = Checkpoint.full();
+      for (String rangeEnd : rangeEnds) {
+        traversers.add(new GroupRangeTraverser(start, rangeEnd));
+        start = new Checkpoint(rangeEnd);
+      }
+      traversers.add(new GroupRangeTraverser(start, null));
+      return traversers;
+    }
+
+    public void run(DocIdPusher pusher, Collection<DfException> savedExceptions)
+        throws IOException, InterruptedException {
+      boolean isNewTraversal = (ranges == null);
+      if (ranges == null) {
+        try {
+          ranges = createRanges();
+        } catch (DfException e) {
+          savedExceptions.add(e);
+          return;
+        }
+        startGroupDigests();
+      }
+
+      List<GroupRangeTraverser> incomplete = new ArrayList<>();
+      ExecutorService executor = Executors.newFixedThreadPool(ranges.size());
+      try {
+        while (!ranges.isEmpty()) {
+          // The ranges share one spill file, so that a replacement can
+          // read all of the spilled groups back in a single push.
+          GroupSpillFile spillFile =
+              (groupPushChunkBytes > 0 || largeGroupMemberThreshold > 0)
+              ? new GroupSpillFile() : null;
+          List<Future<DfException>> futures = new ArrayList<>();
+          for (final GroupRangeTraverser range : ranges) {
+            logger.log(Level.FINE, "{0} running from checkpoint {1}",
+                new Object[] {range, range.getCheckpoint()});
+            range.setPrincipalDirectory(principalDirectory);
+            range.spillFile = spillFile;
+            futures.add(executor.submit(new Callable<DfException>() {
+                @Override
+                public DfException call() throws IOException {
+                  return range.fill();
+                }
+              }));
+          }
+
+          List<DfException> caughtExceptions = new ArrayList<>();
+          Map<GroupPrincipal, Collection<Principal>> groupDefs =
+              new HashMap<>();
+          boolean hasErrors = false;
+          try {
+            for (int i = 0; i < ranges.size(); i++) {
+              try {
+                DfException caughtException = futures.get(i).get();
+                caughtExceptions.add(caughtException);
+                hasErrors |= (caughtException != null);
+              } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                  throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                  throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                  throw (Error) cause;
+                }
+                throw new IOException(cause);
+              }
+              groupDefs.putAll(ranges.get(i).groups.build());
+              ranges.get(i).spillFile = null;
+            }
+            FeedType feedType =
+                (isNewTraversal && queryBatchSize == 0 && !hasErrors)
+                ? FeedType.REPLACE : FeedType.INCREMENTAL;
+            if (spillFile == null) {
+              pushGroups(pusher, groupDefs, feedType);
+            } else {
+              pushSpilledGroups(pusher, spillFile, groupDefs, feedType);
+            }
+          } finally {
+            if (spillFile != null) {
+              closeSpillFile(spillFile);
+            }
+          }
+          isNewTraversal = false;
+
+          boolean isSleeping = false;
+          List<GroupRangeTraverser> running = new ArrayList<>();
+          for (int i = 0; i < ranges.size(); i++) {
+            GroupRangeTraverser range = ranges.get(i);
+            DfException caughtException = caughtExceptions.get(i);
+            Checkpoint previousCheckpoint = range.getCheckpoint();
+            range.setCheckpoint(range.groupsCheckpoint);
+            if (caughtException != null) {
+              if (!Objects.equals(range.getCheckpoint(), previousCheckpoint)) {
+                logger.log(Level.WARNING, "Error in traversal of " + range,
+                    caughtException);
+                isSleeping = true;
+                running.add(range);
+              } else {
+                logger.log(Level.FINE,
+                    "Error with no progress in {0} at checkpoint {1}",
+                    new Object[] {range, range.getCheckpoint()});
+                savedExceptions.add(caughtException);
+                incomplete.add(range);
+              }
+            } else if (!range.isComplete()) {
+              running.add(range);
+            }
+          }
+          if (isSleeping) {
+            logger.log(Level.FINEST, "Waiting for {0}", sleeper);
+            sleeper.sleep();
+          }
+          ranges = running;
+        }
+        if (incomplete.isEmpty()) {
+          finishGroupDigests(pusher);
+        }
+      } finally {
+        executor.shutdownNow();
+        // Resume any failed ranges on the next traversal.
+        ranges.addAll(incomplete);
+        if (ranges.isEmpty()) {
+          ranges = null;
+        }
+      }
     }
-    return query.toString();
   }
 
   @VisibleForTesting
   class DmWorldTraverser extends TraverserTemplate {
-    private ImmutableMap<GroupPrincipal, ImmutableSet<Principal>> dmWorld =
+    private Map<GroupPrincipal, ? extends Collection<Principal>> dmWorld =
         null;
     private ImmutableSet.Builder<Principal> members = null;
     private Checkpoint membersCheckpoint;
 
+    /** The members moved out of the heap, or {@code null}. */
+    private GroupSpillFile spillFile = null;
+    private long membersBytes = 0;
+
+    /**
+     * The members by user name, when the members are kept for the
+     * incremental traversals, or {@code null}. The members are still
+     * added to {@code members} as well, so that the push of dm_world
+     * spills to a file within the group push budget.
+     */
+    private DmWorldMembers.Builder memberNames = null;
+
+    /** The incremental checkpoint when this rebuild started. */
+    private Checkpoint modifiedUsersCheckpoint;
+
     protected DmWorldTraverser() {
       super(Checkpoint.full());
     }
@@ -1100,43 +3082,129 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
       if (members == null) {
         members = ImmutableSet.builder();
       }
+      if (memberNames == null && dmWorldMembers != null) {
+        memberNames = new DmWorldMembers.Builder();
+        // Changes to the users made while the rebuild is running might
+        // be missed, so they are applied again once it completes.
+        modifiedUsersCheckpoint = modifiedDmWorldTraverser.getCheckpoint();
+      }
     }
 
     @Override
     protected boolean fillCollection(IDfSession session,
         Principals principals, Checkpoint checkpoint) throws DfException {
       membersCheckpoint = checkpoint;
-      String queryStr = makeDmWorldQuery(checkpoint, queryBatchSize);
+      int batchSize = getQueryBatchSize();
+      String queryStr = makeDmWorldQuery(checkpoint, batchSize);
       logger.log(Level.FINER, "Get dm_world Members Query: {0}", queryStr);
       IDfQuery query = dmClientX.getQuery();
       query.setDQL(queryStr);
       IDfCollection result = query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
       boolean isComplete = true;
+      Map<String, Checkpoint> pending = new LinkedHashMap<String, Checkpoint>();
       try {
         while (result.next()) {
-          isComplete = (queryBatchSize == 0);
-          String member = result.getString("user_name");
-          Principal principal = principals.getPrincipal(member, false);
-          if (principal != null) {
-            members.add(principal);
+          isComplete = (batchSize == 0);
+          pending.put(result.getString("user_name"),
+              new Checkpoint(result.getString("r_object_id")));
+          if (pending.size() >= PRINCIPAL_BATCH_SIZE) {
+            addMembers(pending, principals);
+          }
+        }
+        addMembers(pending, principals);
+      } catch (DfException e) {
+        // Add the members that were read before the error.
+        try {
+          addMembers(pending, principals);
+        } catch (DfException suppressed) {
+          if (suppressed != e) {
+            e.addSuppressed(suppressed);
           }
-          membersCheckpoint = new Checkpoint(result.getString("r_object_id"));
         }
+        throw e;
       } finally {
         result.close();
       }
 
       if (isComplete) {
+        if (memberNames != null) {
+          dmWorldMembers.reset(
+              (GroupPrincipal) principals.getPrincipal("dm_world", true),
+              memberNames, System.currentTimeMillis());
+          modifiedDmWorldTraverser.rewind(modifiedUsersCheckpoint);
+          memberNames = null;
+        }
+        if (spillFile == null) {
+          dmWorld = ImmutableMap
+              .of((GroupPrincipal) principals.getPrincipal("dm_world", true),
+                  members.build());
+        } else {
+          spillMembers(principals);
+          dmWorld = spillFile.getGroups(
+              ImmutableMap.<GroupPrincipal, Collection<Principal>>of());
+        }
         // For a successful completion, reset to full.
         membersCheckpoint = Checkpoint.full();
-        dmWorld = ImmutableMap
-            .of((GroupPrincipal) principals.getPrincipal("dm_world", true),
-                members.build());
         members = null;
       }
       return isComplete;
     }
 
+    /**
+     * Moves the members read so far to the spill file, so that the heap
+     * used does not depend on the number of users.
+     */
+    private void spillMembers(Principals principals) throws DfException {
+      try {
+        if (spillFile == null) {
+          spillFile = new GroupSpillFile();
+        }
+        spillFile.write(ImmutableMap.of(
+            (GroupPrincipal) principals.getPrincipal("dm_world", true),
+            members.build()));
+      } catch (IOException e) {
+        throw new DfException(e);
+      }
+      members = ImmutableSet.builder();
+      membersBytes = 0;
+    }
+
+    /**
+     * Resolves the principals of the pending users in a batch, and then
+     * adds them, advancing the checkpoint and removing each user from
+     * the map as it is added.
+     */
+    private void addMembers(Map<String, Checkpoint> pending,
+        Principals principals) throws DfException {
+      if (pending.isEmpty()) {
+        return;
+      }
+      Map<String, Boolean> accessorNames = new HashMap<String, Boolean>();
+      for (String member : pending.keySet()) {
+        accessorNames.put(member, false);
+      }
+      principals.resolvePrincipals(accessorNames);
+
+      Iterator<Map.Entry<String, Checkpoint>> iterator =
+          pending.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<String, Checkpoint> entry = iterator.next();
+        Principal principal = principals.getPrincipal(entry.getKey(), false);
+        if (principal != null) {
+          if (memberNames != null) {
+            memberNames.add(entry.getKey(), principal);
+          }
+          members.add(principal);
+          membersBytes += estimateSize(principal);
+        }
+        membersCheckpoint = entry.getValue();
+        iterator.remove();
+        if (groupPushChunkBytes > 0 && membersBytes >= groupPushChunkBytes) {
+          spillMembers(principals);
+        }
+      }
+    }
+
     @Override
     protected Checkpoint pushCollection(DocIdPusher pusher)
         throws InterruptedException {
@@ -1145,11 +3213,163 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
         pusher.pushGroupDefinitions(dmWorld, caseSensitivityType
             == CaseSensitivityType.EVERYTHING_CASE_SENSITIVE);
         dmWorld = null;
+        if (spillFile != null) {
+          closeSpillFile(spillFile);
+          spillFile = null;
+        }
       }
       return membersCheckpoint;
     }
   }
 
+  /**
+   * Applies the changes to the active users to the dm_world members
+   * kept since the last full rebuild, and pushes dm_world only if its
+   * members have changed. Nothing is read until a full rebuild has
+   * completed.
+   */
+  @VisibleForTesting
+  class ModifiedDmWorldTraverser extends TraverserTemplate {
+    private Checkpoint usersCheckpoint;
+    private boolean isChanged;
+
+    /** The checkpoint to resume from on the next fill, or null. */
+    private Checkpoint rewindCheckpoint;
+
+    protected ModifiedDmWorldTraverser() {
+      super(Checkpoint.incremental());
+    }
+
+    @Override
+    protected void createCollection() {
+      isChanged = false;
+    }
+
+    /**
+     * Resumes from an earlier checkpoint on the next fill, to apply the
+     * changes again after a full rebuild. This may be called while the
+     * incremental traversal is running on another thread.
+     */
+    synchronized void rewind(Checkpoint checkpoint) {
+      rewindCheckpoint = checkpoint;
+    }
+
+    private synchronized Checkpoint takeRewindCheckpoint() {
+      Checkpoint checkpoint = rewindCheckpoint;
+      rewindCheckpoint = null;
+      return checkpoint;
+    }
+
+    @Override
+    protected boolean fillCollection(IDfSession session,
+        Principals principals, Checkpoint checkpoint) throws DfException {
+      Checkpoint rewind = takeRewindCheckpoint();
+      if (rewind != null) {
+        logger.log(Level.FINE, "Applying user changes again from {0}",
+            rewind);
+        checkpoint = rewind;
+      }
+      usersCheckpoint = checkpoint;
+      if (!dmWorldMembers.isInitialized()) {
+        return true;
+      }
+      int batchSize = getQueryBatchSize();
+      String queryStr = makeModifiedUsersQuery(checkpoint, batchSize);
+      logger.log(Level.FINER, "Modified dm_world Members Query: {0}",
+          queryStr);
+      IDfQuery query = dmClientX.getQuery();
+      query.setDQL(queryStr);
+      IDfCollection result = query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
+      int count = 0;
+      Map<String, Boolean> pending = new LinkedHashMap<String, Boolean>();
+      Checkpoint pendingCheckpoint = checkpoint;
+      try {
+        while (result.next()) {
+          count++;
+          // A user may change more than once in a page, so the last
+          // change wins.
+          String userName = result.getString("user_name");
+          pending.remove(userName);
+          pending.put(userName, result.getInt("user_state") == 0);
+          pendingCheckpoint = new Checkpoint(
+              result.getString("r_modify_date_str"),
+              result.getString("r_object_id"));
+        }
+      } catch (DfException e) {
+        // Apply the changes that were read before the error.
+        try {
+          applyChanges(pending, principals);
+          usersCheckpoint = pendingCheckpoint;
+        } catch (DfException suppressed) {
+          if (suppressed != e) {
+            e.addSuppressed(suppressed);
+          }
+        }
+        throw e;
+      } finally {
+        result.close();
+      }
+      applyChanges(pending, principals);
+      usersCheckpoint = pendingCheckpoint;
+      return batchSize == 0 || count < batchSize;
+    }
+
+    /** Resolves the active users in a batch, and applies the changes. */
+    private void applyChanges(Map<String, Boolean> pending,
+        Principals principals) throws DfException {
+      Map<String, Boolean> accessorNames = new HashMap<String, Boolean>();
+      for (Map.Entry<String, Boolean> entry : pending.entrySet()) {
+        if (entry.getValue()) {
+          accessorNames.put(entry.getKey(), false);
+        }
+      }
+      principals.resolvePrincipals(accessorNames);
+      for (Map.Entry<String, Boolean> entry : pending.entrySet()) {
+        Principal principal = entry.getValue()
+            ? principals.getPrincipal(entry.getKey(), false) : null;
+        if (principal == null) {
+          isChanged |= dmWorldMembers.remove(entry.getKey());
+        } else {
+          isChanged |= dmWorldMembers.put(entry.getKey(), principal);
+        }
+      }
+    }
+
+    @Override
+    protected Checkpoint pushCollection(DocIdPusher pusher)
+        throws InterruptedException {
+      if (isChanged) {
+        logger.log(Level.FINE, "Pushing dm_world with {0} members",
+            dmWorldMembers.size());
+        pusher.pushGroupDefinitions(dmWorldMembers.getGroupDefinition(),
+            caseSensitivityType
+            == CaseSensitivityType.EVERYTHING_CASE_SENSITIVE);
+      }
+      return usersCheckpoint;
+    }
+  }
+
+  /** Returns the DQL query to fetch the users modified since a checkpoint. */
+  private String makeModifiedUsersQuery(Checkpoint checkpoint,
+      int batchSize) {
+    StringBuilder query = new StringBuilder();
+    query.append("SELECT r_object_id, user_name, user_state, ")
+        .append(dateToStringFunction)
+        .append("(r_modify_date, 'yyyy-mm-dd hh:mi:ss') ")
+        .append("AS r_modify_date_str FROM dm_user")
+        .append(" WHERE (r_is_group IS NULL OR r_is_group = FALSE) AND ")
+        .append(MessageFormat.format(
+            "((r_modify_date = DATE(''{0}'',''yyyy-mm-dd hh:mi:ss'') AND "
+            + "r_object_id > ''{1}'') OR (r_modify_date > DATE(''{0}'',"
+            + "''yyyy-mm-dd hh:mi:ss'')))",
+            checkpoint.getLastModified(), checkpoint.getObjectId()))
+        .append(" ORDER BY r_modify_date, r_object_id");
+    if (batchSize > 0) {
+      query.append(" ENABLE(RETURN_TOP ").append(batchSize).append(")");
+    }
+    return query.toString();
+  }
+
   /** Returns the DQL Query to fetch all users for dm_world magic group. */
   private String makeDmWorldQuery(Checkpoint checkpoint, int batchSize) {
     StringBuilder query = new StringBuilder();
@@ -1176,15 +3396,44 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     logger.entering("DocumentumAdaptor", "getModifiedDocIds");
 
     ArrayDeque<DfException> savedExceptions = new ArrayDeque<>();
+    pushedChronicleIds = new ChronicleIdSet();
 
     // Push modified documents.
-    modifiedDocumentTraverser.run(pusher, savedExceptions);
+    List<Traversal> traversals = new ArrayList<>();
+    traversals.add(modifiedDocumentTraverser);
 
     if (!markAllDocsAsPublic) {
       // Push modified ACLs, groups and document permissions.
-      modifiedAclTraverser.run(pusher, savedExceptions);
-      modifiedGroupTraverser.run(pusher, savedExceptions);
-      modifiedPermissionsTraverser.run(pusher, savedExceptions);
+      traversals.add(new Traversal() {
+          @Override
+          public void run(DocIdPusher pusher,
+              Collection<DfException> savedExceptions)
+              throws IOException, InterruptedException {
+            modifiedAclTraverser.run(pusher, savedExceptions);
+            saveAclDigests();
+          }
+        });
+      traversals.add(new Traversal() {
+          @Override
+          public void run(DocIdPusher pusher,
+              Collection<DfException> savedExceptions)
+              throws IOException, InterruptedException {
+            modifiedGroupTraverser.run(pusher, savedExceptions);
+            saveGroupDigests();
+          }
+        });
+      if (dmWorldMembers != null) {
+        traversals.add(modifiedDmWorldTraverser);
+      }
+      traversals.add(modifiedPermissionsTraverser);
+    }
+    try {
+      runTraversals(pusher, traversals, savedExceptions);
+    } finally {
+      pushedChronicleIds = null;
+    }
+    if (documentDebouncer != null) {
+      logDocumentDebouncerStats();
     }
 
     if (!savedExceptions.isEmpty()) {
@@ -1206,27 +3455,38 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
 
     @Override
     protected boolean getAcls(Checkpoint checkpoint) throws DfException {
-      return dctmAcls.getUpdateAcls(checkpoint, queryBatchSize, aclMap);
+      return dctmAcls.getUpdateAcls(checkpoint, getQueryBatchSize(), aclMap);
+    }
+
+    @Override
+    protected Checkpoint pushCollection(DocIdPusher pusher)
+        throws InterruptedException {
+      pushAcls(pusher, aclMap, false);
+      return dctmAcls.getCheckpoint();
     }
   }
 
   @VisibleForTesting
   class ModifiedDocumentTraverser extends TraverserTemplate {
-    private ImmutableList.Builder<Record> builder;
+    private ListMultimap<String, Record> updates;
     private Checkpoint docsCheckpoint;
 
+    /** The checkpoint this fill started from. */
+    private Checkpoint startCheckpoint;
+
     protected ModifiedDocumentTraverser() {
       super(Checkpoint.incremental());
     }
 
     @Override
     protected void createCollection() {
-      builder = ImmutableList.builder();
+      updates = LinkedListMultimap.create();
     }
 
     @Override
     protected boolean fillCollection(IDfSession dmSession,
         Principals principals, Checkpoint checkpoint) throws DfException {
+      startCheckpoint = checkpoint;
       docsCheckpoint = checkpoint;
       return getDocumentUpdates(dmSession);
     }
@@ -1234,40 +3494,106 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     @Override
     protected Checkpoint pushCollection(DocIdPusher pusher)
         throws InterruptedException {
-      List<Record> records = builder.build();
+      ListMultimap<String, Record> pushed;
+      if (documentDebouncer == null) {
+        pushed = updates;
+      } else {
+        // Hold the changed documents until they are quiet, and push
+        // the ones that are ready, whether or not they just changed.
+        long now = System.currentTimeMillis();
+        for (String chronicleId : updates.keySet()) {
+          documentDebouncer.add(chronicleId,
+              ImmutableList.copyOf(updates.get(chronicleId)),
+              startCheckpoint, now);
+        }
+        pushed = documentDebouncer.release(now);
+      }
+      List<Record> records = ImmutableList.copyOf(pushed.values());
       logger
           .log(Level.FINER, "DocumentumAdaptor Modified DocIds: {0}", records);
       pusher.pushRecords(records);
+      markPushed(pushed.keySet());
       return docsCheckpoint;
     }
 
+    /**
+     * Gets the checkpoint to save. The held documents are kept only in
+     * memory, so a restarted adaptor resumes from before the oldest
+     * one, and reads them again.
+     */
+    @Override
+    protected Checkpoint getSavedCheckpoint() {
+      Checkpoint oldest = (documentDebouncer == null)
+          ? null : documentDebouncer.getOldestCheckpoint();
+      return (oldest == null) ? super.getSavedCheckpoint() : oldest;
+    }
+
     private boolean getDocumentUpdates(IDfSession session) throws DfException {
-      String queryStr = makeModifiedDocumentsQuery(docsCheckpoint);
+      if (folderPathCache != null) {
+        folderPathCache.refresh(session);
+      }
+      int batchSize = (modifiedDocumentsQuery.isEmpty()
+          || pageModifiedDocumentsQuery) ? getQueryBatchSize() : 0;
+      String queryStr = makeModifiedDocumentsQuery(docsCheckpoint, batchSize);
       logger.log(Level.FINER, "Modified DocIds Query: {0}", queryStr);
       IDfQuery query = dmClientX.getQuery();
       query.setDQL(queryStr);
       IDfCollection result = query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
+      ListMultimap<String, String> pending = LinkedListMultimap.create();
+      Checkpoint startCheckpoint = docsCheckpoint;
+      Checkpoint pendingCheckpoint = docsCheckpoint;
+      int count = 0;
       try {
         String lastModified = docsCheckpoint.getLastModified();
         String objectId = docsCheckpoint.getObjectId();
         while (result.next()) {
+          count++;
           lastModified = result.getString("r_modify_date_str");
           objectId = result.getString("r_object_id");
           String chronicleId = result.getString("i_chronicle_id");
           String name = result.getString("object_name");
-          addUpdatedDocIds(builder, session, chronicleId, name);
-          docsCheckpoint = new Checkpoint(lastModified, objectId);
+          pending.put(chronicleId, name);
+          pendingCheckpoint = new Checkpoint(lastModified, objectId);
+          if (pending.size() >= getPathBatchSize()) {
+            addUpdatedDocIds(updates, session, pending);
+            docsCheckpoint = pendingCheckpoint;
+          }
+        }
+        addUpdatedDocIds(updates, session, pending);
+        docsCheckpoint = pendingCheckpoint;
+      } catch (DfException e) {
+        // Add the objects that were read before the error.
+        try {
+          addUpdatedDocIds(updates, session, pending);
+          docsCheckpoint = pendingCheckpoint;
+        } catch (DfException suppressed) {
+          if (suppressed != e) {
+            e.addSuppressed(suppressed);
+          }
         }
+        throw e;
       } finally {
         result.close();
       }
-      return true;
+      // A full page means there may be more modified documents, which
+      // are read after this page is pushed. A custom query that returns
+      // a full page without moving past the checkpoint is not paged
+      // from now on, and is read again in full.
+      if (batchSize > 0 && count >= batchSize
+          && startCheckpoint.equals(docsCheckpoint)) {
+        logger.log(Level.WARNING, "Modified documents query did not advance "
+            + "past checkpoint {0}. The query will not be paged.",
+            docsCheckpoint);
+        pageModifiedDocumentsQuery = false;
+        return false;
+      }
+      return batchSize == 0 || count < batchSize;
     }
   }
 
   @VisibleForTesting
   class ModifiedPermissionsTraverser extends TraverserTemplate {
-    private ImmutableList.Builder<Record> builder;
+    private ListMultimap<String, Record> updates;
     private Checkpoint permissionsCheckpoint;
 
     protected ModifiedPermissionsTraverser() {
@@ -1276,7 +3602,7 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
 
     @Override
     protected void createCollection() {
-      builder = ImmutableList.builder();
+      updates = LinkedListMultimap.create();
     }
 
     @Override
@@ -1289,10 +3615,11 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     @Override
     protected Checkpoint pushCollection(DocIdPusher pusher)
         throws InterruptedException {
-      List<Record> records = builder.build();
+      List<Record> records = ImmutableList.copyOf(updates.values());
       logger.log(Level.FINER, "DocumentumAdaptor Modified ACL Links: {0}",
           records);
       pusher.pushRecords(records);
+      markPushed(updates.keySet());
       return permissionsCheckpoint;
     }
 
@@ -1306,6 +3633,8 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
       IDfQuery query = dmClientX.getQuery();
       query.setDQL(queryStr);
       IDfCollection result = query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
+      ListMultimap<String, String> pending = LinkedListMultimap.create();
+      Checkpoint pendingCheckpoint = permissionsCheckpoint;
       try {
         HashSet<String> chronicleIds = new HashSet<>();
         String eventDate = permissionsCheckpoint.getLastModified();
@@ -1328,11 +3657,28 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
                 + "audited_obj_id: {2}, "
                 + "chronicle_id: {3}",
                 new String[] {eventDate, eventId, objectId, chronicleId});
-            addUpdatedDocIds(builder, session, chronicleId, objectName);
+            pending.put(chronicleId, objectName);
             chronicleIds.add(chronicleId);
           }
-          permissionsCheckpoint = new Checkpoint(eventDate, eventId);
+          pendingCheckpoint = new Checkpoint(eventDate, eventId);
+          if (pending.size() >= getPathBatchSize()) {
+            addUpdatedDocIds(updates, session, pending);
+            permissionsCheckpoint = pendingCheckpoint;
+          }
         }
+        addUpdatedDocIds(updates, session, pending);
+        permissionsCheckpoint = pendingCheckpoint;
+      } catch (DfException e) {
+        // Add the objects that were read before the error.
+        try {
+          addUpdatedDocIds(updates, session, pending);
+          permissionsCheckpoint = pendingCheckpoint;
+        } catch (DfException suppressed) {
+          if (suppressed != e) {
+            e.addSuppressed(suppressed);
+          }
+        }
+        throw e;
       } finally {
         result.close();
       }
@@ -1340,39 +3686,128 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     }
   }
 
+  /**
+   * Gets the number of modified objects to read before adding their
+   * DocIds. Without the folder path cache, the paths are read for one
+   * object at a time, so there is nothing to gain from a batch.
+   */
+  private int getPathBatchSize() {
+    return (folderPathCache == null) ? 1 : PATH_BATCH_SIZE;
+  }
+
   /**
    * A document can reside under multiple folder paths.
    * Only push those paths that are under our start paths.
+   * The pending objects are removed after all of them are added.
+   * Objects already pushed in this incremental traversal, for example
+   * a document whose content and permissions both changed, are skipped
+   * without reading their paths. The objects added here are marked as
+   * pushed by {@link #markPushed} once their records are pushed.
+   *
+   * @param updates the records for the modified objects, by chronicle ID
+   * @param pending the names of the modified objects by chronicle ID,
+   *    where the document name is appended to the folder paths
+   */
+  private void addUpdatedDocIds(ListMultimap<String, Record> updates,
+      IDfSession session, ListMultimap<String, String> pending)
+      throws DfException {
+    ChronicleIdSet pushed = pushedChronicleIds;
+    if (pushed != null) {
+      Iterator<String> iterator = pending.keySet().iterator();
+      while (iterator.hasNext()) {
+        String chronicleId = iterator.next();
+        if (pushed.contains(chronicleId)) {
+          logger.log(Level.FINEST, "Skipping already pushed object {0}",
+              chronicleId);
+          iterator.remove();
+        }
+      }
+    }
+    if (pending.isEmpty()) {
+      return;
+    }
+    Map<String, List<String>> objectPaths;
+    if (folderPathCache == null) {
+      objectPaths = new HashMap<String, List<String>>();
+      for (String chronicleId : pending.keySet()) {
+        objectPaths.put(chronicleId, getObjectPaths(session, chronicleId));
+      }
+    } else {
+      objectPaths = folderPathCache.getObjectPaths(session, pending.keySet());
+    }
+    for (Map.Entry<String, String> entry : pending.entries()) {
+      String chronicleId = entry.getKey();
+      List<String> paths = objectPaths.get(chronicleId);
+      if (paths == null) {
+        continue;
+      }
+      for (String path : paths) {
+        DocId docId = docIdFromPath(path, entry.getValue(), chronicleId);
+        if (isUnderStartPath(docId)) {
+          updates.put(chronicleId, new Record.Builder(docId)
+              .setCrawlImmediately(true).build());
+        }
+      }
+    }
+    pending.clear();
+  }
+
+  /**
+   * Records the objects pushed in this incremental traversal, so that
+   * they are not pushed again by another traverser.
    *
-   * @param builder builder for list of DocIds
-   * @param chronicleId the chronicle ID of a Documentum object
-   * @param name the document name to append to the folder
-   *    paths for a document, or null for a folder
+   * @param chronicleIds the chronicle IDs of the pushed objects
    */
-  private void addUpdatedDocIds(ImmutableList.Builder<Record> builder,
-      IDfSession session, String chronicleId, String name) throws DfException {
-    IDfEnumeration enumPaths = session.getObjectPaths(new DfId(chronicleId));
+  private void markPushed(Collection<String> chronicleIds) {
+    ChronicleIdSet pushed = pushedChronicleIds;
+    if (pushed != null) {
+      for (String chronicleId : chronicleIds) {
+        pushed.add(chronicleId);
+      }
+    }
+  }
+
+  /** Gets the folder paths of an object from the repository. */
+  private static List<String> getObjectPaths(IDfSession session,
+      String objectId) throws DfException {
+    List<String> paths = new ArrayList<String>();
+    IDfEnumeration enumPaths = session.getObjectPaths(new DfId(objectId));
     while (enumPaths.hasMoreElements()) {
       IDfObjectPath objPath = (IDfObjectPath) enumPaths.nextElement();
-      String path = objPath.getFullPath();
-      DocId docId = docIdFromPath(path, name, chronicleId);
-      if (isUnderStartPath(docId, validatedStartPaths)) {
-        builder.add(new Record.Builder(docId)
-            .setCrawlImmediately(true).build());
-      }
+      paths.add(objPath.getFullPath());
     }
+    return paths;
   }
 
-  private String makeModifiedDocumentsQuery(Checkpoint checkpoint) {
+  /**
+   * Gets the query for the documents modified after the checkpoint.
+   * The query returns at most {@code batchSize} documents, or all of
+   * them if the batch size is zero. Paging depends on the query being
+   * ordered by r_modify_date and r_object_id, as the default query is,
+   * so a custom query is only paged if it ends with that ORDER BY.
+   */
+  private String makeModifiedDocumentsQuery(Checkpoint checkpoint,
+      int batchSize) {
     if (modifiedDocumentsQuery.isEmpty()) {
-      return makeModifiedDocumentsDefaultQuery(checkpoint);
+      return makeModifiedDocumentsDefaultQuery(checkpoint, batchSize);
+    }
+    String query = MessageFormat.format(modifiedDocumentsQuery,
+        checkpoint.getLastModified(), checkpoint.getObjectId());
+    if (batchSize == 0) {
+      return query;
+    }
+    // Add RETURN_TOP to any hints already in the custom query.
+    Matcher matcher = ENABLE_HINTS_PATTERN.matcher(query);
+    if (matcher.find()) {
+      return matcher.replaceFirst(Matcher.quoteReplacement(
+          matcher.group() + "RETURN_TOP " + batchSize + ", "));
     } else {
-      return MessageFormat.format(modifiedDocumentsQuery,
-          checkpoint.getLastModified(), checkpoint.getObjectId());
+      return query + " ENABLE(RETURN_TOP " + batchSize + ")";
     }
   }
 
-  private String makeModifiedDocumentsDefaultQuery(Checkpoint checkpoint) {
+  private String makeModifiedDocumentsDefaultQuery(Checkpoint checkpoint,
+      int batchSize) {
     StringBuilder query = new StringBuilder();
     query.append("SELECT r_modify_date, r_object_id, i_chronicle_id, ")
         .append("object_name, ")
@@ -1396,6 +3831,9 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     query.append(" AND (FOLDER('");
     Joiner.on("',descend) OR FOLDER('").appendTo(query, validatedStartPaths);
     query.append("',descend)) ORDER BY r_modify_date, r_object_id");
+    if (batchSize > 0) {
+      query.append(" ENABLE(RETURN_TOP ").append(batchSize).append(")");
+    }
     return query.toString();
   }
 
@@ -1427,49 +3865,123 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
       super(Checkpoint.incremental(), FeedType.INCREMENTAL);
     }
 
+    /**
+     * Adds the modified groups and their members to the map builder.
+     * When fetching groups in batches, each call reads one page of
+     * modified groups, which is pushed and checkpointed separately.
+     */
     @Override
     protected boolean getGroups(IDfSession session, Principals principals)
         throws DfException {
-      String queryStr = makeUpdatedGroupsQuery(groupsCheckpoint);
+      Checkpoint stopCheckpoint = null;
+      boolean isLastPage = true;
+      int batchSize = getQueryBatchSize();
+
+      // As in the full traversal, we cannot use both ROW_BASED and
+      // RETURN_TOP in the same query. So we first find the last group
+      // in a batch-sized page of modified groups, and then fetch the
+      // members of the groups through that one.
+      if (batchSize > 0) {
+        String queryStr =
+            makeUpdatedGroupsQuery(groupsCheckpoint, null, batchSize);
+        logger.log(Level.FINER, "Modified Groups Page Query: {0}", queryStr);
+        IDfQuery query = dmClientX.getQuery();
+        query.setDQL(queryStr);
+        IDfCollection result =
+            query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
+        int count = 0;
+        try {
+          while (result.next()) {
+            stopCheckpoint = new Checkpoint(
+                result.getString("r_modify_date_str"),
+                result.getString("r_object_id"));
+            count++;
+          }
+          isLastPage = (count < batchSize);
+        } catch (DfException e) {
+          if (stopCheckpoint == null) {
+            throw e;
+          } else {
+            // Continue on with a reduced page.
+            logger.log(Level.WARNING, "Processing through group "
+                + stopCheckpoint.getObjectId() + " after error.", e);
+            isLastPage = false;
+          }
+        } finally {
+          result.close();
+        }
+        if (stopCheckpoint == null) {
+          // No more modified groups. We are done.
+          return true;
+        }
+      }
+
+      String queryStr =
+          makeUpdatedGroupsQuery(groupsCheckpoint, stopCheckpoint, 0);
       logger.log(Level.FINER, "Modified Groups Query: {0}", queryStr);
       IDfQuery query = dmClientX.getQuery();
       query.setDQL(queryStr);
       IDfCollection result = query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
+      List<GroupMembers> pending = new ArrayList<GroupMembers>();
       try {
-        ImmutableSet.Builder<Principal> members = null;
-        String groupName = null;
-        String lastModified = groupsCheckpoint.getLastModified();
+        int pendingCount = 0;
+        GroupMembers members = null;
         String objectId = groupsCheckpoint.getObjectId();
         while (result.next()) {
           if (!Objects.equals(objectId, result.getString("r_object_id"))) {
             // We have transitioned to a new group.
-            addGroup(groupName, groups, members, principals);
-            groupsCheckpoint = new Checkpoint(lastModified, objectId);
-            members = ImmutableSet.builder();
-            groupName = result.getString("group_name");
-            lastModified = result.getString("r_modify_date_str");
             objectId = result.getString("r_object_id");
-            logger.log(Level.FINE, "Found Group: {0}", groupName);
+            if (members != null) {
+              pending.add(members);
+              pendingCount += members.size();
+              if (pendingCount >= PRINCIPAL_BATCH_SIZE) {
+                addGroups(pending, principals);
+                pendingCount = 0;
+              }
+            }
+            members = new GroupMembers(result.getString("group_name"),
+                new Checkpoint(result.getString("r_modify_date_str"),
+                    objectId));
+            logger.log(Level.FINE, "Found Group: {0}", members.groupName);
           }
-          addMemberPrincipal(members, principals,
-              result.getString("users_names"), false);
-          addMemberPrincipal(members, principals,
-              result.getString("groups_names"), true);
+          members.add(result.getString("users_names"), false);
+          members.add(result.getString("groups_names"), true);
+        }
+        if (members != null) {
+          pending.add(members);
+        }
+        addGroups(pending, principals);
+        if (stopCheckpoint != null) {
+          // Skip any groups in the page that are no longer found.
+          groupsCheckpoint = stopCheckpoint;
         }
-        addGroup(groupName, groups, members, principals);
-        groupsCheckpoint = new Checkpoint(lastModified, objectId);
+      } catch (DfException e) {
+        addGroupsAfterError(pending, principals, e);
+        throw e;
       } finally {
         result.close();
       }
-      return true;
+      return isLastPage;
     }
   }
 
-  /** Builds the DQL query to retrieve new and modified groups. */
-  private String makeUpdatedGroupsQuery(Checkpoint checkpoint) {
+  /**
+   * Builds the DQL query to retrieve new and modified groups.
+   *
+   * @param checkpoint the last group already read, exclusive
+   * @param stopCheckpoint the last group to read, inclusive, or
+   *     {@code null} to read all of the remaining groups
+   * @param batchSize the number of groups to read, or zero to read the
+   *     members of the groups
+   */
+  private String makeUpdatedGroupsQuery(Checkpoint checkpoint,
+      Checkpoint stopCheckpoint, int batchSize) {
     StringBuilder query = new StringBuilder();
-    query.append("SELECT r_object_id, group_name, groups_names, users_names, ")
-        .append("r_modify_date, ")
+    query.append("SELECT r_object_id, ");
+    if (batchSize == 0) {
+      query.append("group_name, groups_names, users_names, ");
+    }
+    query.append("r_modify_date, ")
         .append(dateToStringFunction)
         .append("(r_modify_date, 'yyyy-mm-dd hh:mi:ss') ")
         .append("AS r_modify_date_str FROM dm_group WHERE ")
@@ -1478,10 +3990,22 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
             + "r_object_id > ''{1}'') OR (r_modify_date > DATE(''{0}'',"
             + "''yyyy-mm-dd hh:mi:ss'')))",
             checkpoint.getLastModified(), checkpoint.getObjectId()));
+    if (stopCheckpoint != null) {
+      query.append(MessageFormat.format(
+          " AND ((r_modify_date = DATE(''{0}'',''yyyy-mm-dd hh:mi:ss'') AND "
+          + "r_object_id <= ''{1}'') OR (r_modify_date < DATE(''{0}'',"
+          + "''yyyy-mm-dd hh:mi:ss'')))",
+          stopCheckpoint.getLastModified(), stopCheckpoint.getObjectId()));
+    }
     if (pushLocalGroupsOnly) {
       query.append(" AND (group_source IS NULL OR group_source <> 'LDAP')");
     }
-    query.append(" ORDER BY r_modify_date, r_object_id ENABLE(ROW_BASED)");
+    query.append(" ORDER BY r_modify_date, r_object_id");
+    if (batchSize == 0) {
+      query.append(" ENABLE(ROW_BASED)");
+    } else {
+      query.append(" ENABLE(RETURN_TOP ").append(batchSize).append(")");
+    }
     return query.toString();
   }
 
@@ -1494,7 +4018,7 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
     DocId id = req.getDocId();
     logger.log(Level.FINER, "Get content for id: {0}", id);
 
-    if (!isUnderStartPath(id, validatedStartPaths)) {
+    if (!isUnderStartPath(id)) {
       logger.log(Level.FINER, "Not under a start path: {0}", id);
       resp.respondNotFound();
       return;
@@ -1589,6 +4113,12 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
   /**
    * Returns true if one of the object paths matches to DocId path.
    *
+   * The cached folder paths are only refreshed by the incremental
+   * traversal, so a renamed or moved folder keeps its old paths until
+   * the next incremental update. Until then, a path that is not cached
+   * is checked against the live object paths, but an old path that is
+   * still cached continues to match.
+   *
    * @throws DfException
    */
   private boolean matchObjectPathsToDocId(DocId id, IDfSession dmSession,
@@ -1606,15 +4136,23 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
       return true;
     }
 
-    IDfEnumeration enumPaths =
-        dmSession.getObjectPaths(sysObject.getObjectId());
-    while (enumPaths.hasMoreElements()) {
-      IDfObjectPath objectPath = (IDfObjectPath) enumPaths.nextElement();
-      if (path.equals(objectPath.getFullPath())) {
-        return true;
+    List<String> objectPaths;
+    if (folderPathCache == null) {
+      objectPaths =
+          getObjectPaths(dmSession, sysObject.getObjectId().toString());
+    } else {
+      // The folder IDs are already loaded with the object.
+      List<String> folderIds = new ArrayList<String>();
+      for (int i = 0; i < sysObject.getFolderIdCount(); i++) {
+        folderIds.add(sysObject.getFolderId(i).toString());
+      }
+      objectPaths = folderPathCache.getFolderPaths(dmSession, folderIds);
+      if (!objectPaths.contains(path)) {
+        objectPaths =
+            getObjectPaths(dmSession, sysObject.getObjectId().toString());
       }
     }
-    return false;
+    return objectPaths.contains(path);
   }
 
   /**
@@ -1622,19 +4160,10 @@ public class DocumentumAdaptor extends AbstractAdaptor implements
    * validated {@code startPaths}, {@code false} otherwise.
    *
    * @param docId a DocId representing a document
-   * @param startPaths a List of normalized start paths
    */
-  private boolean isUnderStartPath(DocId docId, List<String> startPaths) {
-    String path = docIdToPath(docId);
-    for (String startPath : startPaths) {
-      if (startPath.equals("/")) {
-        return true;
-      }
-      if (startPath.equals(path) || path.startsWith(startPath + "/")) {
-        return true;
-      }
-    }
-    return false;
+  private boolean isUnderStartPath(DocId docId) {
+    String id = docId.getUniqueId();
+    return startPathMatcher.matches(id, 0, pathLength(id));
   }
 
   private boolean isValidatedDocumentType(IDfType type) throws DfException {
@@ -0,0 +1,296 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+
+import com.documentum.com.IDfClientX;
+import com.documentum.fc.client.IDfCollection;
+import com.documentum.fc.client.IDfQuery;
+import com.documentum.fc.client.IDfSession;
+import com.documentum.fc.common.DfException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A cache of the r_folder_path values of the folders, so that the
+ * paths of an object can be computed from its i_folder_id values
+ * without calling {@code IDfSession.getObjectPaths} for each object.
+ *
+ * The cache is seeded with every folder the first time it is used.
+ * After that, {@link #refresh} reads the folders modified since the
+ * latest r_modify_date seen. When the paths of a folder change, the
+ * cached folders below it are dropped, and are read again when they
+ * are next needed.
+ */
+class FolderPathCache {
+  private static Logger logger =
+      Logger.getLogger(FolderPathCache.class.getName());
+
+  /**
+   * Maximum number of object IDs in the IN list of a single query,
+   * to keep the DQL statement to a reasonable length.
+   */
+  private static final int MAX_IN_LIST_SIZE = 250;
+
+  private final IDfClientX dmClientX;
+  private final String dateToStringFunction;
+
+  /** The paths of each folder, by r_object_id. */
+  private final ConcurrentHashMap<String, List<String>> folderPaths =
+      new ConcurrentHashMap<String, List<String>>();
+
+  /** The latest r_modify_date seen, or {@code null} if not seeded. */
+  private volatile String lastModified = null;
+
+  FolderPathCache(IDfClientX dmClientX, String dateToStringFunction) {
+    this.dmClientX = checkNotNull(dmClientX, "dmClientX may not be null");
+    this.dateToStringFunction = dateToStringFunction;
+  }
+
+  /**
+   * Gets the folder paths of objects, without the object names.
+   *
+   * @param session the session to query
+   * @param objectIds the r_object_id values of the objects
+   * @return a map from each object that was found to its folder paths
+   * @throws DfException if error in getting the objects or folders
+   */
+  Map<String, List<String>> getObjectPaths(IDfSession session,
+      Collection<String> objectIds) throws DfException {
+    seed(session);
+    Map<String, List<String>> folderIds =
+        new LinkedHashMap<String, List<String>>();
+    Iterator<String> iterator = objectIds.iterator();
+    while (iterator.hasNext()) {
+      String inList = makeInList(iterator);
+      IDfQuery query = dmClientX.getQuery();
+      query.setDQL("SELECT r_object_id, i_folder_id FROM dm_sysobject "
+          + "WHERE r_object_id IN (" + inList + ")");
+      IDfCollection result =
+          query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
+      try {
+        while (result.next()) {
+          folderIds.put(result.getString("r_object_id"),
+              getRepeatingValues(result, "i_folder_id"));
+        }
+      } finally {
+        result.close();
+      }
+    }
+
+    List<String> allFolderIds = new ArrayList<String>();
+    for (List<String> ids : folderIds.values()) {
+      allFolderIds.addAll(ids);
+    }
+    loadMissingFolders(session, allFolderIds);
+
+    Map<String, List<String>> objectPaths =
+        new LinkedHashMap<String, List<String>>();
+    for (Map.Entry<String, List<String>> entry : folderIds.entrySet()) {
+      objectPaths.put(entry.getKey(), getFolderPaths(entry.getValue()));
+    }
+    return objectPaths;
+  }
+
+  /**
+   * Gets the paths of the given folders from the cache.
+   *
+   * @param folderIds the i_folder_id values of an object
+   * @return the paths of the folders that are cached
+   */
+  List<String> getFolderPaths(List<String> folderIds) {
+    List<String> paths = new ArrayList<String>();
+    for (String folderId : folderIds) {
+      List<String> folder = folderPaths.get(folderId);
+      if (folder == null) {
+        logger.log(Level.FINEST, "Folder not found: {0}", folderId);
+      } else {
+        paths.addAll(folder);
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * Gets the paths of the given folders, reading any that are not
+   * cached.
+   */
+  List<String> getFolderPaths(IDfSession session, List<String> folderIds)
+      throws DfException {
+    seed(session);
+    loadMissingFolders(session, folderIds);
+    return getFolderPaths(folderIds);
+  }
+
+  /**
+   * Reads the folders modified since the cache was seeded or last
+   * refreshed. Does nothing if the cache has not been seeded.
+   *
+   * @param session the session to query
+   * @throws DfException if error in getting the folders
+   */
+  synchronized void refresh(IDfSession session) throws DfException {
+    if (lastModified == null) {
+      return;
+    }
+    // Folders modified in the same second as the last one seen are
+    // read again, since they may not have all been seen.
+    String latest = loadFolders(session, makeFoldersQuery(
+        " WHERE r_modify_date >= DATE('" + lastModified
+        + "','yyyy-mm-dd hh:mi:ss')"), true);
+    if (latest != null && latest.compareTo(lastModified) > 0) {
+      lastModified = latest;
+    }
+  }
+
+  /** Reads every folder, the first time the cache is used. */
+  private void seed(IDfSession session) throws DfException {
+    if (lastModified != null) {
+      return;
+    }
+    synchronized (this) {
+      if (lastModified == null) {
+        String latest = loadFolders(session, makeFoldersQuery(""), true);
+        // Without any folders, every folder will be new.
+        lastModified = (latest == null) ? "1970-01-01 00:00:00" : latest;
+        logger.log(Level.FINE, "Cached the paths of {0} folders",
+            folderPaths.size());
+      }
+    }
+  }
+
+  /** Reads the folders that are not cached, such as new folders. */
+  private void loadMissingFolders(IDfSession session,
+      Collection<String> folderIds) throws DfException {
+    Set<String> missing = new LinkedHashSet<String>();
+    for (String folderId : folderIds) {
+      if (!folderPaths.containsKey(folderId)) {
+        missing.add(folderId);
+      }
+    }
+    Iterator<String> iterator = missing.iterator();
+    while (iterator.hasNext()) {
+      loadFolders(session, "SELECT r_object_id, r_folder_path FROM dm_folder "
+          + "WHERE r_object_id IN (" + makeInList(iterator) + ")", false);
+    }
+  }
+
+  @VisibleForTesting
+  int size() {
+    return folderPaths.size();
+  }
+
+  /**
+   * Reads the paths of folders into the cache.
+   *
+   * @param queryStr the folders query
+   * @param isModified {@code true} if the query selects the
+   *     r_modify_date_str of the folders, and the folders below any
+   *     folder with new paths should be dropped
+   * @return the latest r_modify_date_str read, or {@code null}
+   */
+  private String loadFolders(IDfSession session, String queryStr,
+      boolean isModified) throws DfException {
+    logger.log(Level.FINER, "Folder Paths Query: {0}", queryStr);
+    IDfQuery query = dmClientX.getQuery();
+    query.setDQL(queryStr);
+    IDfCollection result = query.execute(session, IDfQuery.DF_EXECREAD_QUERY);
+    String latest = null;
+    try {
+      while (result.next()) {
+        String folderId = result.getString("r_object_id");
+        List<String> paths = getRepeatingValues(result, "r_folder_path");
+        List<String> oldPaths = folderPaths.put(folderId, paths);
+        if (isModified) {
+          if (oldPaths != null && !oldPaths.equals(paths)) {
+            removeDescendants(folderId, oldPaths);
+          }
+          String modifyDate = result.getString("r_modify_date_str");
+          if (latest == null
+              || (modifyDate != null && modifyDate.compareTo(latest) > 0)) {
+            latest = modifyDate;
+          }
+        }
+      }
+    } finally {
+      result.close();
+    }
+    return latest;
+  }
+
+  /** Drops the cached folders below a folder that has moved. */
+  private void removeDescendants(String folderId, List<String> oldPaths) {
+    logger.log(Level.FINE, "Folder {0} moved from {1}",
+        new Object[] {folderId, oldPaths});
+    Iterator<Map.Entry<String, List<String>>> iterator =
+        folderPaths.entrySet().iterator();
+    while (iterator.hasNext()) {
+      for (String path : iterator.next().getValue()) {
+        if (isDescendant(path, oldPaths)) {
+          iterator.remove();
+          break;
+        }
+      }
+    }
+  }
+
+  private static boolean isDescendant(String path, List<String> parents) {
+    for (String parent : parents) {
+      if (path.startsWith(parent + "/")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private String makeFoldersQuery(String whereClause) {
+    return "SELECT r_object_id, r_folder_path, " + dateToStringFunction
+        + "(r_modify_date, 'yyyy-mm-dd hh:mi:ss') AS r_modify_date_str "
+        + "FROM dm_folder" + whereClause;
+  }
+
+  private static List<String> getRepeatingValues(IDfCollection result,
+      String attrName) throws DfException {
+    ImmutableList.Builder<String> values = ImmutableList.builder();
+    for (int i = 0; i < result.getValueCount(attrName); i++) {
+      values.add(result.getRepeatingString(attrName, i));
+    }
+    return values.build();
+  }
+
+  /** Takes the next batch of IDs from the iterator as a DQL IN list. */
+  private static String makeInList(Iterator<String> iterator) {
+    StringBuilder inList = new StringBuilder();
+    for (int i = 0; i < MAX_IN_LIST_SIZE && iterator.hasNext(); i++) {
+      inList.append((i == 0) ? "'" : ", '").append(iterator.next())
+          .append("'");
+    }
+    return inList.toString();
+  }
+}
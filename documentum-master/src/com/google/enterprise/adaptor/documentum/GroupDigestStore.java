@@ -0,0 +1,236 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.enterprise.adaptor.GroupPrincipal;
+import com.google.enterprise.adaptor.Principal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent store of the digests of the group definitions pushed
+ * to the GSA. A full traversal uses the digests to push only the new
+ * and changed groups, and empty definitions for the deleted groups,
+ * instead of replacing every group. Every group is still pushed, with
+ * a full traversal's usual feed type, when the last such full push is
+ * older than the configured interval.
+ *
+ * The store is saved to a local {@link AtomicFile}, one tab-separated
+ * {@code digest namespace name} entry per line, along with the time
+ * of the last full push.
+ */
+class GroupDigestStore {
+  private static Logger logger =
+      Logger.getLogger(GroupDigestStore.class.getName());
+
+  private static final String FULL_PUSH = "fullPush";
+
+  private static final Splitter TAB_SPLITTER = Splitter.on('\t');
+
+  private final File file;
+  private final AtomicFile atomicFile;
+
+  /** The digests of the groups that have been pushed. */
+  private final Map<GroupPrincipal, String> digests =
+      new HashMap<GroupPrincipal, String>();
+
+  /** The groups seen since the current full traversal started. */
+  private final Set<GroupPrincipal> seen = new HashSet<GroupPrincipal>();
+
+  /** The time the last full push completed, or zero if never. */
+  private long lastFullPush;
+
+  /** Whether the current full traversal pushes every group. */
+  private boolean isFullPush = true;
+
+  GroupDigestStore(File file) {
+    this.file = file;
+    this.atomicFile = new AtomicFile(file);
+  }
+
+  /**
+   * Loads the digests from the file. A missing file is treated as an
+   * empty store.
+   */
+  synchronized void load() throws IOException {
+    digests.clear();
+    lastFullPush = 0;
+    try (BufferedReader reader =
+        Files.newBufferedReader(file.toPath(), UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        List<String> fields = TAB_SPLITTER.splitToList(line);
+        if (fields.size() == 2 && fields.get(0).equals(FULL_PUSH)) {
+          try {
+            lastFullPush = Long.parseLong(fields.get(1));
+          } catch (NumberFormatException e) {
+            logger.log(Level.FINE, "Skipping invalid full push time: {0}",
+                line);
+          }
+        } else if (fields.size() == 3) {
+          digests.put(new GroupPrincipal(fields.get(2), fields.get(1)),
+              fields.get(0));
+        } else {
+          logger.log(Level.FINE, "Skipping invalid group digest: {0}", line);
+        }
+      }
+    } catch (NoSuchFileException e) {
+      logger.log(Level.FINE, "No group digests found in {0}", file);
+    }
+    logger.log(Level.FINE, "Loaded {0} group digests from {1}",
+        new Object[] {digests.size(), file});
+  }
+
+  /** Saves the digests to the file, replacing it. */
+  synchronized void save() throws IOException {
+    try (Writer writer = new BufferedWriter(
+        new OutputStreamWriter(atomicFile.startWrite(), UTF_8))) {
+      writer.write(FULL_PUSH + "\t" + lastFullPush + "\n");
+      for (Map.Entry<GroupPrincipal, String> entry : digests.entrySet()) {
+        GroupPrincipal group = entry.getKey();
+        // Tabs and newlines in names would corrupt the file, so skip
+        // them. Those groups are pushed again on the next traversal.
+        if (isValidField(group.getNamespace())
+            && isValidField(group.getName())) {
+          writer.write(entry.getValue() + "\t" + group.getNamespace() + "\t"
+              + group.getName() + "\n");
+        }
+      }
+    }
+    atomicFile.finishWrite();
+    logger.log(Level.FINE, "Saved {0} group digests to {1}",
+        new Object[] {digests.size(), file});
+  }
+
+  /**
+   * Starts a new full traversal, deciding whether it pushes every
+   * group or only the changed groups.
+   *
+   * @param now the current time, in milliseconds
+   * @param fullPushInterval the maximum time between full pushes,
+   *     in milliseconds
+   */
+  synchronized void startTraversal(long now, long fullPushInterval) {
+    isFullPush = (lastFullPush == 0 || now - lastFullPush >= fullPushInterval);
+    seen.clear();
+    logger.log(Level.FINE, "Starting a {0} group traversal",
+        isFullPush ? "full" : "differential");
+  }
+
+  /** Returns whether the current full traversal pushes every group. */
+  synchronized boolean isFullPush() {
+    return isFullPush;
+  }
+
+  /**
+   * Gets the digests of the groups that have changed since they were
+   * last pushed. The digests are not recorded until
+   * {@link #putDigests} is called after a successful push.
+   *
+   * @param groups the group definitions to check
+   * @return a map from the new or changed groups to their digests
+   */
+  synchronized Map<GroupPrincipal, String> getChangedDigests(
+      Map<GroupPrincipal, ? extends Collection<Principal>> groups) {
+    Map<GroupPrincipal, String> changed =
+        new LinkedHashMap<GroupPrincipal, String>();
+    for (Map.Entry<GroupPrincipal, ? extends Collection<Principal>> entry
+        : groups.entrySet()) {
+      String digest = digest(entry.getValue());
+      if (!digest.equals(digests.get(entry.getKey()))) {
+        changed.put(entry.getKey(), digest);
+      }
+      seen.add(entry.getKey());
+    }
+    return changed;
+  }
+
+  /** Records the digests of groups that have been pushed. */
+  synchronized void putDigests(Map<GroupPrincipal, String> pushed) {
+    digests.putAll(pushed);
+  }
+
+  /**
+   * Completes a full traversal, removing the digests of the groups
+   * that were not seen during it.
+   *
+   * @param now the current time, in milliseconds
+   * @return the groups that were not seen, which have been deleted
+   */
+  synchronized Set<GroupPrincipal> finishTraversal(long now) {
+    Set<GroupPrincipal> deleted = new HashSet<GroupPrincipal>();
+    Iterator<GroupPrincipal> iterator = digests.keySet().iterator();
+    while (iterator.hasNext()) {
+      GroupPrincipal group = iterator.next();
+      if (!seen.contains(group)) {
+        deleted.add(group);
+        iterator.remove();
+      }
+    }
+    seen.clear();
+    if (isFullPush) {
+      lastFullPush = now;
+    }
+    return deleted;
+  }
+
+  @VisibleForTesting
+  synchronized int size() {
+    return digests.size();
+  }
+
+  /** Computes a digest of the sorted members of a group. */
+  @VisibleForTesting
+  static String digest(Collection<Principal> members) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (Principal principal : new TreeSet<Principal>(members)) {
+      hasher.putBoolean(principal.isGroup())
+          .putString(principal.getName(), UTF_8)
+          .putByte((byte) 0)
+          .putString(principal.getNamespace(), UTF_8)
+          .putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  private static boolean isValidField(String value) {
+    return value.indexOf('\t') == -1 && value.indexOf('\n') == -1
+        && value.indexOf('\r') == -1;
+  }
+}
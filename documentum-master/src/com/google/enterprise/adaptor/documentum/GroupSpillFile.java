@@ -0,0 +1,356 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import com.google.common.io.CountingOutputStream;
+import com.google.enterprise.adaptor.GroupPrincipal;
+import com.google.enterprise.adaptor.Principal;
+import com.google.enterprise.adaptor.UserPrincipal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A temporary file holding chunks of group definitions that have been
+ * moved out of the heap. The groups can be read back one chunk at a
+ * time, or as a single map, for a push that must include every group.
+ * The map reads each group's members from the file as they are
+ * iterated, so only the file offsets of the groups are kept in memory.
+ *
+ * A group may be written in more than one chunk, for example the
+ * members of dm_world, and its members are the union of the chunks.
+ */
+class GroupSpillFile implements Closeable {
+  private static Logger logger =
+      Logger.getLogger(GroupSpillFile.class.getName());
+
+  /** A run of members of one group in the file. */
+  private static class Segment {
+    private final long offset;
+    private final int count;
+
+    Segment(long offset, int count) {
+      this.offset = offset;
+      this.count = count;
+    }
+  }
+
+  private final File file;
+  private final CountingOutputStream counter;
+  private final DataOutputStream out;
+
+  /** The segments of each group, in the order they were written. */
+  private final Map<GroupPrincipal, List<Segment>> index =
+      new LinkedHashMap<GroupPrincipal, List<Segment>>();
+
+  /** The groups in each chunk. */
+  private final List<List<GroupPrincipal>> chunks =
+      new ArrayList<List<GroupPrincipal>>();
+
+  GroupSpillFile() throws IOException {
+    file = Files.createTempFile("groups", ".spill").toFile();
+    counter = new CountingOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file)));
+    out = new DataOutputStream(counter);
+    logger.log(Level.FINE, "Spilling groups to {0}", file);
+  }
+
+  /** Writes a chunk of group definitions to the file. */
+  synchronized void write(
+      Map<GroupPrincipal, ? extends Collection<Principal>> groups)
+      throws IOException {
+    if (groups.isEmpty()) {
+      return;
+    }
+    List<GroupPrincipal> chunk = new ArrayList<GroupPrincipal>();
+    for (Map.Entry<GroupPrincipal, ? extends Collection<Principal>> entry
+        : groups.entrySet()) {
+      Segment segment =
+          new Segment(counter.getCount(), entry.getValue().size());
+      for (Principal principal : entry.getValue()) {
+        out.writeBoolean(principal.isGroup());
+        out.writeUTF(principal.getName());
+        out.writeUTF(principal.getNamespace());
+      }
+      List<Segment> segments = index.get(entry.getKey());
+      if (segments == null) {
+        segments = new ArrayList<Segment>();
+        index.put(entry.getKey(), segments);
+      }
+      segments.add(segment);
+      chunk.add(entry.getKey());
+    }
+    out.flush();
+    chunks.add(chunk);
+  }
+
+  /** Returns whether any groups have been written. */
+  synchronized boolean isEmpty() {
+    return index.isEmpty();
+  }
+
+  /**
+   * Gets all of the groups that have been written, followed by the
+   * groups still in memory, as a map that reads the members of the
+   * written groups from the file.
+   *
+   * @param remaining the groups that have not been written, none of
+   *     which may have been written before
+   */
+  Map<GroupPrincipal, Collection<Principal>> getGroups(
+      final Map<GroupPrincipal, ? extends Collection<Principal>> remaining) {
+    return new AbstractMap<GroupPrincipal, Collection<Principal>>() {
+      @Override
+      public Collection<Principal> get(Object key) {
+        synchronized (GroupSpillFile.this) {
+          List<Segment> segments = index.get(key);
+          return (segments == null)
+              ? remaining.get(key) : new SpilledMembers(segments);
+        }
+      }
+
+      @Override
+      public boolean containsKey(Object key) {
+        synchronized (GroupSpillFile.this) {
+          return index.containsKey(key) || remaining.containsKey(key);
+        }
+      }
+
+      @Override
+      public Set<Map.Entry<GroupPrincipal, Collection<Principal>>>
+          entrySet() {
+        return new AbstractSet<Map.Entry<GroupPrincipal,
+            Collection<Principal>>>() {
+          @Override
+          public int size() {
+            synchronized (GroupSpillFile.this) {
+              return index.size() + remaining.size();
+            }
+          }
+
+          @Override
+          public Iterator<Map.Entry<GroupPrincipal, Collection<Principal>>>
+              iterator() {
+            return Iterators.concat(getWrittenGroups(), ImmutableMap
+                .<GroupPrincipal, Collection<Principal>>copyOf(remaining)
+                .entrySet().iterator());
+          }
+        };
+      }
+    };
+  }
+
+  /** Iterates over the written groups, reading members from the file. */
+  private Iterator<Map.Entry<GroupPrincipal, Collection<Principal>>>
+      getWrittenGroups() {
+    final Iterator<Map.Entry<GroupPrincipal, List<Segment>>> groups =
+        index.entrySet().iterator();
+    return new Iterator<Map.Entry<GroupPrincipal, Collection<Principal>>>() {
+      @Override
+      public boolean hasNext() {
+        return groups.hasNext();
+      }
+
+      @Override
+      public Map.Entry<GroupPrincipal, Collection<Principal>> next() {
+        Map.Entry<GroupPrincipal, List<Segment>> entry = groups.next();
+        return new AbstractMap.SimpleImmutableEntry<GroupPrincipal,
+            Collection<Principal>>(entry.getKey(),
+                new SpilledMembers(entry.getValue()));
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Gets the chunks of groups that have been written, reading each
+   * chunk into memory as it is iterated. A group written in more than
+   * one chunk is read whole in the first of them, so that each chunk
+   * holds complete group definitions.
+   */
+  Iterable<Map<GroupPrincipal, Collection<Principal>>> getChunks() {
+    return new Iterable<Map<GroupPrincipal, Collection<Principal>>>() {
+      @Override
+      public Iterator<Map<GroupPrincipal, Collection<Principal>>> iterator() {
+        final Iterator<List<GroupPrincipal>> iterator = chunks.iterator();
+        final Set<GroupPrincipal> seen = new HashSet<GroupPrincipal>();
+        return new Iterator<Map<GroupPrincipal, Collection<Principal>>>() {
+          private List<GroupPrincipal> next = null;
+
+          @Override
+          public boolean hasNext() {
+            while (next == null && iterator.hasNext()) {
+              List<GroupPrincipal> chunk = new ArrayList<GroupPrincipal>();
+              for (GroupPrincipal group : iterator.next()) {
+                if (seen.add(group)) {
+                  chunk.add(group);
+                }
+              }
+              if (!chunk.isEmpty()) {
+                next = chunk;
+              }
+            }
+            return next != null;
+          }
+
+          @Override
+          public Map<GroupPrincipal, Collection<Principal>> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            Map<GroupPrincipal, Collection<Principal>> chunk =
+                new LinkedHashMap<GroupPrincipal, Collection<Principal>>();
+            for (GroupPrincipal group : next) {
+              chunk.put(group, new ArrayList<Principal>(
+                  new SpilledMembers(index.get(group))));
+            }
+            next = null;
+            return chunk;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Copies the groups that have been written to another spill file.
+   * Each segment is copied separately, so the members are still read
+   * back one segment at a time.
+   */
+  synchronized void writeTo(GroupSpillFile target) throws IOException {
+    for (Map.Entry<GroupPrincipal, List<Segment>> entry : index.entrySet()) {
+      for (Segment segment : entry.getValue()) {
+        target.write(ImmutableMap.of(entry.getKey(), read(segment)));
+      }
+    }
+  }
+
+  /** Closes and deletes the file. */
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      out.close();
+    } finally {
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
+  /** Reads the principals in one segment of the file. */
+  private List<Principal> read(Segment segment) {
+    List<Principal> principals = new ArrayList<Principal>(segment.count);
+    try (FileInputStream input = new FileInputStream(file)) {
+      input.getChannel().position(segment.offset);
+      DataInputStream in =
+          new DataInputStream(new BufferedInputStream(input));
+      for (int i = 0; i < segment.count; i++) {
+        boolean isGroup = in.readBoolean();
+        String name = in.readUTF();
+        String namespace = in.readUTF();
+        principals.add(isGroup ? new GroupPrincipal(name, namespace)
+            : new UserPrincipal(name, namespace));
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read groups from " + file, e);
+    }
+    return principals;
+  }
+
+  /**
+   * The members of a group in the file, read one segment at a time
+   * as they are iterated.
+   */
+  private class SpilledMembers extends AbstractCollection<Principal> {
+    private final List<Segment> segments;
+    private final int size;
+
+    SpilledMembers(List<Segment> segments) {
+      this.segments = segments;
+      int size = 0;
+      for (Segment segment : segments) {
+        size += segment.count;
+      }
+      this.size = size;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public Iterator<Principal> iterator() {
+      return new Iterator<Principal>() {
+        private final Iterator<Segment> segmentIterator = segments.iterator();
+        private Iterator<Principal> principals =
+            Collections.<Principal>emptyList().iterator();
+
+        @Override
+        public boolean hasNext() {
+          while (!principals.hasNext() && segmentIterator.hasNext()) {
+            principals = read(segmentIterator.next()).iterator();
+          }
+          return principals.hasNext();
+        }
+
+        @Override
+        public Principal next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return principals.next();
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,180 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+
+/**
+ * Extracts the leftmost DC value from an LDAP DN, without parsing the
+ * DN into {@code Rdn} objects. Most DNs are simple, so they are
+ * scanned in place. A DN with any escaping, quoting, hex values or
+ * multi-valued RDNs is parsed with {@link LdapName} instead.
+ *
+ * Users share a small number of DN suffixes, so the domain of each
+ * suffix, starting at the first DC RDN, is remembered.
+ */
+class LdapDnScanner {
+  /** Characters that require the full RFC 2253 parser. */
+  private static final String SPECIAL_CHARS = "\\\"#+;<>";
+
+  private static final Cache<String, Optional<String>> suffixDomains =
+      CacheBuilder.newBuilder().maximumSize(1000).build();
+
+  private LdapDnScanner() {
+  }
+
+  /**
+   * Gets the leftmost DC value in a DN. For example, given
+   * "uid=xyz,ou=engineer,dc=corp,dc=example,dc=com", it will return
+   * "corp".
+   *
+   * @param userDn the Documentum user LDAP DN
+   * @return the first domain component, or {@code null} if the DN
+   *     does not contain a DC attribute
+   * @throws InvalidNameException if a syntax violation is detected.
+   */
+  static String getFirstDomain(String userDn) throws InvalidNameException {
+    if (!isSimple(userDn)) {
+      return getFirstDomainFromLdapName(userDn);
+    }
+    int start = 0;
+    while (start < userDn.length()) {
+      int end = userDn.indexOf(',', start);
+      if (end == -1) {
+        end = userDn.length();
+      }
+      int equals = userDn.indexOf('=', start);
+      if (equals == -1 || equals > end
+          || !isValidAttribute(userDn, start, equals)) {
+        return getFirstDomainFromLdapName(userDn);
+      }
+      if (isDc(userDn, start, equals)) {
+        String suffix = userDn.substring(start);
+        Optional<String> domain = suffixDomains.getIfPresent(suffix);
+        if (domain == null) {
+          domain = Optional.fromNullable(
+              getFirstDomainFromSuffix(userDn, equals, end));
+          suffixDomains.put(suffix, domain);
+        }
+        return domain.orNull();
+      }
+      start = end + 1;
+    }
+    return null;
+  }
+
+  /**
+   * Gets the value of the DC RDN at the start of the suffix, after
+   * checking that the rest of the suffix is valid.
+   */
+  private static String getFirstDomainFromSuffix(String userDn, int equals,
+      int end) throws InvalidNameException {
+    for (int next = end + 1; next < userDn.length(); ) {
+      int nextEnd = userDn.indexOf(',', next);
+      if (nextEnd == -1) {
+        nextEnd = userDn.length();
+      }
+      int nextEquals = userDn.indexOf('=', next);
+      if (nextEquals == -1 || nextEquals > nextEnd
+          || !isValidAttribute(userDn, next, nextEquals)) {
+        return getFirstDomainFromLdapName(userDn);
+      }
+      next = nextEnd + 1;
+    }
+    return trimSpaces(userDn, equals + 1, end);
+  }
+
+  /** Parses the DN with the full RFC 2253 parser. */
+  @VisibleForTesting
+  static String getFirstDomainFromLdapName(String userDn)
+      throws InvalidNameException {
+    return Principals.getFirstDomainFromDN(
+        Principals.getDomainComponents(userDn));
+  }
+
+  /**
+   * Returns whether the DN has only unescaped, single-valued RDNs
+   * separated by commas, and no control characters. Blank DNs and
+   * DNs ending in a comma are left to the full parser to reject.
+   */
+  private static boolean isSimple(String userDn) {
+    for (int i = 0; i < userDn.length(); i++) {
+      char c = userDn.charAt(i);
+      if (c < ' ' || SPECIAL_CHARS.indexOf(c) != -1) {
+        return false;
+      }
+    }
+    int last = userDn.length() - 1;
+    while (last >= 0 && userDn.charAt(last) == ' ') {
+      last--;
+    }
+    return (last == -1) ? userDn.isEmpty() : userDn.charAt(last) != ',';
+  }
+
+  /**
+   * Returns whether the attribute type of an RDN, ignoring
+   * surrounding spaces, is a non-empty keyword or OID, and the value
+   * has no more equals signs.
+   */
+  private static boolean isValidAttribute(String userDn, int start,
+      int equals) {
+    int typeStart = skipSpaces(userDn, start, equals);
+    int typeEnd = equals;
+    while (typeEnd > typeStart && userDn.charAt(typeEnd - 1) == ' ') {
+      typeEnd--;
+    }
+    if (typeStart == typeEnd) {
+      return false;
+    }
+    for (int i = typeStart; i < typeEnd; i++) {
+      char c = userDn.charAt(i);
+      if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')
+          && !(c >= '0' && c <= '9') && c != '-' && c != '.') {
+        return false;
+      }
+    }
+    int end = userDn.indexOf(',', equals);
+    int nextEquals = userDn.indexOf('=', equals + 1);
+    return nextEquals == -1 || (end != -1 && nextEquals > end);
+  }
+
+  /** Returns whether the attribute type is DC, ignoring case. */
+  private static boolean isDc(String userDn, int start, int equals) {
+    int typeStart = skipSpaces(userDn, start, equals);
+    return userDn.regionMatches(true, typeStart, "dc", 0, 2)
+        && skipSpaces(userDn, typeStart + 2, equals) == equals;
+  }
+
+  private static int skipSpaces(String userDn, int start, int end) {
+    while (start < end && userDn.charAt(start) == ' ') {
+      start++;
+    }
+    return start;
+  }
+
+  private static String trimSpaces(String userDn, int start, int end) {
+    start = skipSpaces(userDn, start, end);
+    while (end > start && userDn.charAt(end - 1) == ' ') {
+      end--;
+    }
+    return userDn.substring(start, end);
+  }
+}
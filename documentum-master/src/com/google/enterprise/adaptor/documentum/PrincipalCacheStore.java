@@ -0,0 +1,185 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.enterprise.adaptor.GroupPrincipal;
+import com.google.enterprise.adaptor.Principal;
+import com.google.enterprise.adaptor.UserPrincipal;
+import com.google.enterprise.adaptor.documentum.Principals.CachedPrincipal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent copy of the {@link Principals} cache, so that the
+ * resolved users and groups survive restarts and full traversals.
+ *
+ * The store also holds a high-water mark, the latest r_modify_date
+ * of the users and groups seen when the cache was last refreshed.
+ * Only the cached entries for users and groups modified since then
+ * need to be invalidated.
+ *
+ * Each entry keeps the time it was first written to the cache, so
+ * that a restart does not extend its lifetime. Entries that have
+ * expired are dropped when the store is loaded.
+ *
+ * The store is saved to a local {@link AtomicFile}, with one
+ * tab-separated entry per line.
+ */
+class PrincipalCacheStore {
+  private static Logger logger =
+      Logger.getLogger(PrincipalCacheStore.class.getName());
+
+  private static final String HIGH_WATER_MARK = "highWaterMark";
+  private static final String USER = "U";
+  private static final String GROUP = "G";
+  private static final String MISSING = "N";
+
+  private static final Splitter TAB_SPLITTER = Splitter.on('\t');
+
+  private final File file;
+  private final AtomicFile atomicFile;
+
+  /** The latest r_modify_date seen, or {@code null} if unknown. */
+  private String highWaterMark;
+
+  PrincipalCacheStore(File file) {
+    this.file = file;
+    this.atomicFile = new AtomicFile(file);
+  }
+
+  synchronized String getHighWaterMark() {
+    return highWaterMark;
+  }
+
+  synchronized void setHighWaterMark(String highWaterMark) {
+    this.highWaterMark = highWaterMark;
+  }
+
+  /**
+   * Loads the high-water mark and the cached principals from the file
+   * into the {@link Principals} cache. A missing file is treated as an
+   * empty store.
+   */
+  synchronized void load() throws IOException {
+    highWaterMark = null;
+    Map<String, CachedPrincipal> principals =
+        new HashMap<String, CachedPrincipal>();
+    try (BufferedReader reader =
+        Files.newBufferedReader(file.toPath(), UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        List<String> fields = TAB_SPLITTER.splitToList(line);
+        if (fields.size() == 2 && fields.get(0).equals(HIGH_WATER_MARK)) {
+          highWaterMark = fields.get(1);
+          continue;
+        }
+        Optional<Principal> principal;
+        if (fields.size() == 3 && fields.get(0).equals(MISSING)) {
+          principal = Optional.absent();
+        } else if (fields.size() == 5 && fields.get(0).equals(USER)) {
+          principal = Optional.<Principal>of(
+              new UserPrincipal(fields.get(4), fields.get(3)));
+        } else if (fields.size() == 5 && fields.get(0).equals(GROUP)) {
+          principal = Optional.<Principal>of(
+              new GroupPrincipal(fields.get(4), fields.get(3)));
+        } else {
+          logger.log(Level.FINE, "Skipping invalid principal: {0}", line);
+          continue;
+        }
+        long writeMillis;
+        try {
+          writeMillis = Long.parseLong(fields.get(1));
+        } catch (NumberFormatException e) {
+          logger.log(Level.FINE, "Skipping invalid principal: {0}", line);
+          continue;
+        }
+        principals.put(fields.get(2),
+            new CachedPrincipal(principal, writeMillis));
+      }
+    } catch (NoSuchFileException e) {
+      logger.log(Level.FINE, "No cached principals found in {0}", file);
+    }
+    if (highWaterMark == null) {
+      // Without a high-water mark we cannot tell which entries are stale.
+      principals.clear();
+    }
+    int count = Principals.putCachedPrincipals(principals);
+    logger.log(Level.FINE,
+        "Loaded {0} cached principals from {1}, skipping {2} expired",
+        new Object[] {count, file, principals.size() - count});
+  }
+
+  /**
+   * Saves the high-water mark and the principals in the
+   * {@link Principals} cache to the file, replacing it.
+   */
+  synchronized void save() throws IOException {
+    Map<String, CachedPrincipal> principals =
+        Principals.getCachedPrincipals();
+    try (Writer writer = new BufferedWriter(
+        new OutputStreamWriter(atomicFile.startWrite(), UTF_8))) {
+      if (highWaterMark != null) {
+        writer.write(HIGH_WATER_MARK + "\t" + highWaterMark + "\n");
+      }
+      for (Map.Entry<String, CachedPrincipal> entry
+          : principals.entrySet()) {
+        String accessorName = entry.getKey();
+        if (!isValidField(accessorName)) {
+          continue;
+        }
+        Optional<Principal> value = entry.getValue().getPrincipal();
+        long writeMillis = entry.getValue().getWriteMillis();
+        if (!value.isPresent()) {
+          writer.write(MISSING + "\t" + writeMillis + "\t" + accessorName
+              + "\n");
+          continue;
+        }
+        Principal principal = value.get();
+        if (isValidField(principal.getNamespace())
+            && isValidField(principal.getName())) {
+          writer.write((principal.isGroup() ? GROUP : USER) + "\t"
+              + writeMillis + "\t" + accessorName + "\t"
+              + principal.getNamespace() + "\t" + principal.getName()
+              + "\n");
+        }
+      }
+    }
+    atomicFile.finishWrite();
+    logger.log(Level.FINE, "Saved {0} cached principals to {1}",
+        new Object[] {principals.size(), file});
+  }
+
+  /** Tabs and newlines in names would corrupt the file, so skip them. */
+  private static boolean isValidField(String value) {
+    return value.indexOf('\t') == -1 && value.indexOf('\n') == -1
+        && value.indexOf('\r') == -1;
+  }
+}
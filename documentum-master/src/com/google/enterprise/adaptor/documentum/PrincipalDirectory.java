@@ -0,0 +1,138 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import com.google.common.base.Strings;
+
+import com.documentum.com.IDfClientX;
+import com.documentum.fc.client.IDfCollection;
+import com.documentum.fc.client.IDfQuery;
+import com.documentum.fc.client.IDfSession;
+import com.documentum.fc.common.DfException;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An in-memory index of the active Documentum users and groups, read
+ * with one scan of dm_user and one scan of dm_group. During a full
+ * traversal, {@link Principals} looks up accessors here instead of
+ * querying the repository for each one.
+ */
+class PrincipalDirectory {
+  private static Logger logger =
+      Logger.getLogger(PrincipalDirectory.class.getName());
+
+  /** The attributes of an active dm_user, which may be a group. */
+  static class User {
+    final String loginName;
+    final String source;
+    final String ldapDn;
+    final boolean isGroup;
+
+    User(String loginName, String source, String ldapDn, boolean isGroup) {
+      this.loginName = loginName;
+      this.source = source;
+      this.ldapDn = ldapDn;
+      this.isGroup = isGroup;
+    }
+  }
+
+  private final Map<String, User> users = new HashMap<String, User>();
+  private final Set<String> groups = new HashSet<String>();
+  private final Set<String> globalGroups = new HashSet<String>();
+
+  private PrincipalDirectory() {
+  }
+
+  /**
+   * Reads all of the active users and all of the groups.
+   *
+   * @param dmClientX the DFC client
+   * @param dmSession the session to query
+   * @return the directory
+   * @throws DfException if error in getting user or group information
+   */
+  static PrincipalDirectory load(IDfClientX dmClientX, IDfSession dmSession)
+      throws DfException {
+    PrincipalDirectory directory = new PrincipalDirectory();
+
+    IDfCollection result = execute(dmClientX, dmSession,
+        "SELECT user_name, user_login_name, user_source, user_ldap_dn, "
+        + "r_is_group, user_state FROM dm_user");
+    try {
+      while (result.next()) {
+        if (result.getInt("user_state") == 0) {
+          directory.users.put(result.getString("user_name"),
+              new User(result.getString("user_login_name"),
+                  result.getString("user_source"),
+                  result.getString("user_ldap_dn"),
+                  result.getBoolean("r_is_group")));
+        }
+      }
+    } finally {
+      result.close();
+    }
+
+    result = execute(dmClientX, dmSession,
+        "SELECT group_name, group_source FROM dm_group");
+    try {
+      while (result.next()) {
+        String groupName = result.getString("group_name");
+        directory.groups.add(groupName);
+        if (!Strings.isNullOrEmpty(result.getString("group_source"))) {
+          directory.globalGroups.add(groupName);
+        }
+      }
+    } finally {
+      result.close();
+    }
+
+    logger.log(Level.FINE, "Loaded {0} active users and {1} groups",
+        new Object[] {directory.users.size(), directory.groups.size()});
+    return directory;
+  }
+
+  private static IDfCollection execute(IDfClientX dmClientX,
+      IDfSession dmSession, String queryStr) throws DfException {
+    logger.log(Level.FINER, "Principal Directory Query: {0}", queryStr);
+    IDfQuery query = dmClientX.getQuery();
+    query.setDQL(queryStr);
+    return query.execute(dmSession, IDfQuery.DF_EXECREAD_QUERY);
+  }
+
+  /**
+   * Gets an active user or group.
+   *
+   * @param userName the user_name of the user or group
+   * @return the user, or {@code null} if there is no active user
+   *     with that name
+   */
+  User getUser(String userName) {
+    return users.get(userName);
+  }
+
+  /**
+   * Returns whether the group exists and has a group_source, meaning
+   * that it comes from an external directory.
+   */
+  boolean isGlobalGroup(String groupName) {
+    return globalGroups.contains(groupName);
+  }
+}
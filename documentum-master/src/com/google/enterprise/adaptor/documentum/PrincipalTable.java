@@ -0,0 +1,143 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import com.google.enterprise.adaptor.Principal;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A table of interned Principals, each identified by an int. Sets of
+ * Principals built from the table are held as sorted int arrays, and
+ * only refer to the Principal objects when they are read.
+ *
+ * A table is meant to be used for a single traversal. It is not
+ * thread-safe.
+ */
+class PrincipalTable {
+  private final Map<Principal, Integer> ids =
+      new HashMap<Principal, Integer>();
+  private final List<Principal> principals = new ArrayList<Principal>();
+
+  /** Gets the ID of the principal, adding it to the table if needed. */
+  int getId(Principal principal) {
+    Integer id = ids.get(principal);
+    if (id == null) {
+      id = principals.size();
+      principals.add(principal);
+      ids.put(principal, id);
+    }
+    return id;
+  }
+
+  /** Gets the principal with the given ID. */
+  Principal getPrincipal(int id) {
+    return principals.get(id);
+  }
+
+  /** Returns the number of principals in the table. */
+  int size() {
+    return principals.size();
+  }
+
+  /** Returns a new builder for a set of principals from this table. */
+  SetBuilder newSetBuilder() {
+    return new SetBuilder();
+  }
+
+  /** Builds a compact, immutable set of principals. */
+  class SetBuilder {
+    private int[] members = new int[8];
+    private int size = 0;
+
+    SetBuilder add(Principal principal) {
+      if (size == members.length) {
+        members = Arrays.copyOf(members, 2 * size);
+      }
+      members[size++] = getId(principal);
+      return this;
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    Set<Principal> build() {
+      int[] sorted = Arrays.copyOf(members, size);
+      Arrays.sort(sorted);
+      int length = 0;
+      for (int i = 0; i < sorted.length; i++) {
+        if (length == 0 || sorted[length - 1] != sorted[i]) {
+          sorted[length++] = sorted[i];
+        }
+      }
+      return new PrincipalSet(
+          (length == sorted.length) ? sorted : Arrays.copyOf(sorted, length));
+    }
+  }
+
+  /** An immutable set of principals, held as a sorted array of IDs. */
+  private class PrincipalSet extends AbstractSet<Principal> {
+    private final int[] members;
+
+    PrincipalSet(int[] members) {
+      this.members = members;
+    }
+
+    @Override
+    public int size() {
+      return members.length;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      Integer id = ids.get(o);
+      return id != null && Arrays.binarySearch(members, id) >= 0;
+    }
+
+    @Override
+    public Iterator<Principal> iterator() {
+      return new Iterator<Principal>() {
+        private int index = 0;
+
+        @Override
+        public boolean hasNext() {
+          return index < members.length;
+        }
+
+        @Override
+        public Principal next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return principals.get(members[index++]);
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+}
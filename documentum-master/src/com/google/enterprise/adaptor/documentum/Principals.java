@@ -14,22 +14,36 @@
 
 package com.google.enterprise.adaptor.documentum;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Iterables;
 import com.google.enterprise.adaptor.GroupPrincipal;
 import com.google.enterprise.adaptor.Principal;
 import com.google.enterprise.adaptor.UserPrincipal;
 
+import com.documentum.com.IDfClientX;
+import com.documentum.fc.client.IDfCollection;
 import com.documentum.fc.client.IDfGroup;
+import com.documentum.fc.client.IDfQuery;
 import com.documentum.fc.client.IDfSession;
 import com.documentum.fc.client.IDfUser;
 import com.documentum.fc.client.impl.typeddata.NoSuchAttributeException;
 import com.documentum.fc.common.DfException;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,32 +57,280 @@ import javax.naming.ldap.Rdn;
 class Principals {
   private static Logger logger = Logger.getLogger(Principals.class.getName());
 
-  // Cache of Principals should max out at about 20 MB.
-  private static Cache<String, Principal> principalCache = CacheBuilder
-      .newBuilder().initialCapacity(10000).maximumSize(100000)
-      .expireAfterWrite(24, TimeUnit.HOURS).build();
-
   // Cannot cache null, so this is a special place-holder.
   private static final Principal NULL_PRINCIPAL = new UserPrincipal("NULL",
       "com.google.enterprise.adaptor.documentum.Principals");
 
+  /** Cache of the Principals for existing users and groups. */
+  private static volatile Cache<String, CachedPrincipal> principalCache =
+      newCache(100000, 0, TimeUnit.HOURS.toMinutes(24));
+
+  /**
+   * Cache of the accessors that do not exist, holding only
+   * NULL_PRINCIPAL. These are kept separately so that they can expire
+   * sooner, since users may be created at any time.
+   */
+  private static volatile Cache<String, CachedPrincipal> missingCache =
+      newCache(100000, 0, 60);
+
+  /**
+   * The expiration times of the caches. The caches expire entries by
+   * the time they were added, but entries loaded from a
+   * {@link PrincipalCacheStore} keep the time they were first written,
+   * so these are checked as well.
+   */
+  private static volatile long principalExpireMillis =
+      TimeUnit.HOURS.toMillis(24);
+  private static volatile long missingExpireMillis =
+      TimeUnit.MINUTES.toMillis(60);
+
+  /** The number of principals looked up, and the time spent doing it. */
+  private static final AtomicLong loadCount = new AtomicLong();
+  private static final AtomicLong loadNanos = new AtomicLong();
+
+  /** The maximum number of names in a DQL IN list. */
+  private static final int MAX_IN_LIST_SIZE = 250;
+
+  private final IDfClientX dmClientX;
   private final IDfSession dmSession;
+  private final PrincipalDirectory directory;
   private final String localNamespace;
   private final String globalNamespace;
   private final String windowsDomain;
 
   public static void clearCache() {
     principalCache.invalidateAll();
+    missingCache.invalidateAll();
+  }
+
+  /**
+   * Replaces the caches with new, empty caches with the given limits.
+   *
+   * @param maximumSize the maximum number of cached accessors, used
+   *     if {@code maximumBytes} is zero
+   * @param maximumBytes the approximate maximum heap used by the cache
+   *     of existing users and groups, or zero to limit the number of
+   *     entries instead
+   * @param expireMinutes the time to cache existing users and groups
+   * @param missingExpireMinutes the time to cache non-existent accessors
+   */
+  static void configureCache(long maximumSize, long maximumBytes,
+      long expireMinutes, long missingExpireMinutes) {
+    principalCache = newCache(maximumSize, maximumBytes, expireMinutes);
+    missingCache = newCache(maximumSize, 0, missingExpireMinutes);
+    principalExpireMillis = TimeUnit.MINUTES.toMillis(expireMinutes);
+    missingExpireMillis = TimeUnit.MINUTES.toMillis(missingExpireMinutes);
+    loadCount.set(0);
+    loadNanos.set(0);
+  }
+
+  private static Cache<String, CachedPrincipal> newCache(long maximumSize,
+      long maximumBytes, long expireMinutes) {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+        .expireAfterWrite(expireMinutes, TimeUnit.MINUTES).recordStats();
+    if (maximumBytes > 0) {
+      return builder.maximumWeight(maximumBytes)
+          .weigher(new Weigher<String, CachedPrincipal>() {
+              @Override
+              public int weigh(String accessorName, CachedPrincipal cached) {
+                return estimateSize(accessorName, cached.principal);
+              }
+            })
+          .build();
+    } else {
+      return builder.maximumSize(maximumSize).build();
+    }
+  }
+
+  /**
+   * Estimates the heap used by a cache entry. Strings are assumed to
+   * be two bytes per character.
+   */
+  @VisibleForTesting
+  static int estimateSize(String accessorName, Principal principal) {
+    return 96 + 2 * (accessorName.length() + principal.getName().length()
+        + principal.getNamespace().length());
+  }
+
+  /**
+   * Returns the combined statistics of the caches. The load counts
+   * are the number of accessors looked up in the repository, and the
+   * time spent doing it.
+   */
+  static CacheStats getCacheStats() {
+    CacheStats principalStats = principalCache.stats();
+    CacheStats missingStats = missingCache.stats();
+    // Every lookup that misses the principal cache checks the missing
+    // cache, so its misses are the misses of the two caches combined.
+    return new CacheStats(
+        principalStats.hitCount() + missingStats.hitCount(),
+        missingStats.missCount(), loadCount.get(), 0L, loadNanos.get(),
+        principalStats.evictionCount() + missingStats.evictionCount());
   }
 
+  /** Returns the number of cached accessors. */
+  static long getCacheSize() {
+    return principalCache.size() + missingCache.size();
+  }
+
+  private static Principal getCachedPrincipal(String accessorName) {
+    Principal principal = getCachedPrincipal(principalCache, accessorName);
+    return (principal == null)
+        ? getCachedPrincipal(missingCache, accessorName) : principal;
+  }
+
+  private static Principal getCachedPrincipal(
+      Cache<String, CachedPrincipal> cache, String accessorName) {
+    CachedPrincipal cached = cache.getIfPresent(accessorName);
+    if (cached == null) {
+      return null;
+    } else if (cached.isExpired(System.currentTimeMillis())) {
+      cache.invalidate(accessorName);
+      return null;
+    } else {
+      return cached.principal;
+    }
+  }
+
+  private static void putCachedPrincipal(String accessorName,
+      CachedPrincipal cached) {
+    if (cached.principal == NULL_PRINCIPAL) {
+      missingCache.put(accessorName, cached);
+    } else {
+      principalCache.put(accessorName, cached);
+    }
+  }
+
+  private static void putCachedPrincipal(String accessorName,
+      Principal principal) {
+    putCachedPrincipal(accessorName,
+        new CachedPrincipal(principal, System.currentTimeMillis()));
+  }
+
+  /** Removes the cached principals for the given accessors. */
+  static void invalidate(Collection<String> accessorNames) {
+    principalCache.invalidateAll(accessorNames);
+    missingCache.invalidateAll(accessorNames);
+  }
+
+  /**
+   * Returns a copy of the cached principals, with absent principals
+   * for accessors that are known not to exist.
+   */
+  static Map<String, CachedPrincipal> getCachedPrincipals() {
+    Map<String, CachedPrincipal> principals =
+        new HashMap<String, CachedPrincipal>();
+    principals.putAll(missingCache.asMap());
+    principals.putAll(principalCache.asMap());
+    return principals;
+  }
+
+  /**
+   * Adds principals to the cache, as returned by
+   * {@link #getCachedPrincipals}. Principals that have expired since
+   * they were written are skipped.
+   *
+   * @return the number of principals added
+   */
+  static int putCachedPrincipals(Map<String, CachedPrincipal> principals) {
+    long now = System.currentTimeMillis();
+    int count = 0;
+    for (Map.Entry<String, CachedPrincipal> entry : principals.entrySet()) {
+      if (!entry.getValue().isExpired(now)) {
+        putCachedPrincipal(entry.getKey(), entry.getValue());
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** A cached principal, with the time it was written to the cache. */
+  static class CachedPrincipal {
+    private final Principal principal;
+    private final long writeMillis;
+
+    /**
+     * @param principal the principal, or absent if the accessor does
+     *     not exist
+     * @param writeMillis the time the principal was written, in
+     *     milliseconds since the epoch
+     */
+    CachedPrincipal(Optional<Principal> principal, long writeMillis) {
+      this(principal.or(NULL_PRINCIPAL), writeMillis);
+    }
+
+    private CachedPrincipal(Principal principal, long writeMillis) {
+      this.principal = principal;
+      this.writeMillis = writeMillis;
+    }
+
+    Optional<Principal> getPrincipal() {
+      return (principal == NULL_PRINCIPAL)
+          ? Optional.<Principal>absent() : Optional.of(principal);
+    }
+
+    long getWriteMillis() {
+      return writeMillis;
+    }
+
+    private boolean isExpired(long now) {
+      long expireMillis = (principal == NULL_PRINCIPAL)
+          ? missingExpireMillis : principalExpireMillis;
+      return now - writeMillis >= expireMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof CachedPrincipal)) {
+        return false;
+      }
+      CachedPrincipal other = (CachedPrincipal) o;
+      return principal.equals(other.principal)
+          && writeMillis == other.writeMillis;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(principal, writeMillis);
+    }
+
+    @Override
+    public String toString() {
+      return getPrincipal() + "@" + writeMillis;
+    }
+  }
+
+  /**
+   * Constructs a Principals that can only look up one user or group
+   * at a time, and ignores calls to {@link #resolvePrincipals}.
+   */
   Principals(IDfSession dmSession,
       String localNamespace, String globalNamespace, String windowsDomain) {
+    this(null, dmSession, localNamespace, globalNamespace, windowsDomain);
+  }
+
+  Principals(IDfClientX dmClientX, IDfSession dmSession,
+      String localNamespace, String globalNamespace, String windowsDomain) {
+    this(dmClientX, dmSession, null, localNamespace, globalNamespace,
+        windowsDomain);
+  }
+
+  /**
+   * Constructs a Principals that looks up users and groups in the
+   * given directory, if it is not {@code null}, rather than querying
+   * the repository.
+   */
+  Principals(IDfClientX dmClientX, IDfSession dmSession,
+      PrincipalDirectory directory, String localNamespace,
+      String globalNamespace, String windowsDomain) {
     Preconditions.checkNotNull(dmSession, "dmSession may not be null");
     Preconditions.checkNotNull(localNamespace,
         "localNamespace may not be null");
     Preconditions.checkNotNull(globalNamespace,
         "globalNamespace may not be null");
+    this.dmClientX = dmClientX;
     this.dmSession = dmSession;
+    this.directory = directory;
     this.localNamespace = localNamespace;
     this.globalNamespace = globalNamespace;
     this.windowsDomain = windowsDomain;
@@ -85,8 +347,9 @@ class Principals {
    */
   public Principal getPrincipal(String accessorName, boolean isGroup)
       throws DfException {
-    Principal principal = principalCache.getIfPresent(accessorName);
+    Principal principal = getCachedPrincipal(accessorName);
     if (principal == null) {
+      long startNanos = System.nanoTime();
       String principalName = getPrincipalName(accessorName);
       if (principalName == null) {
         principal = NULL_PRINCIPAL;
@@ -99,11 +362,149 @@ class Principals {
       } else {
         principal = new UserPrincipal(principalName, globalNamespace);
       }
-      principalCache.put(accessorName, principal);
+      putCachedPrincipal(accessorName, principal);
+      loadCount.incrementAndGet();
+      loadNanos.addAndGet(System.nanoTime() - startNanos);
     }
     return (principal == NULL_PRINCIPAL) ? null : principal;
   }
 
+  /**
+   * Resolves and caches the principals for any of the given users and
+   * groups that are not already cached, looking them up in batches
+   * with DQL IN lists rather than one at a time. Subsequent calls to
+   * {@link #getPrincipal} for these accessors will hit the cache.
+   * Nothing is queried when the accessors are looked up in a
+   * {@link PrincipalDirectory}.
+   *
+   * @param accessors a map from accessor names to {@code true} if the
+   *     accessor is a group
+   * @throws DfException if error in getting the user or group information
+   *         or the group name space.
+   */
+  public void resolvePrincipals(Map<String, Boolean> accessors)
+      throws DfException {
+    if (dmClientX == null || directory != null) {
+      return;
+    }
+    List<String> unresolved = new ArrayList<String>();
+    for (String accessorName : accessors.keySet()) {
+      if (!isBuiltin(accessorName)
+          && getCachedPrincipal(accessorName) == null) {
+        unresolved.add(accessorName);
+      }
+    }
+    logger.log(Level.FINE, "Resolving {0} of {1} principals",
+        new Object[] {unresolved.size(), accessors.size()});
+    for (List<String> batch :
+        Iterables.partition(unresolved, MAX_IN_LIST_SIZE)) {
+      long startNanos = System.nanoTime();
+      resolveBatch(batch, accessors);
+      loadCount.addAndGet(batch.size());
+      loadNanos.addAndGet(System.nanoTime() - startNanos);
+    }
+  }
+
+  /**
+   * Resolves and caches the principals for a batch of uncached users
+   * and groups.
+   */
+  private void resolveBatch(List<String> accessorNames,
+      Map<String, Boolean> accessors) throws DfException {
+    Map<String, String> principalNames = new HashMap<String, String>();
+    IDfCollection result = executeQuery("SELECT user_name, user_login_name, "
+        + "user_source, user_ldap_dn, r_is_group FROM dm_user "
+        + "WHERE user_state = 0 AND user_name IN (" + makeInList(accessorNames)
+        + ")");
+    try {
+      while (result.next()) {
+        String accessorName = result.getString("user_name");
+        String principalName = getPrincipalName(accessorName,
+            result.getString("user_login_name"),
+            result.getString("user_source"),
+            result.getString("user_ldap_dn"),
+            result.getBoolean("r_is_group"));
+        if (principalName != null) {
+          principalNames.put(accessorName, principalName);
+        }
+      }
+    } finally {
+      close(result);
+    }
+
+    List<String> groupNames = new ArrayList<String>();
+    for (String accessorName : accessorNames) {
+      if (accessors.get(accessorName)
+          && principalNames.containsKey(accessorName)) {
+        groupNames.add(accessorName);
+      }
+    }
+    Map<String, String> namespaces = new HashMap<String, String>();
+    if (!groupNames.isEmpty()) {
+      result = executeQuery("SELECT group_name, group_source FROM dm_group "
+          + "WHERE group_name IN (" + makeInList(groupNames) + ")");
+      try {
+        while (result.next()) {
+          namespaces.put(result.getString("group_name"),
+              Strings.isNullOrEmpty(result.getString("group_source"))
+              ? localNamespace : globalNamespace);
+        }
+      } finally {
+        close(result);
+      }
+    }
+
+    for (String accessorName : accessorNames) {
+      String principalName = principalNames.get(accessorName);
+      Principal principal;
+      if (principalName == null) {
+        principal = NULL_PRINCIPAL;
+      } else if (accessors.get(accessorName)) {
+        // A non-existent group is in the local namespace, as in
+        // getGroupNamespace.
+        String namespace = namespaces.get(accessorName);
+        principal = new GroupPrincipal(principalName,
+            (namespace == null) ? localNamespace : namespace);
+      } else {
+        principal = new UserPrincipal(principalName, globalNamespace);
+      }
+      putCachedPrincipal(accessorName, principal);
+    }
+  }
+
+  private IDfCollection executeQuery(String queryStr) throws DfException {
+    logger.log(Level.FINEST, "Principals query: {0}", queryStr);
+    IDfQuery query = dmClientX.getQuery();
+    query.setDQL(queryStr);
+    return query.execute(dmSession, IDfQuery.DF_EXECREAD_QUERY);
+  }
+
+  private static void close(IDfCollection collection) {
+    try {
+      collection.close();
+    } catch (DfException e) {
+      logger.log(Level.WARNING, "Error closing collection", e);
+    }
+  }
+
+  /** Returns a quoted, comma-separated list of names for DQL. */
+  private String makeInList(List<String> names) {
+    StringBuilder inList = new StringBuilder();
+    for (String name : names) {
+      if (inList.length() > 0) {
+        inList.append(',');
+      }
+      inList.append('\'').append(singleQuoteEscapeString(name)).append('\'');
+    }
+    return inList.toString();
+  }
+
+  private static boolean isBuiltin(String accessorName) {
+    return accessorName.equalsIgnoreCase("dm_world")
+        || accessorName.equalsIgnoreCase("dm_owner")
+        || accessorName.equalsIgnoreCase("dm_group");
+  }
+
   /**
    * Return principal name, login name decorated with domain, for the given
    * user or group.
@@ -112,12 +513,16 @@ class Principals {
    * @throws DfException if error in getting user information.
    */
   private String getPrincipalName(String accessorName) throws DfException {
-    if (accessorName.equalsIgnoreCase("dm_world")
-        || accessorName.equalsIgnoreCase("dm_owner")
-        || accessorName.equalsIgnoreCase("dm_group")) {
+    if (isBuiltin(accessorName)) {
       return accessorName;
     }
 
+    if (directory != null) {
+      PrincipalDirectory.User user = directory.getUser(accessorName);
+      return (user == null) ? null : getPrincipalName(accessorName,
+          user.loginName, user.source, user.ldapDn, user.isGroup);
+    }
+
     IDfUser userObj;
     try {
         userObj = (IDfUser) dmSession.getObjectByQualification(
@@ -132,18 +537,33 @@ class Principals {
     if (userObj == null) {
       return null;
     }
+    return getPrincipalName(accessorName, userObj.getUserLoginName(),
+        userObj.getUserSourceAsString(),
+        userObj.getUserDistinguishedLDAPName(), userObj.isGroup());
+  }
 
-    if ("ldap".equalsIgnoreCase(userObj.getUserSourceAsString())) {
-      String dnName = userObj.getUserDistinguishedLDAPName();
+  /**
+   * Return principal name, login name decorated with domain, for the given
+   * user or group attributes.
+   *
+   * @param accessorName accessor (user or group) name.
+   * @param loginName the user_login_name of the user or group
+   * @param userSource the user_source of the user or group
+   * @param dnName the user_ldap_dn of the user or group
+   * @param isGroup true if group.
+   * @return the principal name, or {@code null} if the DN is invalid
+   */
+  private String getPrincipalName(String accessorName, String loginName,
+      String userSource, String dnName, boolean isGroup) {
+    if ("ldap".equalsIgnoreCase(userSource)) {
       if (Strings.isNullOrEmpty(dnName)) {
         logger.log(Level.FINE, "Missing DN for user: {0}", accessorName);
         // Fall-through to use windowsDomain.
       } else {
         try {
-          LdapName dnDomain = getDomainComponents(dnName);
-          if (!dnDomain.isEmpty()) {
-            return getFirstDomainFromDN(dnDomain) + "\\"
-                + userObj.getUserLoginName();
+          String domain = LdapDnScanner.getFirstDomain(dnName);
+          if (domain != null) {
+            return domain + "\\" + loginName;
           }
           // Fall-through to use windowsDomain.
         } catch (InvalidNameException e) {
@@ -155,13 +575,13 @@ class Principals {
     }
 
     String principalName;
-    if (!Strings.isNullOrEmpty(windowsDomain) && !userObj.isGroup()) {
+    if (!Strings.isNullOrEmpty(windowsDomain) && !isGroup) {
       logger.log(Level.FINEST,
           "using configured domain: {0} for unsynchronized user {1}",
           new String[] {windowsDomain, accessorName});
-      principalName = windowsDomain + "\\" + userObj.getUserLoginName();
+      principalName = windowsDomain + "\\" + loginName;
     } else {
-      principalName = userObj.getUserLoginName();
+      principalName = loginName;
     }
     return principalName;
   }
@@ -213,6 +633,10 @@ class Principals {
    * @throws DfException if error in getting group information.
    */
   private String getGroupNamespace(String groupName) throws DfException {
+    if (directory != null) {
+      return directory.isGlobalGroup(groupName)
+          ? globalNamespace : localNamespace;
+    }
     IDfGroup groupObj = (IDfGroup) dmSession.getObjectByQualification(
         "dm_group where group_name = '" + singleQuoteEscapeString(groupName)
         + "'");
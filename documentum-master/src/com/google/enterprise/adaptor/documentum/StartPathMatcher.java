@@ -0,0 +1,161 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Matches paths against a fixed set of normalized start paths.
+ *
+ * The start paths are compiled into a trie of path segments, so that
+ * a path is matched in a single walk over its segments, however many
+ * start paths there are. The segments of each node are held in a
+ * sorted array and compared in place, so matching does not allocate.
+ */
+class StartPathMatcher {
+  /** A node of the trie, for one segment of one or more start paths. */
+  private static class Node {
+    /** Whether the path to this node is itself a start path. */
+    private final boolean isStartPath;
+    /** The sorted segments of the children. */
+    private final String[] segments;
+    private final Node[] children;
+
+    Node(boolean isStartPath, TreeMap<String, Builder> builders) {
+      this.isStartPath = isStartPath;
+      segments = new String[builders.size()];
+      children = new Node[builders.size()];
+      int i = 0;
+      for (Map.Entry<String, Builder> entry : builders.entrySet()) {
+        segments[i] = entry.getKey();
+        children[i] = entry.getValue().build();
+        i++;
+      }
+    }
+  }
+
+  /** A mutable node, used only while compiling the trie. */
+  private static class Builder {
+    private boolean isStartPath = false;
+    private final TreeMap<String, Builder> children =
+        new TreeMap<String, Builder>();
+
+    Node build() {
+      // Nothing below a start path can change the result.
+      return new Node(isStartPath,
+          isStartPath ? new TreeMap<String, Builder>() : children);
+    }
+  }
+
+  private final Node root;
+
+  /**
+   * @param startPaths the normalized start paths, each with a leading
+   *     slash and no trailing slash, or "/"
+   */
+  StartPathMatcher(Iterable<String> startPaths) {
+    Builder rootBuilder = new Builder();
+    for (String startPath : startPaths) {
+      Builder builder = rootBuilder;
+      if (!startPath.equals("/")) {
+        for (String segment : startPath.substring(1).split("/", -1)) {
+          Builder child = builder.children.get(segment);
+          if (child == null) {
+            child = new Builder();
+            builder.children.put(segment, child);
+          }
+          builder = child;
+        }
+      }
+      builder.isStartPath = true;
+    }
+    root = rootBuilder.build();
+  }
+
+  /**
+   * Returns whether the path is one of the start paths or under one.
+   *
+   * @param path a path with a leading slash
+   */
+  boolean matches(String path) {
+    return path.equals("/") ? root.isStartPath
+        : matches(path, 1, path.length());
+  }
+
+  /**
+   * Returns whether a region of a string, holding a path without its
+   * leading slash, is one of the start paths or under one.
+   *
+   * @param path the string holding the path
+   * @param start the start of the path, after the leading slash
+   * @param end the end of the path, exclusive
+   */
+  boolean matches(String path, int start, int end) {
+    Node node = root;
+    if (start == end) {
+      return node.isStartPath;
+    }
+    while (!node.isStartPath) {
+      int slash = path.indexOf('/', start);
+      int segmentEnd = (slash < 0 || slash > end) ? end : slash;
+      node = find(node, path, start, segmentEnd);
+      if (node == null) {
+        return false;
+      }
+      if (segmentEnd == end) {
+        return node.isStartPath;
+      }
+      start = segmentEnd + 1;
+    }
+    return true;
+  }
+
+  /** Finds the child of a node for a segment, by binary search. */
+  private static Node find(Node node, String path, int start, int end) {
+    int low = 0;
+    int high = node.segments.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compare(node.segments[mid], path, start, end);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return node.children[mid];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Compares a segment to a region of a string, in the same order as
+   * {@link String#compareTo}.
+   */
+  private static int compare(String segment, String path, int start,
+      int end) {
+    int length = end - start;
+    int limit = Math.min(segment.length(), length);
+    for (int i = 0; i < limit; i++) {
+      char c1 = segment.charAt(i);
+      char c2 = path.charAt(start + i);
+      if (c1 != c2) {
+        return c1 - c2;
+      }
+    }
+    return segment.length() - length;
+  }
+}
@@ -0,0 +1,58 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Unit tests for {@link AdaptiveBatchSize}. */
+public class AdaptiveBatchSizeTest {
+  @Test
+  public void testInitialSizeClamped() {
+    assertEquals(100, new AdaptiveBatchSize(10, 100, 1000, 1000L).get());
+    assertEquals(1000, new AdaptiveBatchSize(5000, 100, 1000, 1000L).get());
+    assertEquals(500, new AdaptiveBatchSize(500, 100, 1000, 1000L).get());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidBounds() {
+    new AdaptiveBatchSize(500, 1000, 100, 1000L);
+  }
+
+  @Test
+  public void testAdditiveIncrease() {
+    AdaptiveBatchSize batchSize = new AdaptiveBatchSize(500, 100, 800, 1000L);
+    assertEquals(600, batchSize.update(999L, false, true));
+    assertEquals(700, batchSize.update(1000L, false, true));
+    assertEquals(800, batchSize.update(10L, false, true));
+    assertEquals(800, batchSize.update(10L, false, true));
+  }
+
+  @Test
+  public void testPartialBatchDoesNotGrow() {
+    AdaptiveBatchSize batchSize = new AdaptiveBatchSize(500, 100, 800, 1000L);
+    assertEquals(500, batchSize.update(10L, false, false));
+  }
+
+  @Test
+  public void testMultiplicativeDecrease() {
+    AdaptiveBatchSize batchSize = new AdaptiveBatchSize(800, 100, 800, 1000L);
+    assertEquals(400, batchSize.update(1001L, false, true));
+    assertEquals(200, batchSize.update(10L, true, false));
+    assertEquals(100, batchSize.update(5000L, false, false));
+    assertEquals(100, batchSize.update(10L, true, false));
+  }
+}
@@ -0,0 +1,72 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Unit tests for {@link AtomicFile}. */
+public class AtomicFileTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private void write(AtomicFile atomicFile, String content)
+      throws IOException {
+    try (OutputStream out = atomicFile.startWrite()) {
+      out.write(content.getBytes(UTF_8));
+    }
+    atomicFile.finishWrite();
+  }
+
+  @Test
+  public void testWrite() throws IOException {
+    File file = new File(temporaryFolder.getRoot(), "file");
+    write(new AtomicFile(file), "hello");
+    assertArrayEquals("hello".getBytes(UTF_8),
+        Files.readAllBytes(file.toPath()));
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+  }
+
+  @Test
+  public void testReplace() throws IOException {
+    File file = new File(temporaryFolder.getRoot(), "file");
+    AtomicFile atomicFile = new AtomicFile(file);
+    write(atomicFile, "hello, world");
+    write(atomicFile, "bye");
+    assertArrayEquals("bye".getBytes(UTF_8),
+        Files.readAllBytes(file.toPath()));
+  }
+
+  @Test
+  public void testUnfinishedWrite() throws IOException {
+    File file = new File(temporaryFolder.getRoot(), "file");
+    AtomicFile atomicFile = new AtomicFile(file);
+    write(atomicFile, "hello");
+    try (OutputStream out = atomicFile.startWrite()) {
+      out.write("partial".getBytes(UTF_8));
+    }
+    assertArrayEquals("hello".getBytes(UTF_8),
+        Files.readAllBytes(file.toPath()));
+  }
+}
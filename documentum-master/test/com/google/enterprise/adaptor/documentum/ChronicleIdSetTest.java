@@ -0,0 +1,56 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Unit tests for {@link ChronicleIdSet}. */
+public class ChronicleIdSetTest {
+  @Test
+  public void testAddAndContains() {
+    ChronicleIdSet ids = new ChronicleIdSet();
+    assertFalse(ids.contains("0901081f80001001"));
+    assertTrue(ids.add("0901081f80001001"));
+    assertFalse(ids.add("0901081f80001001"));
+    assertTrue(ids.contains("0901081f80001001"));
+    assertFalse(ids.contains("0901081f80001002"));
+
+    // IDs that are not 16 hexadecimal digits are kept separately.
+    assertTrue(ids.add("0"));
+    assertFalse(ids.add("0"));
+    assertTrue(ids.add("not an id"));
+    assertTrue(ids.add("ffffffffffffffff"));
+    assertTrue(ids.contains("ffffffffffffffff"));
+    assertEquals(4, ids.size());
+  }
+
+  @Test
+  public void testGrow() {
+    ChronicleIdSet ids = new ChronicleIdSet();
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(ids.add(String.format("09010000%08x", i)));
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(ids.contains(String.format("09010000%08x", i)));
+      assertFalse(ids.add(String.format("09010000%08x", i)));
+    }
+    assertFalse(ids.contains(String.format("09010000%08x", 1000)));
+    assertEquals(1000, ids.size());
+  }
+}
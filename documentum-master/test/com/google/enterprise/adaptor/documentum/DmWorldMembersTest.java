@@ -0,0 +1,80 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.enterprise.adaptor.GroupPrincipal;
+import com.google.enterprise.adaptor.Principal;
+import com.google.enterprise.adaptor.UserPrincipal;
+
+import org.junit.Test;
+
+/** Unit tests for {@link DmWorldMembers}. */
+public class DmWorldMembersTest {
+  @Test
+  public void testPutAndRemove() {
+    GroupPrincipal dmWorld = new GroupPrincipal("dm_world", "NS_Local");
+    Principal user1 = new UserPrincipal("User1", "NS");
+    Principal user2 = new UserPrincipal("User2", "NS");
+    Principal user3 = new UserPrincipal("User3", "NS");
+    DmWorldMembers members = new DmWorldMembers();
+    assertFalse(members.isInitialized());
+    assertTrue(members.isRebuildDue(1000L, 100L));
+
+    DmWorldMembers.Builder builder = new DmWorldMembers.Builder();
+    builder.add("User3", user3);
+    builder.add("User1", user1);
+    members.reset(dmWorld, builder, 1000L);
+    assertTrue(members.isInitialized());
+    assertFalse(members.isRebuildDue(1099L, 100L));
+    assertTrue(members.isRebuildDue(1100L, 100L));
+
+    assertTrue(members.put("User2", user2));
+    assertFalse(members.put("User2", user2));
+    assertFalse(members.remove("User4"));
+    assertTrue(members.remove("User1"));
+    assertEquals(2, members.size());
+    assertEquals(ImmutableMap.of(dmWorld, ImmutableSet.of(user2, user3)),
+        members.getGroupDefinition());
+  }
+
+  @Test
+  public void testReset() {
+    GroupPrincipal dmWorld = new GroupPrincipal("dm_world", "NS_Local");
+    DmWorldMembers.Builder builder = new DmWorldMembers.Builder();
+    // Add enough users to grow the arrays, in an unsorted order.
+    for (int i = 0; i < 100; i++) {
+      String userName = String.format("User%02d", (i * 37) % 100);
+      builder.add(userName, new UserPrincipal(userName, "NS"));
+    }
+    // A user read twice keeps the last principal read.
+    Principal renamed = new UserPrincipal("Renamed", "NS");
+    builder.add("User00", renamed);
+
+    DmWorldMembers members = new DmWorldMembers();
+    members.reset(dmWorld, builder, 1000L);
+    assertEquals(100, members.size());
+    assertFalse(members.put("User00", renamed));
+    assertFalse(members.put("User99", new UserPrincipal("User99", "NS")));
+    assertTrue(members.remove("User50"));
+    assertFalse(members.remove("User50"));
+    assertEquals(99, members.size());
+  }
+}
@@ -0,0 +1,118 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.enterprise.adaptor.DocId;
+import com.google.enterprise.adaptor.DocIdPusher.Record;
+import com.google.enterprise.adaptor.documentum.DocumentumAdaptor.Checkpoint;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/** Unit tests for {@link DocumentDebouncer}. */
+public class DocumentDebouncerTest {
+  private static final Checkpoint CHECKPOINT = Checkpoint.incremental();
+
+  private static List<Record> records(String... paths) {
+    ImmutableList.Builder<Record> builder = ImmutableList.builder();
+    for (String path : paths) {
+      builder.add(new Record.Builder(new DocId(path))
+          .setCrawlImmediately(true).build());
+    }
+    return builder.build();
+  }
+
+  @Test
+  public void testQuietPeriod() {
+    DocumentDebouncer debouncer = new DocumentDebouncer(100L, 1000L, 10);
+    debouncer.add("aaa", records("old/aaa"), CHECKPOINT, 0L);
+    debouncer.add("bbb", records("bbb"), CHECKPOINT, 50L);
+    assertEquals(ImmutableList.of(), debouncer.release(99L).values());
+
+    // The latest records replace the held ones.
+    debouncer.add("aaa", records("new/aaa"), CHECKPOINT, 99L);
+    assertEquals(records("bbb"), debouncer.release(150L).values());
+    assertEquals(records("new/aaa"), debouncer.release(199L).values());
+    assertEquals(ImmutableList.of(), debouncer.release(1000L).values());
+
+    assertEquals(0, debouncer.getPendingCount());
+    assertEquals(1, debouncer.getSuppressedCount());
+    assertEquals(2, debouncer.getReleasedCount());
+    assertEquals(0, debouncer.getForcedCount());
+  }
+
+  @Test
+  public void testMaxDelay() {
+    DocumentDebouncer debouncer = new DocumentDebouncer(100L, 250L, 10);
+    for (long now = 0L; now < 250L; now += 50L) {
+      debouncer.add("aaa", records("aaa"), CHECKPOINT, now);
+      assertEquals(ImmutableList.of(), debouncer.release(now).values());
+    }
+    debouncer.add("aaa", records("aaa"), CHECKPOINT, 250L);
+    assertEquals(records("aaa"), debouncer.release(250L).values());
+    assertEquals(5, debouncer.getSuppressedCount());
+    assertEquals(1, debouncer.getForcedCount());
+  }
+
+  @Test
+  public void testMaxPending() {
+    DocumentDebouncer debouncer = new DocumentDebouncer(100L, 1000L, 2);
+    debouncer.add("aaa", records("aaa"), CHECKPOINT, 0L);
+    debouncer.add("bbb", records("bbb"), CHECKPOINT, 10L);
+    debouncer.add("ccc", records("ccc"), CHECKPOINT, 20L);
+    assertEquals(2, debouncer.getPendingCount());
+    assertEquals(records("aaa"), debouncer.release(20L).values());
+    assertEquals(records("bbb", "ccc"), debouncer.release(120L).values());
+    assertEquals(1, debouncer.getForcedCount());
+  }
+
+  @Test
+  public void testReleaseByChronicleId() {
+    DocumentDebouncer debouncer = new DocumentDebouncer(100L, 1000L, 10);
+    debouncer.add("aaa", records("aaa", "copy/aaa"), CHECKPOINT, 0L);
+    debouncer.add("bbb", records("bbb"), CHECKPOINT, 10L);
+    assertEquals(ImmutableListMultimap.of("aaa", records("aaa").get(0),
+            "aaa", records("copy/aaa").get(0), "bbb", records("bbb").get(0)),
+        debouncer.release(200L));
+  }
+
+  @Test
+  public void testOldestCheckpoint() {
+    Checkpoint checkpoint1 = new Checkpoint("1970-01-01 00:00:00",
+        "0900000000000001");
+    Checkpoint checkpoint2 = new Checkpoint("1970-02-01 00:00:00",
+        "0900000000000002");
+    DocumentDebouncer debouncer = new DocumentDebouncer(100L, 1000L, 10);
+    assertNull(debouncer.getOldestCheckpoint());
+    debouncer.add("aaa", records("aaa"), checkpoint1, 0L);
+    debouncer.add("bbb", records("bbb"), checkpoint2, 50L);
+    assertEquals(checkpoint1, debouncer.getOldestCheckpoint());
+
+    // A later change keeps the checkpoint of the first change.
+    debouncer.add("aaa", records("aaa"), checkpoint2, 60L);
+    assertEquals(checkpoint1, debouncer.getOldestCheckpoint());
+
+    assertEquals(records("bbb"), debouncer.release(150L).values());
+    assertEquals(checkpoint1, debouncer.getOldestCheckpoint());
+    assertEquals(records("aaa"), debouncer.release(160L).values());
+    assertNull(debouncer.getOldestCheckpoint());
+  }
+}
@@ -25,10 +25,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Strings;
@@ -47,7 +49,9 @@ import com.google.enterprise.adaptor.Config;
 import com.google.enterprise.adaptor.DocId;
 import com.google.enterprise.adaptor.DocIdEncoder;
 import com.google.enterprise.adaptor.DocIdPusher;
+import com.google.enterprise.adaptor.DocIdPusher.FeedType;
 import com.google.enterprise.adaptor.DocIdPusher.Record;
+import com.google.enterprise.adaptor.ExceptionHandler;
 import com.google.enterprise.adaptor.GroupPrincipal;
 import com.google.enterprise.adaptor.InvalidConfigurationException;
 import com.google.enterprise.adaptor.Metadata;
@@ -56,6 +60,7 @@ import com.google.enterprise.adaptor.Request;
 import com.google.enterprise.adaptor.UserPrincipal;
 import com.google.enterprise.adaptor.documentum.DocumentumAdaptor.CaseSensitivityType;
 import com.google.enterprise.adaptor.documentum.DocumentumAdaptor.Checkpoint;
+import com.google.enterprise.adaptor.documentum.Principals.CachedPrincipal;
 import com.google.enterprise.adaptor.testing.RecordingDocIdPusher;
 import com.google.enterprise.adaptor.testing.RecordingResponse;
 import com.google.enterprise.adaptor.testing.RecordingResponse.State;
@@ -89,13 +94,18 @@ import com.documentum.fc.common.IDfTime;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
@@ -113,10 +123,12 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 
 // TODO(bmj): Add tests to test the exception handling.
 
@@ -158,8 +170,9 @@ public class DocumentumAdaptorTest {
   private static final String DEFAULT_ACL = "45DefaultACL";
 
   private static final String CREATE_TABLE_ACL = "create table dm_acl "
-      + "(r_object_id varchar, r_accessor_name varchar, "
-      + "r_accessor_permit int, r_permit_type int, r_is_group boolean)";
+      + "(r_object_id varchar, r_accessor_count int, i_position int, "
+      + "r_accessor_name varchar, r_accessor_permit int, r_permit_type int, "
+      + "r_is_group boolean)";
 
   private static final String CREATE_TABLE_AUDITTRAIL =
       "create table dm_audittrail "
@@ -180,7 +193,8 @@ public class DocumentumAdaptorTest {
       // Note: mock_acl_id is ACL id for the folder, and is used to
       // create AclMock.
       + "(r_object_id varchar unique, i_chronicle_id varchar, "
-      + "r_folder_path varchar, mock_acl_id varchar)";
+      + "r_folder_path varchar, mock_acl_id varchar, "
+      + "r_modify_date timestamp)";
 
   private static final String CREATE_TABLE_GROUP = "create table dm_group "
       + "(r_object_id varchar, group_name varchar, group_source varchar, "
@@ -189,7 +203,8 @@ public class DocumentumAdaptorTest {
   private static final String CREATE_TABLE_USER = "create table dm_user "
       + "(r_object_id varchar unique, user_name varchar primary key, "
       + "user_login_name varchar, user_source varchar, user_ldap_dn varchar, "
-      + "r_is_group boolean, user_state int DEFAULT 0)";
+      + "r_is_group boolean, user_state int DEFAULT 0, "
+      + "r_modify_date timestamp DEFAULT CURRENT_TIMESTAMP)";
 
   private static final String CREATE_TABLE_SYSOBJECT =
       "create table dm_sysobject "
@@ -284,6 +299,9 @@ public class DocumentumAdaptorTest {
   // and move this next to START_PATH.
   private static final String START_PATH_ID = FOLDER.pad("FFF0");
 
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Before
   public void setUp() throws Exception {
     Principals.clearCache();
@@ -319,6 +337,34 @@ public class DocumentumAdaptorTest {
     config.addKey("documentum.windowsDomain", "");
     config.addKey("documentum.pushLocalGroupsOnly", "false");
     config.addKey("documentum.queryBatchSize", "0");
+    config.addKey("documentum.adaptiveQueryBatchSize", "false");
+    config.addKey("documentum.minQueryBatchSize", "100");
+    config.addKey("documentum.maxQueryBatchSize", "10000");
+    config.addKey("documentum.queryBatchTargetSeconds", "10");
+    config.addKey("documentum.aclTraversalThreads", "1");
+    config.addKey("documentum.groupTraversalThreads", "1");
+    config.addKey("documentum.traverserThreads", "1");
+    config.addKey("documentum.aclPushChunkSize", "0");
+    config.addKey("documentum.aclPushChunkBytes", "0");
+    config.addKey("documentum.groupPushChunkBytes", "0");
+    config.addKey("documentum.largeGroupMemberThreshold", "0");
+    config.addKey("documentum.aclDigestFile", "");
+    config.addKey("documentum.sharedRequiredGroupAcls", "false");
+    config.addKey("documentum.groupDigestFile", "");
+    config.addKey("documentum.checkpointFile", "");
+    config.addKey("documentum.groupFullPushIntervalHours", "24");
+    config.addKey("documentum.aclFullPushIntervalHours", "24");
+    config.addKey("documentum.dmWorldRebuildIntervalHours", "0");
+    config.addKey("documentum.cacheFolderPaths", "false");
+    config.addKey("documentum.debounceQuietSeconds", "0");
+    config.addKey("documentum.debounceMaxDelaySeconds", "3600");
+    config.addKey("documentum.debounceMaxPending", "100000");
+    config.addKey("documentum.preloadPrincipals", "false");
+    config.addKey("documentum.principalCacheFile", "");
+    config.addKey("documentum.principalCacheSize", "100000");
+    config.addKey("documentum.principalCacheMaxBytes", "0");
+    config.addKey("documentum.principalCacheExpireMinutes", "1440");
+    config.addKey("documentum.missingPrincipalCacheExpireMinutes", "60");
     config.addKey("documentum.maxHtmlSize", "1000");
     config.addKey("documentum.modifiedDocumentsQuery", "");
     config.addKey("documentum.cabinetWhereCondition", "");
@@ -961,10 +1007,12 @@ public class DocumentumAdaptorTest {
       public CollectionMock(String query) throws DfException {
         try {
           stmt = getConnection().createStatement();
-          // The test dm_group table is ROW_BASED in implementation.
-          // If not fetching ROW_BASED, then force DISTINCT on the SELECT.
-          if (query.contains(" FROM dm_group ")
-              && !query.contains("ENABLE(ROW_BASED)")) {
+          // The test dm_group and dm_acl tables are ROW_BASED in
+          // implementation. If not fetching ROW_BASED, then force
+          // DISTINCT on the SELECT.
+          if ((query.contains(" FROM dm_group ")
+                  || query.contains(" FROM dm_acl"))
+              && !query.contains("ENABLE(ROW_BASED")) {
             query = query.replaceFirst("^SELECT ", "SELECT DISTINCT ");
           }
           query = query.replaceAll("DATETOSTRING(_LOCAL)?", "FORMATDATETIME")
@@ -974,6 +1022,7 @@ public class DocumentumAdaptorTest {
                   + "dm_document|dm_folder)\\)", "r_object_type LIKE '$1%'")
               .replace("FOLDER(", "(mock_object_path LIKE ")
               .replace("',descend", "%'")
+              .replace("ENABLE(ROW_BASED, RETURN_TOP", "LIMIT (")
               .replace("ENABLE(ROW_BASED)", "")
               .replace("ENABLE(RETURN_TOP", "LIMIT (");
           rs = stmt.executeQuery(query);
@@ -1007,6 +1056,22 @@ public class DocumentumAdaptorTest {
         }
       }
 
+      public int getInt(String colName) throws DfException {
+        try {
+          return rs.getInt(colName);
+        } catch (SQLException e) {
+          throw new DfException(e);
+        }
+      }
+
+      public boolean getBoolean(String colName) throws DfException {
+        try {
+          return rs.getBoolean(colName);
+        } catch (SQLException e) {
+          throw new DfException(e);
+        }
+      }
+
       public boolean next() throws DfException {
         try {
           return rs.next();
@@ -1210,6 +1275,7 @@ public class DocumentumAdaptorTest {
       private final String aclId;
       private final Date lastModified;
       private final boolean isVirtualDocument;
+      private final String[] folderIds;
       private final Multimap<String, String> attributes;
 
       public SysObjectMock(ResultSet rs) throws SQLException {
@@ -1224,6 +1290,9 @@ public class DocumentumAdaptorTest {
         aclId = rs.getString("mock_acl_id");
         lastModified = new Date(rs.getTimestamp("r_modify_date").getTime());
         isVirtualDocument = rs.getBoolean("r_is_virtual_doc");
+        String folderIdList = rs.getString("i_folder_id");
+        folderIds = Strings.isNullOrEmpty(folderIdList)
+            ? new String[0] : folderIdList.split(",");
         attributes = readAttributes(id);
       }
 
@@ -1235,6 +1304,15 @@ public class DocumentumAdaptorTest {
         return Proxies.newProxyInstance(IDfId.class, new IdMock(chronicleId));
       }
 
+      public int getFolderIdCount() {
+        return folderIds.length;
+      }
+
+      public IDfId getFolderId(int index) {
+        return Proxies.newProxyInstance(IDfId.class,
+            new IdMock(folderIds[index]));
+      }
+
       public String getObjectName() {
         return name;
       }
@@ -1936,9 +2014,9 @@ public class DocumentumAdaptorTest {
       String... paths) throws SQLException {
     assertValidIds(id);
     executeUpdate(String.format(
-        "insert into dm_folder(r_object_id, i_chronicle_id, r_folder_path) "
-        + "values('%s', '%s','%s')",
-        id, id, Joiner.on(",").join(paths)));
+        "insert into dm_folder(r_object_id, i_chronicle_id, r_folder_path, "
+        + "r_modify_date) values('%s', '%s', '%s', '%s')",
+        id, id, Joiner.on(",").join(paths), lastModified));
     for (String path : paths) {
       String name = path.substring(path.lastIndexOf("/") + 1);
       insertSysObject(lastModified, id, name, path, type,
@@ -2182,6 +2260,59 @@ public class DocumentumAdaptorTest {
     assertDocContent(boas2, response, lastModified, mimeType, content, false);
   }
 
+  @Test
+  public void testGetDocContent_cachedFolderPaths() throws Exception {
+    Date lastCrawled = new Date();
+    Date lastModified = new Date(lastCrawled.getTime() + (120 * 1000L));
+    String path = START_PATH + "/aaa";
+    String id = DOCUMENT.pad("aaa");
+    String mimeType = "text/html";
+    String content = "<html><body>Hello</body></html>";
+    insertDocument(lastModified, id, id, path, "aaa", mimeType, content);
+    ByteArrayOutputStream boas = new ByteArrayOutputStream();
+    RecordingResponse response = getDocContent(boas,
+        ImmutableMap.of("documentum.cacheFolderPaths", "true"),
+        new MockRequest(docIdFromPath(path, id), lastCrawled));
+    assertDocContent(boas, response, lastModified, mimeType, content, false);
+
+    // The document is not in this folder.
+    response = getDocContent(new ByteArrayOutputStream(),
+        ImmutableMap.of("documentum.cacheFolderPaths", "true"),
+        new MockRequest(docIdFromPath(START_PATH + "/bbb/aaa", id),
+            lastCrawled));
+    assertEquals(State.NOT_FOUND, response.getState());
+  }
+
+  @Test
+  public void testGetDocContent_cachedFolderPathsRenamedFolder()
+      throws Exception {
+    Date lastCrawled = new Date();
+    Date lastModified = new Date(lastCrawled.getTime() + (120 * 1000L));
+    String folderId = FOLDER.pad("FFF1");
+    insertFolder(EPOCH_1970, folderId, START_PATH + "/FFF1");
+    String id = DOCUMENT.pad("aaa");
+    String mimeType = "text/html";
+    String content = "<html><body>Hello</body></html>";
+    insertDocument(lastModified, id, id, START_PATH + "/FFF1/aaa", "aaa",
+        mimeType, content);
+    DocumentumAdaptor adaptor = getObjectUnderTest(
+        ImmutableMap.of("documentum.cacheFolderPaths", "true"));
+    RecordingResponse response = new RecordingResponse();
+    adaptor.getDocContent(new MockRequest(
+        docIdFromPath(START_PATH + "/FFF1/aaa", id), lastCrawled), response);
+    assertEquals(State.SEND_BODY, response.getState());
+
+    // The cache is not refreshed until the next incremental traversal,
+    // so the new path is checked against the live object paths.
+    executeUpdate(String.format("UPDATE dm_folder SET r_folder_path = '%s' "
+        + "WHERE r_object_id = '%s'", START_PATH + "/FFF2", folderId));
+    ByteArrayOutputStream boas = new ByteArrayOutputStream();
+    response = new RecordingResponse(boas);
+    adaptor.getDocContent(new MockRequest(
+        docIdFromPath(START_PATH + "/FFF2/aaa", id), lastCrawled), response);
+    assertDocContent(boas, response, lastModified, mimeType, content, false);
+  }
+
   @Test
   public void testGetDocContent_invalidChronicleId() throws Exception {
     String name = "aaa";
@@ -3214,7 +3345,8 @@ public class DocumentumAdaptorTest {
   private void createAcl(String id) throws SQLException {
     assertValidIds(id);
     executeUpdate(String.format(
-        "insert into dm_acl(r_object_id) values('%s')", id));
+        "insert into dm_acl(r_object_id, r_accessor_count) values('%s', 0)",
+        id));
   }
 
   private boolean isAccessorGroup(String accessorName) throws SQLException {
@@ -3231,12 +3363,23 @@ public class DocumentumAdaptorTest {
 
   private void grantPermit(String id, IDfPermit permit) throws SQLException {
     assertValidIds(id);
+    // Emulate ROW_BASED retrieval, where only an ACL with no accessors
+    // has an empty row, and i_position counts down from -1 for each
+    // accessor in the ACL.
+    executeUpdate(String.format(
+        "delete from dm_acl where r_object_id = '%s' "
+        + "and r_accessor_name is null", id));
     executeUpdate(String.format(
-        "insert into dm_acl(r_object_id, r_accessor_name, "
-        + "r_accessor_permit, r_permit_type, r_is_group) values("
-        + "'%s', '%s', '%s', '%s', '%s')",
+        "insert into dm_acl(r_object_id, i_position, r_accessor_name, "
+        + "r_accessor_permit, r_permit_type, r_is_group) values('%s', "
+        + "(select -count(*) - 1 from dm_acl where r_object_id = '%1$s'), "
+        + "'%s', '%s', '%s', '%s')",
         id, permit.getAccessorName(), permit.getPermitValueInt(),
         permit.getPermitType(), isAccessorGroup(permit.getAccessorName())));
+    executeUpdate(String.format(
+        "update dm_acl set r_accessor_count = "
+        + "(select count(*) from dm_acl where r_object_id = '%1$s') "
+        + "where r_object_id = '%1$s'", id));
   }
 
   private void addAllowPermitToAcl(String id, String accessorName, int permit)
@@ -3375,6 +3518,43 @@ public class DocumentumAdaptorTest {
             new DocId("4501081f80000101")));
   }
 
+  @Test
+  public void testGetAllAclsPartialAclException() throws Exception {
+    insertUsers("User1", "User2");
+    createAcls("4501081f80000100", "4501081f80000101", "4501081f80000102");
+    for (String id : new String[] {"4501081f80000100", "4501081f80000101"}) {
+      addAllowPermitToAcl(id, "User1", IDfACL.DF_PERMIT_READ);
+      addAllowPermitToAcl(id, "User2", IDfACL.DF_PERMIT_READ);
+    }
+
+    // The exception is thrown after the first row of the second ACL,
+    // so only the first ACL is complete.
+    testGetAclsExceptions(Iterators.forArray(3, 0),
+        ImmutableMap.<String, String>of(),
+        new DfException("Expected repeated exception"),
+        ImmutableSet.of(new DocId("4501081f80000100")));
+  }
+
+  @Test
+  public void testGetAllAclsNoAccessors() throws Exception {
+    insertUsers("User1");
+    createAcls("4501081f80000100", "4501081f80000101", "4501081f80000102");
+    addAllowPermitToAcl("4501081f80000101", "User1", IDfACL.DF_PERMIT_READ);
+
+    for (int batchSize = 0; batchSize <= 2; batchSize++) {
+      Map<DocId, Acl> namedResources = getAllAcls("", batchSize);
+      assertEquals(ImmutableSet.of(new DocId("4501081f80000100"),
+          new DocId("4501081f80000101"), new DocId("4501081f80000102")),
+          namedResources.keySet());
+      assertEquals(ImmutableSet.of(),
+          namedResources.get(new DocId("4501081f80000100")).getPermits());
+      assertEquals(ImmutableSet.of(new UserPrincipal("User1", "NS")),
+          namedResources.get(new DocId("4501081f80000101")).getPermits());
+      assertEquals(ImmutableSet.of(),
+          namedResources.get(new DocId("4501081f80000102")).getPermits());
+    }
+  }
+
   @Test
   public void testGetAllAclsOtherRowsException() throws Exception {
     Set<DocId> expected = createAcls("4501081f80000100",
@@ -3395,6 +3575,453 @@ public class DocumentumAdaptorTest {
     }
   }
 
+  @Test
+  public void testGetAllAclsParallel() throws Exception {
+    Set<DocId> expected = createAcls("4501081f80000100",
+        "4501081f80000101",  "4501081f80000102",  "4501081f80000103",
+        "4501081f80000104",  "4501081f80000105",  "4501081f80000106");
+
+    for (int threads = 2; threads <= expected.size() + 1; threads++) {
+      for (int batchSize = 0; batchSize <= 3; batchSize++) {
+        DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+            ImmutableMap.of("documentum.aclTraversalThreads", threads,
+                "documentum.queryBatchSize", batchSize));
+        assertEquals("threads: " + threads + ", batchSize: " + batchSize,
+            expected, getAllAcls(adaptor, null).keySet());
+        assertNull(adaptor.parallelAclTraverser.getRanges());
+      }
+    }
+  }
+
+  @Test
+  public void testGetAllAclsParallelNoAcls() throws Exception {
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.aclTraversalThreads", 4));
+    assertEquals(ImmutableMap.of(), getAllAcls(adaptor, null));
+  }
+
+  @Test
+  public void testGetAllAclsParallelResumesFailedRange() throws Exception {
+    createAcls("4501081f80000100",
+        "4501081f80000101",  "4501081f80000102",  "4501081f80000103",
+        "4501081f80000104",  "4501081f80000105",  "4501081f80000106");
+
+    // The second of two ranges starts after the fourth ACL. It fails
+    // on the first row, and succeeds when it is resumed.
+    DfException expectedCause = new DfException("Expected range failure");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        new ExceptionalResultSetTestProxies(
+            "FROM dm_acl WHERE r_object_id > '4501081f80000103'",
+            Iterators.forArray(0, Integer.MAX_VALUE), expectedCause),
+        ImmutableMap.of("documentum.aclTraversalThreads", 2));
+    adaptor.parallelAclTraverser.setSleeper(NO_SLEEP);
+
+    assertEquals(
+        ImmutableSet.of(new DocId("4501081f80000100"),
+            new DocId("4501081f80000101"), new DocId("4501081f80000102"),
+            new DocId("4501081f80000103")),
+        getAllAcls(adaptor, expectedCause).keySet());
+    assertEquals(1, adaptor.parallelAclTraverser.getRanges().size());
+    assertEquals(
+        ImmutableSet.of(new DocId("4501081f80000104"),
+            new DocId("4501081f80000105"), new DocId("4501081f80000106")),
+        getAllAcls(adaptor, null).keySet());
+    assertNull(adaptor.parallelAclTraverser.getRanges());
+  }
+
+  @Test
+  public void testGetAllAclsStreaming() throws Exception {
+    Set<DocId> expected = createAcls("4501081f80000100",
+        "4501081f80000101",  "4501081f80000102",  "4501081f80000103",
+        "4501081f80000104",  "4501081f80000105",  "4501081f80000106");
+
+    for (int chunkSize = 1; chunkSize <= expected.size() + 1; chunkSize++) {
+      for (int batchSize = 0; batchSize <= 3; batchSize++) {
+        DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+            ImmutableMap.of("documentum.aclPushChunkSize", chunkSize,
+                "documentum.queryBatchSize", batchSize));
+        assertTrue(adaptor.aclTraverser
+            instanceof DocumentumAdaptor.StreamingAclTraverser);
+        assertEquals("chunkSize: " + chunkSize + ", batchSize: " + batchSize,
+            expected, getAllAcls(adaptor, null).keySet());
+        assertEquals(Checkpoint.full(), adaptor.aclTraverser.getCheckpoint());
+      }
+    }
+  }
+
+  @Test
+  public void testGetAllAclsStreamingChunkBytes() throws Exception {
+    insertUsers("User1", "User2");
+    Set<DocId> expected = createAcls("4501081f80000100",
+        "4501081f80000101",  "4501081f80000102");
+    addAllowPermitToAcl("4501081f80000101", "User1", IDfACL.DF_PERMIT_READ);
+    addDenyPermitToAcl("4501081f80000101", "User2", IDfACL.DF_PERMIT_BROWSE);
+
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.aclPushChunkBytes", 1));
+    Map<DocId, Acl> acls = getAllAcls(adaptor, null);
+    assertEquals(expected, acls.keySet());
+    assertEquals(ImmutableSet.of(new UserPrincipal("User1", "NS")),
+        acls.get(new DocId("4501081f80000101")).getPermitUsers());
+  }
+
+  @Test(expected = InvalidConfigurationException.class)
+  public void testGetAllAclsStreamingParallel() throws Exception {
+    getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.aclPushChunkSize", 1,
+            "documentum.aclTraversalThreads", 2));
+  }
+
+  /** Pushes ACLs slowly, so that the queue of ACL chunks fills up. */
+  private static class SlowDocIdPusher extends RecordingDocIdPusher {
+    @Override
+    public DocId pushNamedResources(Map<DocId, Acl> resources) {
+      try {
+        Thread.sleep(400);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return resources.keySet().iterator().next();
+      }
+      return super.pushNamedResources(resources);
+    }
+  }
+
+  @Test
+  public void testGetAllAclsStreamingAdaptiveQueryBatchSize()
+      throws Exception {
+    createAcls("4501081f80000100",
+        "4501081f80000101",  "4501081f80000102",  "4501081f80000103",
+        "4501081f80000104",  "4501081f80000105",  "4501081f80000106");
+
+    // Reading waits for the slow pusher for longer than the target
+    // time, which does not count as query time.
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        new ImmutableMap.Builder<String, Object>()
+        .put("documentum.aclPushChunkSize", 1)
+        .put("documentum.queryBatchSize", 10)
+        .put("documentum.adaptiveQueryBatchSize", true)
+        .put("documentum.minQueryBatchSize", 1)
+        .put("documentum.maxQueryBatchSize", 10)
+        .put("documentum.queryBatchTargetSeconds", 1)
+        .build());
+    SlowDocIdPusher pusher = new SlowDocIdPusher();
+    adaptor.getDocIds(pusher);
+    assertEquals(7, pusher.getNamedResources().size());
+    assertEquals(10, adaptor.aclTraverser.getAdaptiveBatchSize().get());
+  }
+
+  @Test
+  public void testGetAllAclsStreamingPartialRowException() throws Exception {
+    createAcls("4501081f80000100",
+        "4501081f80000101",  "4501081f80000102",  "4501081f80000103",
+        "4501081f80000104",  "4501081f80000105",  "4501081f80000106");
+
+    testGetAclsExceptions(Iterators.forArray(2, 0),
+        ImmutableMap.of("documentum.aclPushChunkSize", 1),
+        new DfException("Expected repeated exception"),
+        ImmutableSet.of(new DocId("4501081f80000100"),
+            new DocId("4501081f80000101")));
+  }
+
+  @Test
+  public void testEstimateSize() throws Exception {
+    DocId docId = new DocId("4501081f80000100");
+    long emptySize = DocumentumAdaptor.estimateSize(docId, Acl.EMPTY);
+    Acl acl = new Acl.Builder()
+        .setPermitUsers(ImmutableSet.of(new UserPrincipal("User1", "NS")))
+        .setDenyGroups(ImmutableSet.of(new GroupPrincipal("Group1", "NS")))
+        .build();
+    assertTrue(DocumentumAdaptor.estimateSize(docId, acl) > emptySize);
+  }
+
+  @Test
+  public void testGetAllAclsSkipsUnchangedAcls() throws Exception {
+    insertUsers("User1", "User2");
+    Set<DocId> expected = createAcls("4501081f80000100",
+        "4501081f80000101",  "4501081f80000102");
+    File digestFile = new File(temporaryFolder.getRoot(), "acl.digests");
+    Map<String, ?> config =
+        ImmutableMap.of("documentum.aclDigestFile", digestFile.getPath());
+
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(config);
+    assertEquals(expected, getAllAcls(adaptor, null).keySet());
+    assertTrue(digestFile.exists());
+    assertEquals(ImmutableSet.of(), getAllAcls(adaptor, null).keySet());
+
+    addAllowPermitToAcl("4501081f80000101", "User1", IDfACL.DF_PERMIT_READ);
+    assertEquals(ImmutableSet.of(new DocId("4501081f80000101")),
+        getAllAcls(adaptor, null).keySet());
+
+    // A new adaptor loads the saved digests.
+    adaptor = getObjectUnderTestNamespaces(config);
+    assertEquals(3, adaptor.getAclDigestStore().size());
+    assertEquals(ImmutableSet.of(), getAllAcls(adaptor, null).keySet());
+  }
+
+  @Test
+  public void testGetAllAclsFullPushInterval() throws Exception {
+    Set<DocId> expected = createAcls("4501081f80000100",
+        "4501081f80000101",  "4501081f80000102");
+    File digestFile = new File(temporaryFolder.getRoot(), "acl.digests");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.aclDigestFile", digestFile.getPath(),
+            "documentum.aclFullPushIntervalHours", 0));
+
+    // With no interval, every traversal pushes all of the ACLs.
+    for (int i = 0; i < 2; i++) {
+      assertEquals(expected, getAllAcls(adaptor, null).keySet());
+      assertEquals(3, adaptor.getAclDigestStore().size());
+    }
+  }
+
+  @Test
+  public void testGetAllAclsFullPushIntervalParallel() throws Exception {
+    Set<DocId> expected = createAcls("4501081f80000100",
+        "4501081f80000101",  "4501081f80000102");
+    File digestFile = new File(temporaryFolder.getRoot(), "acl.digests");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.aclDigestFile", digestFile.getPath(),
+            "documentum.aclFullPushIntervalHours", 0,
+            "documentum.aclTraversalThreads", 2));
+
+    for (int i = 0; i < 2; i++) {
+      assertEquals(expected, getAllAcls(adaptor, null).keySet());
+    }
+  }
+
+  /**
+   * Fails to push any ACLs or group definitions, returning the first
+   * one as the failure, as the library does when a feed fails.
+   */
+  private static class FailingDocIdPusher extends RecordingDocIdPusher {
+    @Override
+    public DocId pushNamedResources(Map<DocId, Acl> resources) {
+      return resources.isEmpty()
+          ? null : resources.keySet().iterator().next();
+    }
+
+    @Override
+    public <T extends Collection<Principal>> GroupPrincipal
+        pushGroupDefinitions(Map<GroupPrincipal, T> defs,
+        boolean caseSensitive, FeedType feedType, String groupSource,
+        ExceptionHandler handler) {
+      return defs.isEmpty() ? null : defs.keySet().iterator().next();
+    }
+  }
+
+  @Test
+  public void testGetAllAclsFailedPushNotRecorded() throws Exception {
+    insertUsers("User1", "User2");
+    Set<DocId> expected = createAcls("4501081f80000100",
+        "4501081f80000101",  "4501081f80000102");
+    File digestFile = new File(temporaryFolder.getRoot(), "acl.digests");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.aclDigestFile", digestFile.getPath()));
+
+    adaptor.getDocIds(new FailingDocIdPusher());
+    assertEquals(0, adaptor.getAclDigestStore().size());
+
+    // The ACLs that failed are pushed again on the next traversal.
+    assertEquals(expected, getAllAcls(adaptor, null).keySet());
+    assertEquals(3, adaptor.getAclDigestStore().size());
+  }
+
+  @Test
+  public void testGetAllAclsForgetsDeletedAclDigests() throws Exception {
+    createAcls("4501081f80000100", "4501081f80000101");
+    File digestFile = new File(temporaryFolder.getRoot(), "acl.digests");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.aclDigestFile", digestFile.getPath(),
+            "documentum.aclTraversalThreads", 2));
+    getAllAcls(adaptor, null);
+    assertEquals(2, adaptor.getAclDigestStore().size());
+
+    executeUpdate("delete from dm_acl where r_object_id = '4501081f80000101'");
+    assertEquals(ImmutableSet.of(), getAllAcls(adaptor, null).keySet());
+    assertEquals(1, adaptor.getAclDigestStore().size());
+  }
+
+  @Test
+  public void testCheckpointStore() throws Exception {
+    File checkpointFile = new File(temporaryFolder.getRoot(), "checkpoints");
+    CheckpointStore store = new CheckpointStore(checkpointFile);
+    store.load();
+    assertEquals(0, store.size());
+
+    store.put("incremental", new Checkpoint(FEB_1970, DOCUMENT.pad("aaa")));
+    store.put("full", Checkpoint.full());
+    store.put("objectId", new Checkpoint(GROUP.pad("Group1")));
+    store.save();
+    assertFalse(new File(checkpointFile.getPath() + ".tmp").exists());
+
+    store = new CheckpointStore(checkpointFile);
+    store.load();
+    assertEquals(3, store.size());
+    assertEquals(new Checkpoint(FEB_1970, DOCUMENT.pad("aaa")),
+        store.get("incremental"));
+    assertEquals(Checkpoint.full(), store.get("full"));
+    assertEquals(new Checkpoint(GROUP.pad("Group1")), store.get("objectId"));
+    assertNull(store.get("missing"));
+  }
+
+  @Test
+  public void testCheckpointStore_invalidFile() throws Exception {
+    File checkpointFile = new File(temporaryFolder.getRoot(), "checkpoints");
+    Files.write(checkpointFile.toPath(), "{1970-01-01, 0}".getBytes(UTF_8));
+    CheckpointStore store = new CheckpointStore(checkpointFile);
+    try {
+      store.load();
+      fail("Expected an IOException");
+    } catch (IOException expected) {
+    }
+    assertEquals(0, store.size());
+  }
+
+  @Test
+  public void testModifiedDocumentsResumeFromSavedCheckpoint()
+      throws Exception {
+    String folderId = FOLDER.pad("FFF1");
+    String folder = "/FFF1";
+    insertFolder(JAN_1970, folderId, folder);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder + "/aaa", folderId);
+    File checkpointFile = new File(temporaryFolder.getRoot(), "checkpoints");
+    Map<String, ?> config = ImmutableMap.of("documentum.src", folder,
+        "documentum.checkpointFile", checkpointFile.getPath());
+
+    DocumentumAdaptor adaptor = getObjectUnderTest(config);
+    assertEquals(makeExpectedDocIds(folder, "aaa"),
+        getModifiedDocIdsPushed(adaptor, new Checkpoint(JAN_1970, folderId),
+            NO_EXCEPTION));
+    assertTrue(checkpointFile.exists());
+
+    // A new adaptor resumes from the saved checkpoint.
+    insertDocument(MAR_1970, DOCUMENT.pad("bbb"), folder + "/bbb", folderId);
+    adaptor = getObjectUnderTest(config);
+    assertEquals(new Checkpoint(FEB_1970, DOCUMENT.pad("aaa")),
+        adaptor.modifiedDocumentTraverser.getCheckpoint());
+    RecordingDocIdPusher pusher = new RecordingDocIdPusher();
+    adaptor.getModifiedDocIds(pusher);
+    assertEquals(makeExpectedDocIds(folder, "bbb"), pusher.getRecords());
+    CheckpointStore store = new CheckpointStore(checkpointFile);
+    store.load();
+    assertEquals(new Checkpoint(MAR_1970, DOCUMENT.pad("bbb")),
+        store.get("modifiedDocuments"));
+  }
+
+  @Test
+  public void testPrincipalCacheStore() throws Exception {
+    File cacheFile = new File(temporaryFolder.getRoot(), "principals");
+    long now = System.currentTimeMillis();
+    Principals.putCachedPrincipals(ImmutableMap.of(
+        "User1", new CachedPrincipal(
+            Optional.<Principal>of(new UserPrincipal("User1", "NS")), now),
+        "Group1", new CachedPrincipal(
+            Optional.<Principal>of(new GroupPrincipal("Group1", "NS_Local")),
+            now),
+        "Missing", new CachedPrincipal(Optional.<Principal>absent(), now)));
+    PrincipalCacheStore store = new PrincipalCacheStore(cacheFile);
+    store.setHighWaterMark("2017-01-01 00:00:00");
+    store.save();
+    Map<String, CachedPrincipal> expected = Principals.getCachedPrincipals();
+    assertEquals(3, expected.size());
+
+    Principals.clearCache();
+    store = new PrincipalCacheStore(cacheFile);
+    store.load();
+    assertEquals("2017-01-01 00:00:00", store.getHighWaterMark());
+    assertEquals(expected, Principals.getCachedPrincipals());
+  }
+
+  @Test(expected = InvalidConfigurationException.class)
+  public void testPrincipalCacheSizeZero() throws Exception {
+    getObjectUnderTest(ImmutableMap.of("documentum.principalCacheSize", 0));
+  }
+
+  @Test(expected = InvalidConfigurationException.class)
+  public void testPrincipalCacheExpireMinutesNegative() throws Exception {
+    getObjectUnderTest(
+        ImmutableMap.of("documentum.principalCacheExpireMinutes", -5));
+  }
+
+  @Test
+  public void testPrincipalCacheStoreSkipsExpiredPrincipals()
+      throws Exception {
+    Principals.configureCache(100000, 0, 1440, 60);
+    long now = System.currentTimeMillis();
+    long twoHoursAgo = now - TimeUnit.HOURS.toMillis(2);
+    long twoDaysAgo = now - TimeUnit.DAYS.toMillis(2);
+    File cacheFile = new File(temporaryFolder.getRoot(), "principals");
+    Files.write(cacheFile.toPath(), ImmutableList.of(
+        "highWaterMark\t2017-01-01 00:00:00",
+        "U\t" + twoHoursAgo + "\tUser1\tNS\tUser1",
+        "U\t" + twoDaysAgo + "\tUser2\tNS\tUser2",
+        "N\t" + now + "\tMissing1",
+        "N\t" + twoHoursAgo + "\tMissing2"), UTF_8);
+
+    Principals.clearCache();
+    new PrincipalCacheStore(cacheFile).load();
+    assertEquals(ImmutableMap.of(
+        "User1", new CachedPrincipal(
+            Optional.<Principal>of(new UserPrincipal("User1", "NS")),
+            twoHoursAgo),
+        "Missing1", new CachedPrincipal(Optional.<Principal>absent(), now)),
+        Principals.getCachedPrincipals());
+  }
+
+  @Test
+  public void testGetAllAclsPersistentPrincipalCache() throws Exception {
+    insertUsers("User1", "User2");
+    executeUpdate("UPDATE dm_user SET r_modify_date = "
+        + "{ts '2000-01-01 00:00:00'} WHERE user_name = 'User1'");
+    String id = "4501081f80000100";
+    createAcl(id);
+    addAllowPermitToAcl(id, "User1", IDfACL.DF_PERMIT_READ);
+    File cacheFile = new File(temporaryFolder.getRoot(), "principals");
+    Map<String, ?> config = ImmutableMap.of(
+        "documentum.principalCacheFile", cacheFile.getPath());
+
+    assertEquals(ImmutableSet.of(new UserPrincipal("User1", "NS")),
+        getAllAcls(getObjectUnderTestNamespaces(config), null)
+        .get(new DocId(id)).getPermitUsers());
+    assertTrue(cacheFile.exists());
+
+    // A new adaptor loads the cached principal for the unmodified user.
+    executeUpdate("UPDATE dm_user SET user_login_name = 'Renamed' "
+        + "WHERE user_name = 'User1'");
+    Principals.clearCache();
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(config);
+    assertEquals(ImmutableSet.of(new UserPrincipal("User1", "NS")),
+        getAllAcls(adaptor, null).get(new DocId(id)).getPermitUsers());
+
+    // Modifying the user invalidates the cached principal.
+    executeUpdate("UPDATE dm_user SET r_modify_date = {ts '"
+        + getNowPlusMinutes(1) + "'} WHERE user_name = 'User1'");
+    assertEquals(ImmutableSet.of(new UserPrincipal("Renamed", "NS")),
+        getAllAcls(adaptor, null).get(new DocId(id)).getPermitUsers());
+  }
+
+  @Test
+  public void testAclDigest() throws Exception {
+    Acl acl1 = new Acl.Builder()
+        .setPermitUsers(ImmutableSet.of(new UserPrincipal("User1", "NS"),
+            new UserPrincipal("User2", "NS")))
+        .setInheritFrom(new DocId("parent"))
+        .build();
+    Acl acl2 = new Acl.Builder()
+        .setPermitUsers(ImmutableSet.of(new UserPrincipal("User2", "NS"),
+            new UserPrincipal("User1", "NS")))
+        .setInheritFrom(new DocId("parent"))
+        .build();
+    Acl acl3 = new Acl.Builder()
+        .setDenyUsers(ImmutableSet.of(new UserPrincipal("User1", "NS"),
+            new UserPrincipal("User2", "NS")))
+        .setInheritFrom(new DocId("parent"))
+        .build();
+    assertEquals(AclDigestStore.digest(acl1), AclDigestStore.digest(acl2));
+    assertFalse(AclDigestStore.digest(acl1).equals(
+        AclDigestStore.digest(acl3)));
+  }
+
   @Test
   public void testAllowAcls() throws Exception {
     insertUsers("User1", "User2", "User3", "User4", "User5");
@@ -3653,6 +4280,55 @@ public class DocumentumAdaptorTest {
         acl2.getDenyGroups());
   }
 
+  @Test
+  public void testSharedRequiredGroupAcls() throws Exception {
+    insertUsers("User1", "User2", "User3");
+    insertGroup("Group1", "User1");
+    insertGroup("Group2", "User2");
+    insertGroup("Group3", "User3");
+
+    String id1 = ACL.pad("Ac10");
+    String id2 = ACL.pad("Ac11");
+    String id3 = ACL.pad("Ac12");
+    for (String id : new String[] {id1, id2}) {
+      createAcl(id);
+      addAllowPermitToAcl(id, "User1", IDfACL.DF_PERMIT_READ);
+      addRequiredGroupToAcl(id, "Group1");
+      addRequiredGroupToAcl(id, "Group2");
+      addRequiredGroupSetToAcl(id, "Group3");
+    }
+    createAcl(id3);
+    addRequiredGroupToAcl(id3, "Group1");
+
+    Map<DocId, Acl> namedResources = getAllAcls(
+        getObjectUnderTestNamespaces(
+            ImmutableMap.of("documentum.sharedRequiredGroupAcls", "true")),
+        null);
+    // Three basic ACLs, two required group ACLs and one required
+    // group set ACL.
+    assertEquals(namedResources.toString(), 6, namedResources.size());
+
+    DocId reqGroupSet = namedResources.get(new DocId(id1)).getInheritFrom();
+    assertTrue(reqGroupSet.getUniqueId(),
+        reqGroupSet.getUniqueId().startsWith("reqGroupSet_"));
+    assertEquals(reqGroupSet,
+        namedResources.get(new DocId(id2)).getInheritFrom());
+    Acl reqGroupSetAcl = namedResources.get(reqGroupSet);
+    assertEquals(ImmutableSet.of(new GroupPrincipal("Group3", "NS_Local")),
+        reqGroupSetAcl.getPermitGroups());
+
+    Acl reqGroup2Acl = namedResources.get(reqGroupSetAcl.getInheritFrom());
+    assertEquals(ImmutableSet.of(new GroupPrincipal("Group2", "NS_Local")),
+        reqGroup2Acl.getPermitGroups());
+    DocId reqGroup1 = reqGroup2Acl.getInheritFrom();
+    assertEquals(reqGroup1,
+        namedResources.get(new DocId(id3)).getInheritFrom());
+    Acl reqGroup1Acl = namedResources.get(reqGroup1);
+    assertEquals(ImmutableSet.of(new GroupPrincipal("Group1", "NS_Local")),
+        reqGroup1Acl.getPermitGroups());
+    assertNull(reqGroup1Acl.getInheritFrom());
+  }
+
   @Test
   public void testRequiredGroupsAcl() throws Exception {
     insertUsers("User1", "User2", "User3", "User4", "User5", "User6", "User7");
@@ -4338,11 +5014,35 @@ public class DocumentumAdaptorTest {
         START_PATH + "/aaa", "dm_document", START_PATH_ID);
     insertAuditTrailAclEvent(dateStr, "123", DOCUMENT.pad("aaa"));
 
+    // The document is only pushed once for both changes.
     testUpdatedPermissions(docCheckpoint, Checkpoint.incremental(),
-        makeExpectedDocIds(START_PATH, "aaa", "aaa"),
+        makeExpectedDocIds(START_PATH, "aaa"),
         new Checkpoint(dateStr, AUDITTRAIL.pad("123")));
   }
 
+  @Test
+  public void testUpdatedPermissions_DocAndPermissionsNextCycle()
+      throws Exception {
+    Checkpoint docCheckpoint =
+        new Checkpoint(getNowPlusMinutes(-5), AUDITTRAIL.pad("125"));
+    String dateStr = getNowPlusMinutes(5);
+    insertSysObject(dateStr, DOCUMENT.pad("aaa"), "aaa",
+        START_PATH + "/aaa", "dm_document", START_PATH_ID);
+    DocumentumAdaptor adaptor = getObjectUnderTest();
+    adaptor.modifiedDocumentTraverser.setCheckpoint(docCheckpoint);
+    adaptor.modifiedPermissionsTraverser.setCheckpoint(
+        Checkpoint.incremental());
+    RecordingDocIdPusher pusher = new RecordingDocIdPusher();
+    adaptor.getModifiedDocIds(pusher);
+    assertEquals(makeExpectedDocIds(START_PATH, "aaa"), pusher.getRecords());
+
+    // A permissions change in a later cycle pushes the document again.
+    insertAuditTrailAclEvent(dateStr, "123", DOCUMENT.pad("aaa"));
+    pusher = new RecordingDocIdPusher();
+    adaptor.getModifiedDocIds(pusher);
+    assertEquals(makeExpectedDocIds(START_PATH, "aaa"), pusher.getRecords());
+  }
+
   @Test
   public void testUpdatedPermissions_AclNonAclEvents() throws Exception {
     Checkpoint docCheckpoint = insertTestDocuments();
@@ -4519,7 +5219,7 @@ public class DocumentumAdaptorTest {
       expectedGroups) throws DfException, IOException, InterruptedException {
     DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
         new ExceptionalResultSetTestProxies(
-            "FROM dm_user", failIterations,
+            "r_object_id, user_name FROM dm_user", failIterations,
             (expectedCause != NO_EXCEPTION) ? expectedCause
             : new DfException("Recoverable exception should be handled")),
         configOverrides);
@@ -4577,8 +5277,103 @@ public class DocumentumAdaptorTest {
   }
 
   @Test
-  public void testGetGroupsUserMembersOnly() throws Exception {
-    insertUsers("User1", "User2", "User3", "User4", "User5");
+  public void testResolvePrincipals() throws Exception {
+    insertUser("User1", "User1");
+    insertUser("User2", "user2", "CN=User2,DC=corp,DC=example,DC=com", false);
+    insertGroup("Group1", "User1");
+    insertLdapGroup("Group2", "User2");
+    Map<String, Boolean> accessors = new HashMap<String, Boolean>();
+    for (int i = 0; i < 300; i++) {
+      insertUsers("User" + (1000 + i));
+      accessors.put("User" + (1000 + i), false);
+    }
+    accessors.put("User1", false);
+    accessors.put("User2", false);
+    accessors.put("Group1", true);
+    accessors.put("Group2", true);
+    accessors.put("Missing", false);
+    accessors.put("dm_world", true);
+
+    IDfClientX dmClientX = new H2BackedTestProxies().getProxyClientX();
+    IDfSession dmSession =
+        dmClientX.getLocalClient().newSessionManager().newSession("docbase");
+    Principals principals =
+        new Principals(dmClientX, dmSession, "NS_Local", "NS", null);
+    principals.resolvePrincipals(accessors);
+
+    // The principals should now be cached.
+    executeUpdate("DELETE FROM dm_user");
+    executeUpdate("DELETE FROM dm_group");
+    assertEquals(new UserPrincipal("User1", "NS"),
+        principals.getPrincipal("User1", false));
+    assertEquals(new UserPrincipal("corp\\user2", "NS"),
+        principals.getPrincipal("User2", false));
+    assertEquals(new GroupPrincipal("Group1", "NS_Local"),
+        principals.getPrincipal("Group1", true));
+    assertEquals(new GroupPrincipal("Group2", "NS"),
+        principals.getPrincipal("Group2", true));
+    assertEquals(new UserPrincipal("User1299", "NS"),
+        principals.getPrincipal("User1299", false));
+    assertNull(principals.getPrincipal("Missing", false));
+    assertEquals(new GroupPrincipal("dm_world", "NS_Local"),
+        principals.getPrincipal("dm_world", true));
+  }
+
+  @Test
+  public void testPrincipalDirectory() throws Exception {
+    insertUsers("User1", "User2");
+    insertUser("User3", "user3", "CN=User3,DC=corp,DC=example,DC=com", false);
+    insertGroup("Group1", "User1");
+    insertLdapGroup("Group2", "User2");
+    disableUsers("User2");
+
+    IDfClientX dmClientX = new H2BackedTestProxies().getProxyClientX();
+    IDfSession dmSession =
+        dmClientX.getLocalClient().newSessionManager().newSession("docbase");
+    PrincipalDirectory directory =
+        PrincipalDirectory.load(dmClientX, dmSession);
+    Principals principals = new Principals(dmClientX, dmSession, directory,
+        "NS_Local", "NS", null);
+
+    // The directory should not need to query the repository again.
+    executeUpdate("DELETE FROM dm_user");
+    executeUpdate("DELETE FROM dm_group");
+    assertEquals(new UserPrincipal("User1", "NS"),
+        principals.getPrincipal("User1", false));
+    assertNull(principals.getPrincipal("User2", false));
+    assertEquals(new UserPrincipal("corp\\user3", "NS"),
+        principals.getPrincipal("User3", false));
+    assertEquals(new GroupPrincipal("Group1", "NS_Local"),
+        principals.getPrincipal("Group1", true));
+    assertEquals(new GroupPrincipal("Group2", "NS"),
+        principals.getPrincipal("Group2", true));
+    assertNull(principals.getPrincipal("Missing", false));
+  }
+
+  @Test
+  public void testGetGroupsPreloadPrincipals() throws Exception {
+    insertUsers("User1", "User3", "User4", "User5");
+    insertUser("User6", "User6", "cn=User6,dc=test,dc=com", false);
+    insertGroup("Group1", "User1", "User2", "User3");
+    insertLdapGroup("Group2", "Group1", "User4", "User5", "User6");
+    disableUsers("User4");
+
+    ImmutableMap<GroupPrincipal, ? extends Collection<? extends Principal>>
+        expected = ImmutableMap.of(new GroupPrincipal("Group1", "NS_Local"),
+            ImmutableSet.of(new UserPrincipal("User1", "NS"),
+                            new UserPrincipal("User3", "NS")),
+            new GroupPrincipal("Group2", "NS"),
+            ImmutableSet.of(new GroupPrincipal("Group1", "NS_Local"),
+                            new UserPrincipal("User5", "NS"),
+                            new UserPrincipal("test\\User6", "NS")));
+
+    assertEquals(expected, filterDmWorld(
+        getGroups(ImmutableMap.of("documentum.preloadPrincipals", "true"))));
+  }
+
+  @Test
+  public void testGetGroupsUserMembersOnly() throws Exception {
+    insertUsers("User1", "User2", "User3", "User4", "User5");
     insertGroup("Group1", "User1", "User2", "User3");
     insertGroup("Group2", "User3", "User4", "User5");
 
@@ -4798,6 +5593,401 @@ public class DocumentumAdaptorTest {
     }
   }
 
+  @Test
+  public void testGetGroupsParallel() throws Exception {
+    insertUsers("User1", "User2", "User3", "User4", "User5");
+    insertGroup("Group1", "User1", "User2", "User3");
+    insertGroup("Group2", "Group1", "User4", "User5");
+    insertGroup("Group3", "User5");
+    insertGroup("Group4", "User1", "User2", "User3", "User4");
+    insertGroup("Group5", "Group1", "Group2");
+    Map<GroupPrincipal, ? extends Collection<Principal>> expected =
+        filterDmWorld(getGroups());
+
+    for (int threads = 2; threads <= expected.size() + 1; threads++) {
+      for (int batchSize = 0; batchSize <= 3; batchSize++) {
+        DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+            ImmutableMap.of("documentum.groupTraversalThreads", threads,
+                "documentum.queryBatchSize", batchSize));
+        assertEquals("threads: " + threads + ", batchSize: " + batchSize,
+            expected, filterDmWorld(getGroups(adaptor, null)));
+        assertNull(adaptor.parallelGroupTraverser.getRanges());
+      }
+    }
+  }
+
+  @Test
+  public void testGetGroupsParallelNoGroups() throws Exception {
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.groupTraversalThreads", 4));
+    assertEquals(ImmutableMap.of(), filterDmWorld(getGroups(adaptor, null)));
+  }
+
+  /**
+   * Records the feed type of each push of group definitions. The
+   * members are copied, because spilled groups are read from a file
+   * that is deleted after the push.
+   */
+  private static class FeedTypeRecordingDocIdPusher
+      extends RecordingDocIdPusher {
+    private final List<FeedType> feedTypes = new ArrayList<FeedType>();
+
+    @Override
+    public synchronized <T extends Collection<Principal>> GroupPrincipal
+        pushGroupDefinitions(Map<GroupPrincipal, T> defs,
+        boolean caseSensitive, FeedType feedType, String groupSource,
+        ExceptionHandler handler) {
+      feedTypes.add(feedType);
+      Map<GroupPrincipal, Set<Principal>> copy =
+          new LinkedHashMap<GroupPrincipal, Set<Principal>>();
+      for (Map.Entry<GroupPrincipal, T> entry : defs.entrySet()) {
+        copy.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
+      }
+      return super.pushGroupDefinitions(copy, caseSensitive, feedType,
+          groupSource, handler);
+    }
+  }
+
+  @Test
+  public void testGetDocIdsTraverserThreads() throws Exception {
+    createAcls("4501081f80000100", "4501081f80000101");
+    insertUsers("User1", "User2");
+    insertGroup("Group1", "User1");
+    insertGroup("Group2", "User2", "Group1");
+
+    RecordingDocIdPusher expected = new RecordingDocIdPusher();
+    getObjectUnderTestNamespaces(ImmutableMap.<String, String>of())
+        .getDocIds(expected);
+    RecordingDocIdPusher pusher = new RecordingDocIdPusher();
+    getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.traverserThreads", 3))
+        .getDocIds(pusher);
+
+    assertEquals(expected.getNamedResources(), pusher.getNamedResources());
+    assertEquals(expected.getGroupDefinitions(),
+        pusher.getGroupDefinitions());
+    assertTrue(pusher.getGroupDefinitions().containsKey(
+        new GroupPrincipal("dm_world", "NS_Local")));
+  }
+
+  @Test
+  public void testGetDocIdsTraverserThreadsException() throws Exception {
+    createAcls("4501081f80000100", "4501081f80000101");
+    insertUsers("User1", "User2");
+    insertGroup("Group1", "User1");
+
+    // The ACL traversal fails without progress, but the groups are
+    // still pushed before the exception is thrown.
+    DfException expectedCause = new DfException("Expected ACL failure");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        new ExceptionalResultSetTestProxies("FROM dm_acl",
+            Iterators.forArray(0), expectedCause),
+        ImmutableMap.of("documentum.traverserThreads", 3));
+    RecordingDocIdPusher pusher = new RecordingDocIdPusher();
+    try {
+      adaptor.getDocIds(pusher);
+      fail("Expected an exception");
+    } catch (IOException e) {
+      assertSame(expectedCause, e.getCause());
+    }
+    assertEquals(ImmutableMap.of(), pusher.getNamedResources());
+    assertTrue(pusher.getGroupDefinitions().containsKey(
+        new GroupPrincipal("Group1", "NS_Local")));
+    assertTrue(pusher.getGroupDefinitions().containsKey(
+        new GroupPrincipal("dm_world", "NS_Local")));
+  }
+
+  @Test
+  public void testGetGroupsParallelFeedType() throws Exception {
+    insertUsers("User1", "User2", "User3");
+    insertGroup("Group1", "User1");
+    insertGroup("Group2", "User2");
+    insertGroup("Group3", "User3");
+
+    // A new traversal without batching replaces all of the groups,
+    // but a batched traversal cannot.
+    for (int batchSize = 0; batchSize <= 1; batchSize++) {
+      DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+          ImmutableMap.of("documentum.groupTraversalThreads", 2,
+              "documentum.queryBatchSize", batchSize));
+      FeedTypeRecordingDocIdPusher pusher =
+          new FeedTypeRecordingDocIdPusher();
+      adaptor.getDocIds(pusher);
+      assertEquals("batchSize: " + batchSize,
+          (batchSize == 0) ? FeedType.REPLACE : FeedType.INCREMENTAL,
+          pusher.feedTypes.get(0));
+    }
+  }
+
+  @Test
+  public void testGetGroupsParallelResumesFailedRange() throws Exception {
+    insertUsers("User1", "User2", "User3", "User4", "User5");
+    insertGroup("Group1", "User1");
+    insertGroup("Group2", "User2");
+    insertGroup("Group3", "User3");
+    insertGroup("Group4", "User4");
+    insertGroup("Group5", "User5");
+
+    // The second of two ranges starts after the third group. It fails
+    // on the first row, and succeeds when it is resumed.
+    DfException expectedCause = new DfException("Expected range failure");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        new ExceptionalResultSetTestProxies(
+            "FROM dm_group WHERE r_object_id > '" + GROUP.pad("Group3") + "'",
+            Iterators.forArray(0, Integer.MAX_VALUE), expectedCause),
+        ImmutableMap.of("documentum.groupTraversalThreads", 2));
+    adaptor.parallelGroupTraverser.setSleeper(NO_SLEEP);
+
+    assertEquals(
+        ImmutableMap.of(
+           new GroupPrincipal("Group1", "NS_Local"),
+               ImmutableSet.of(new UserPrincipal("User1", "NS")),
+           new GroupPrincipal("Group2", "NS_Local"),
+               ImmutableSet.of(new UserPrincipal("User2", "NS")),
+           new GroupPrincipal("Group3", "NS_Local"),
+               ImmutableSet.of(new UserPrincipal("User3", "NS"))),
+        filterDmWorld(getGroups(adaptor, expectedCause)));
+    assertEquals(1, adaptor.parallelGroupTraverser.getRanges().size());
+    assertEquals(
+        ImmutableMap.of(
+           new GroupPrincipal("Group4", "NS_Local"),
+               ImmutableSet.of(new UserPrincipal("User4", "NS")),
+           new GroupPrincipal("Group5", "NS_Local"),
+               ImmutableSet.of(new UserPrincipal("User5", "NS"))),
+        filterDmWorld(getGroups(adaptor, null)));
+    assertNull(adaptor.parallelGroupTraverser.getRanges());
+  }
+
+  @Test
+  public void testGetGroupsSkipsUnchangedGroups() throws Exception {
+    insertUsers("User1", "User2", "User3");
+    insertGroup("Group1", "User1");
+    insertGroup("Group2", "User2");
+    insertGroup("Group3", "User3");
+    File digestFile = new File(temporaryFolder.getRoot(), "group.digests");
+
+    for (int threads = 1; threads <= 2; threads++) {
+      Map<String, ?> config =
+          ImmutableMap.of("documentum.groupDigestFile", digestFile.getPath(),
+              "documentum.groupTraversalThreads", threads);
+      digestFile.delete();
+      DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(config);
+
+      // The first traversal replaces all of the groups.
+      FeedTypeRecordingDocIdPusher pusher =
+          new FeedTypeRecordingDocIdPusher();
+      adaptor.getDocIds(pusher);
+      assertEquals(FeedType.REPLACE, pusher.feedTypes.get(0));
+      assertEquals(3, filterDmWorld(pusher.getGroupDefinitions()).size());
+      assertTrue(digestFile.exists());
+
+      // Later traversals push only the changed and deleted groups.
+      pusher = new FeedTypeRecordingDocIdPusher();
+      adaptor.getDocIds(pusher);
+      assertEquals(FeedType.INCREMENTAL, pusher.feedTypes.get(0));
+      assertEquals(ImmutableMap.of(),
+          filterDmWorld(pusher.getGroupDefinitions()));
+
+      deleteGroup("Group2");
+      insertGroup("Group2", "User1", "User2");
+      deleteGroup("Group3");
+      assertEquals(
+          ImmutableMap.of(
+              new GroupPrincipal("Group2", "NS_Local"),
+                  ImmutableSet.of(new UserPrincipal("User1", "NS"),
+                      new UserPrincipal("User2", "NS")),
+              new GroupPrincipal("Group3", "NS_Local"),
+                  ImmutableSet.of()),
+          filterDmWorld(getGroups(adaptor, null)));
+      assertEquals(2, adaptor.getGroupDigestStore().size());
+
+      // A new adaptor loads the saved digests.
+      adaptor = getObjectUnderTestNamespaces(config);
+      assertEquals(2, adaptor.getGroupDigestStore().size());
+      assertEquals(ImmutableMap.of(),
+          filterDmWorld(getGroups(adaptor, null)));
+
+      // Restore the groups for the next iteration.
+      deleteGroup("Group2");
+      insertGroup("Group2", "User2");
+      insertGroup("Group3", "User3");
+    }
+  }
+
+  @Test
+  public void testGetGroupsFailedPushNotRecorded() throws Exception {
+    insertUsers("User1", "User2");
+    insertGroup("Group1", "User1");
+    insertGroup("Group2", "User2");
+    File digestFile = new File(temporaryFolder.getRoot(), "group.digests");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.groupDigestFile", digestFile.getPath()));
+
+    adaptor.getDocIds(new FailingDocIdPusher());
+    assertEquals(0, adaptor.getGroupDigestStore().size());
+
+    // The groups that failed are pushed again on the next traversal,
+    // even though it only pushes the changed groups.
+    FeedTypeRecordingDocIdPusher pusher = new FeedTypeRecordingDocIdPusher();
+    adaptor.getDocIds(pusher);
+    assertEquals(FeedType.INCREMENTAL, pusher.feedTypes.get(0));
+    assertEquals(
+        ImmutableSet.of(new GroupPrincipal("Group1", "NS_Local"),
+            new GroupPrincipal("Group2", "NS_Local")),
+        filterDmWorld(pusher.getGroupDefinitions()).keySet());
+    assertEquals(2, adaptor.getGroupDigestStore().size());
+  }
+
+  @Test
+  public void testGetGroupsFullPushInterval() throws Exception {
+    insertUsers("User1", "User2");
+    insertGroup("Group1", "User1");
+    insertGroup("Group2", "User2");
+    File digestFile = new File(temporaryFolder.getRoot(), "group.digests");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.groupDigestFile", digestFile.getPath(),
+            "documentum.groupFullPushIntervalHours", 0));
+
+    // With no interval, every traversal replaces all of the groups.
+    for (int i = 0; i < 2; i++) {
+      FeedTypeRecordingDocIdPusher pusher =
+          new FeedTypeRecordingDocIdPusher();
+      adaptor.getDocIds(pusher);
+      assertEquals(FeedType.REPLACE, pusher.feedTypes.get(0));
+      assertEquals(2, filterDmWorld(pusher.getGroupDefinitions()).size());
+    }
+  }
+
+  @Test
+  public void testGroupDigest() {
+    Principal user1 = new UserPrincipal("User1", "NS");
+    Principal group1 = new GroupPrincipal("User1", "NS");
+    Principal user2 = new UserPrincipal("User2", "NS");
+    assertEquals(
+        GroupDigestStore.digest(ImmutableSet.of(user1, user2)),
+        GroupDigestStore.digest(ImmutableSet.of(user2, user1)));
+    assertFalse(GroupDigestStore.digest(ImmutableSet.of(user1)).equals(
+        GroupDigestStore.digest(ImmutableSet.of(group1))));
+    assertFalse(GroupDigestStore.digest(ImmutableSet.of(user1)).equals(
+        GroupDigestStore.digest(ImmutableSet.<Principal>of())));
+  }
+
+  @Test
+  public void testGetGroupsSpilled() throws Exception {
+    insertUsers("User1", "User2", "User3", "User4", "User5");
+    insertGroup("Group1", "User1", "User2", "User3");
+    insertGroup("Group2", "Group1", "User4", "User5");
+    insertGroup("Group3", "User5");
+    insertGroup("Group4", "User1", "User2", "User3", "User4");
+    Map<GroupPrincipal, ? extends Collection<Principal>> expected =
+        getGroups();
+    File tempDir = new File(System.getProperty("java.io.tmpdir"));
+    FilenameFilter spillFiles = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+          return name.startsWith("groups") && name.endsWith(".spill");
+        }
+      };
+    int spillFileCount = tempDir.list(spillFiles).length;
+
+    // A one byte budget spills every group and every dm_world member.
+    for (int threads = 1; threads <= 2; threads++) {
+      for (int batchSize = 0; batchSize <= 2; batchSize++) {
+        DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+            ImmutableMap.of("documentum.groupPushChunkBytes", 1,
+                "documentum.groupTraversalThreads", threads,
+                "documentum.queryBatchSize", batchSize));
+        FeedTypeRecordingDocIdPusher pusher =
+            new FeedTypeRecordingDocIdPusher();
+        adaptor.getDocIds(pusher);
+        String message = "threads: " + threads + ", batchSize: " + batchSize;
+        assertEquals(message, expected, pusher.getGroupDefinitions());
+        assertEquals(message,
+            (batchSize == 0) ? FeedType.REPLACE : FeedType.INCREMENTAL,
+            pusher.feedTypes.get(0));
+        assertEquals(message, spillFileCount,
+            tempDir.list(spillFiles).length);
+      }
+    }
+  }
+
+  @Test
+  public void testGetGroupsLargeGroups() throws Exception {
+    insertUsers("User1", "User2", "User3", "User4", "User5");
+    insertGroup("Group1", "User1", "User2", "User3", "User4", "User5");
+    insertGroup("Group2", "Group1", "User1");
+    insertGroup("Group3", "Group1", "Group2", "Group4", "User5");
+    insertGroup("Group4", "User2", "User3");
+    Map<GroupPrincipal, ? extends Collection<Principal>> expected =
+        getGroups();
+
+    for (int threads = 1; threads <= 2; threads++) {
+      for (int batchSize = 0; batchSize <= 2; batchSize++) {
+        List<String> queries = new ArrayList<>();
+        Logging.captureLogMessages(DocumentumAdaptor.class,
+            "Large Group Members Query", queries);
+        DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+            ImmutableMap.of("documentum.largeGroupMemberThreshold", 2,
+                "documentum.groupTraversalThreads", threads,
+                "documentum.queryBatchSize", batchSize));
+        FeedTypeRecordingDocIdPusher pusher =
+            new FeedTypeRecordingDocIdPusher();
+        adaptor.getDocIds(pusher);
+        String message = "threads: " + threads + ", batchSize: " + batchSize;
+        assertEquals(message, expected, pusher.getGroupDefinitions());
+        assertEquals(message,
+            (batchSize == 0) ? FeedType.REPLACE : FeedType.INCREMENTAL,
+            pusher.feedTypes.get(0));
+        // Group1 has three pages of users and one of groups, and Group3
+        // has one page of users and two of groups.
+        assertEquals(message + ": " + queries, 7, queries.size());
+      }
+    }
+  }
+
+  @Test
+  public void testGetGroupsLargeGroupResumesAfterError() throws Exception {
+    insertUsers("User1", "User2", "User3", "User4", "User5");
+    insertGroup("Group1", "User1", "User2", "User3", "User4", "User5");
+    insertGroup("Group2", "User1");
+    Map<GroupPrincipal, ? extends Collection<Principal>> expected =
+        getGroups();
+
+    List<String> queries = new ArrayList<>();
+    Logging.captureLogMessages(DocumentumAdaptor.class,
+        "Large Group Members Query", queries);
+    DfException expectedCause = new DfException("Expected");
+    // The second page of users fails on the first attempt.
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        new ExceptionalResultSetTestProxies("users_names > 'User2'",
+            Iterators.forArray(0, Integer.MAX_VALUE, Integer.MAX_VALUE),
+            expectedCause),
+        ImmutableMap.of("documentum.largeGroupMemberThreshold", 2));
+    adaptor.groupTraverser.setSleeper(NO_SLEEP);
+    getGroups(adaptor, expectedCause);
+    assertEquals(queries.toString(), 2, queries.size());
+
+    // The next traversal resumes with the page that failed, and pushes
+    // the whole group.
+    queries.clear();
+    FeedTypeRecordingDocIdPusher pusher = new FeedTypeRecordingDocIdPusher();
+    adaptor.getDocIds(pusher);
+    assertEquals(expected, pusher.getGroupDefinitions());
+    assertFalse(queries.toString(),
+        queries.get(0).contains("users_names IS NOT NULL ORDER BY"));
+    assertEquals(queries.toString(), 3, queries.size());
+  }
+
+  @Test
+  public void testEstimateGroupSize() {
+    GroupPrincipal group = new GroupPrincipal("Group1", "NS_Local");
+    long emptySize =
+        DocumentumAdaptor.estimateSize(group, ImmutableSet.<Principal>of());
+    assertTrue(emptySize > 0);
+    assertTrue(DocumentumAdaptor.estimateSize(group,
+            ImmutableSet.of(new UserPrincipal("User1", "NS"))) > emptySize);
+  }
+
   private void testGetGroupsExceptions(Iterator<Integer> failIterations,
       String queryFragment, Map<String, ?> configOverrides,
       DfException expectedCause,
@@ -4884,7 +6074,7 @@ public class DocumentumAdaptorTest {
     // Note: a batch size of 0, means no batching.
     for (int batchSize = 0; batchSize <= expected.size() + 1; batchSize++) {
       testGetGroupsExceptions(Iterators.cycle(2),
-          "ENABLE(ROW_BASED)",
+          "users_names FROM dm_group",
           ImmutableMap.of("documentum.queryBatchSize", batchSize),
           NO_EXCEPTION,
           expected);
@@ -4899,7 +6089,7 @@ public class DocumentumAdaptorTest {
     insertGroup("Group2", "User4", "User5");
 
     testGetGroupsExceptions(Iterators.singletonIterator(1),
-        "ENABLE(ROW_BASED)",
+        "users_names FROM dm_group",
         ImmutableMap.<String, String>of(),
         new DfException("Expected failure in first group"),
         ImmutableMap.<GroupPrincipal, Set<Principal>>of());
@@ -4931,7 +6121,7 @@ public class DocumentumAdaptorTest {
     // mid-group. Note: a batch size of 0, means no batching.
     for (int batchSize = 0; batchSize <= expected.size() + 1; batchSize += 2) {
       testGetGroupsExceptions(Iterators.cycle(5),
-          "ENABLE(ROW_BASED)",
+          "users_names FROM dm_group",
           ImmutableMap.of("documentum.queryBatchSize", batchSize),
           NO_EXCEPTION,
           expected);
@@ -4948,7 +6138,7 @@ public class DocumentumAdaptorTest {
     // This should fail on Group2 the first time, and again on retry,
     // so only the first group will get pushed.
     testGetGroupsExceptions(Iterators.cycle(2),
-        "ENABLE(ROW_BASED)",
+        "users_names FROM dm_group",
         ImmutableMap.<String, String>of(),
         new DfException("Expected repeat failure"),
         ImmutableMap.of(new GroupPrincipal("Group1", "NS_Local"),
@@ -5138,6 +6328,96 @@ public class DocumentumAdaptorTest {
           checkpoint);
   }
 
+  @Test
+  public void testGetDmWorldUpdates() throws Exception {
+    insertUsers("User1", "User2", "User3");
+    GroupPrincipal dmWorld = new GroupPrincipal("dm_world", "NS_Local");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.dmWorldRebuildIntervalHours", 24));
+
+    // Nothing is pushed until a full traversal has read dm_world.
+    RecordingDocIdPusher pusher = new RecordingDocIdPusher();
+    adaptor.getModifiedDocIds(pusher);
+    assertEquals(ImmutableMap.of(), pusher.getGroupDefinitions());
+
+    assertEquals(ImmutableSet.of(new UserPrincipal("User1", "NS"),
+            new UserPrincipal("User2", "NS"), new UserPrincipal("User3", "NS")),
+        getGroups(adaptor, null).get(dmWorld));
+
+    insertUsers("User4");
+    executeUpdate("UPDATE dm_user SET user_state = 1, "
+        + "r_modify_date = CURRENT_TIMESTAMP WHERE user_name = 'User1'");
+    ImmutableMap<GroupPrincipal, ImmutableSet<UserPrincipal>> expected =
+        ImmutableMap.of(dmWorld, ImmutableSet.of(
+            new UserPrincipal("User2", "NS"), new UserPrincipal("User3", "NS"),
+            new UserPrincipal("User4", "NS")));
+    pusher = new RecordingDocIdPusher();
+    adaptor.getModifiedDocIds(pusher);
+    assertEquals(expected, pusher.getGroupDefinitions());
+
+    // dm_world is not pushed again if its members have not changed.
+    pusher = new RecordingDocIdPusher();
+    adaptor.getModifiedDocIds(pusher);
+    assertEquals(ImmutableMap.of(), pusher.getGroupDefinitions());
+
+    // Within the rebuild interval, the next full traversal pushes the
+    // members that were kept, without reading the users.
+    List<String> queries = new ArrayList<>();
+    Logging.captureLogMessages(DocumentumAdaptor.class,
+        "Get dm_world Members Query", queries);
+    assertEquals(expected.get(dmWorld), getGroups(adaptor, null).get(dmWorld));
+    assertEquals(ImmutableList.of(), queries);
+  }
+
+  @Test
+  public void testGetDmWorldUpdatesAfterRebuild() throws Exception {
+    insertUsers("User1", "User2", "User3");
+    GroupPrincipal dmWorld = new GroupPrincipal("dm_world", "NS_Local");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.dmWorldRebuildIntervalHours", 24));
+    assertEquals(3, getGroups(adaptor, null).get(dmWorld).size());
+
+    // A change the rebuild missed is applied again, even if a running
+    // incremental traversal moved its checkpoint after the rebuild.
+    executeUpdate("UPDATE dm_user SET user_state = 1, "
+        + "r_modify_date = CURRENT_TIMESTAMP WHERE user_name = 'User1'");
+    adaptor.modifiedDmWorldTraverser.setCheckpoint(
+        new Checkpoint(getNowPlusMinutes(5), "0"));
+    RecordingDocIdPusher pusher = new RecordingDocIdPusher();
+    adaptor.getModifiedDocIds(pusher);
+    assertEquals(
+        ImmutableMap.of(dmWorld,
+            ImmutableSet.of(new UserPrincipal("User2", "NS"),
+                new UserPrincipal("User3", "NS"))),
+        pusher.getGroupDefinitions());
+  }
+
+  @Test
+  public void testGetDmWorldUpdatesSpilled() throws Exception {
+    insertUsers("User1", "User2", "User3");
+    GroupPrincipal dmWorld = new GroupPrincipal("dm_world", "NS_Local");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.dmWorldRebuildIntervalHours", 24,
+            "documentum.groupPushChunkBytes", 1));
+
+    // The rebuild still spills the members within the budget.
+    ImmutableSet<UserPrincipal> expected = ImmutableSet.of(
+        new UserPrincipal("User1", "NS"), new UserPrincipal("User2", "NS"),
+        new UserPrincipal("User3", "NS"));
+    List<String> messages = new ArrayList<>();
+    Logging.captureLogMessages(GroupSpillFile.class, "Spilling groups",
+        messages);
+    FeedTypeRecordingDocIdPusher pusher = new FeedTypeRecordingDocIdPusher();
+    adaptor.getDocIds(pusher);
+    assertEquals(expected, pusher.getGroupDefinitions().get(dmWorld));
+    assertFalse(messages.isEmpty());
+
+    // The members are also kept for the next traversal.
+    pusher = new FeedTypeRecordingDocIdPusher();
+    adaptor.getDocIds(pusher);
+    assertEquals(expected, pusher.getGroupDefinitions().get(dmWorld));
+  }
+
   @Test
   public void testGetGroupUpdatesAllNew() throws Exception {
     insertUsers("User1", "User2");
@@ -5221,6 +6501,115 @@ public class DocumentumAdaptorTest {
         new Checkpoint(FEB_1970, GROUP.pad("Group2")));
   }
 
+  @Test
+  public void testGetGroupUpdatesBatched() throws Exception {
+    insertUsers("User0", "User1", "User2", "User3", "User4");
+    insertModifiedGroup(JAN_1970, "Group3", "User3");
+    insertModifiedGroup(FEB_1970, "Group0", "User0", "User1");
+    insertModifiedGroup(FEB_1970, "Group2", "User2");
+    insertModifiedGroup(FEB_1970, "Group4", "User4");
+    insertModifiedGroup(MAR_1970, "Group1", "User1");
+
+    ImmutableMap<GroupPrincipal, ? extends Collection<? extends Principal>>
+        expected = ImmutableMap.of(
+            new GroupPrincipal("Group0", "NS_Local"),
+            ImmutableSet.of(new UserPrincipal("User0", "NS"),
+                new UserPrincipal("User1", "NS")),
+            new GroupPrincipal("Group1", "NS_Local"),
+            ImmutableSet.of(new UserPrincipal("User1", "NS")),
+            new GroupPrincipal("Group2", "NS_Local"),
+            ImmutableSet.of(new UserPrincipal("User2", "NS")),
+            new GroupPrincipal("Group4", "NS_Local"),
+            ImmutableSet.of(new UserPrincipal("User4", "NS")));
+
+    // Each page of groups is pushed separately. A full page is
+    // followed by another, possibly empty, page.
+    for (int batchSize = 1; batchSize <= expected.size() + 1; batchSize++) {
+      DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+          ImmutableMap.of("documentum.queryBatchSize", batchSize));
+      adaptor.modifiedGroupTraverser.setCheckpoint(
+          new Checkpoint(JAN_1970, GROUP.pad("Group3")));
+      FeedTypeRecordingDocIdPusher pusher =
+          new FeedTypeRecordingDocIdPusher();
+      adaptor.getModifiedDocIds(pusher);
+      assertEquals("batchSize: " + batchSize, expected,
+          pusher.getGroupDefinitions());
+      assertEquals("batchSize: " + batchSize,
+          expected.size() / batchSize + 1, pusher.feedTypes.size());
+      assertEquals(new Checkpoint(MAR_1970, GROUP.pad("Group1")),
+          adaptor.modifiedGroupTraverser.getCheckpoint());
+    }
+  }
+
+  @Test
+  public void testGetModifiedDocIdsTraverserThreads() throws Exception {
+    String folderId = FOLDER.pad("FFF1");
+    String folder = "/FFF1";
+    insertFolder(JAN_1970, folderId, folder);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder + "/aaa", folderId);
+    insertUsers("User1");
+    insertModifiedGroup(FEB_1970, "Group1", "User1");
+
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        ImmutableMap.of("documentum.src", folder,
+            "documentum.traverserThreads", 3));
+    adaptor.modifiedDocumentTraverser.setCheckpoint(
+        new Checkpoint(JAN_1970, folderId));
+    adaptor.modifiedGroupTraverser.setCheckpoint(
+        new Checkpoint(JAN_1970, "0"));
+    RecordingDocIdPusher pusher = new RecordingDocIdPusher();
+    adaptor.getModifiedDocIds(pusher);
+
+    assertEquals(makeExpectedDocIds(folder, "aaa"), pusher.getRecords());
+    assertEquals(
+        ImmutableMap.of(new GroupPrincipal("Group1", "NS_Local"),
+            ImmutableSet.of(new UserPrincipal("User1", "NS"))),
+        pusher.getGroupDefinitions());
+    assertEquals(new Checkpoint(FEB_1970, DOCUMENT.pad("aaa")),
+        adaptor.modifiedDocumentTraverser.getCheckpoint());
+    assertEquals(new Checkpoint(FEB_1970, GROUP.pad("Group1")),
+        adaptor.modifiedGroupTraverser.getCheckpoint());
+  }
+
+  @Test
+  public void testGetGroupUpdatesBatchedResumesAfterError()
+      throws Exception {
+    insertUsers("User0", "User1", "User2", "User3");
+    insertModifiedGroup(FEB_1970, "Group0", "User0");
+    insertModifiedGroup(FEB_1970, "Group1", "User1");
+    insertModifiedGroup(FEB_1970, "Group2", "User2");
+    insertModifiedGroup(MAR_1970, "Group3", "User3");
+
+    // The members of the first page are read, but the second page
+    // fails on the first row.
+    DfException expectedCause = new DfException("Expected page failure");
+    DocumentumAdaptor adaptor = getObjectUnderTestNamespaces(
+        new ExceptionalResultSetTestProxies("users_names, r_modify_date",
+            Iterators.forArray(Integer.MAX_VALUE, 0, Integer.MAX_VALUE),
+            expectedCause),
+        ImmutableMap.of("documentum.queryBatchSize", 2));
+    adaptor.modifiedGroupTraverser.setSleeper(NO_SLEEP);
+    checkModifiedGroupsPushed(adaptor, new Checkpoint(JAN_1970, "0"),
+        expectedCause,
+        ImmutableMap.of(new GroupPrincipal("Group0", "NS_Local"),
+            ImmutableSet.of(new UserPrincipal("User0", "NS")),
+            new GroupPrincipal("Group1", "NS_Local"),
+            ImmutableSet.of(new UserPrincipal("User1", "NS"))),
+        new Checkpoint(FEB_1970, GROUP.pad("Group1")));
+
+    // The next poll resumes from the end of the first page.
+    RecordingDocIdPusher pusher = new RecordingDocIdPusher();
+    adaptor.getModifiedDocIds(pusher);
+    assertEquals(
+        ImmutableMap.of(new GroupPrincipal("Group2", "NS_Local"),
+            ImmutableSet.of(new UserPrincipal("User2", "NS")),
+            new GroupPrincipal("Group3", "NS_Local"),
+            ImmutableSet.of(new UserPrincipal("User3", "NS"))),
+        pusher.getGroupDefinitions());
+    assertEquals(new Checkpoint(MAR_1970, GROUP.pad("Group3")),
+        adaptor.modifiedGroupTraverser.getCheckpoint());
+  }
+
   private void testGetGroupUpdatesExceptions(Iterator<Integer> failIterations,
       DfException expectedCause,
       Map<GroupPrincipal, ? extends Collection<? extends Principal>>
@@ -5510,6 +6899,97 @@ public class DocumentumAdaptorTest {
     testModifiedDocumentsQuery("", makeExpectedDocIds(folder, folder, "bbb"));
   }
 
+  @Test
+  public void testModifiedDocumentsQuery_queryBatchSize() throws Exception {
+    String folder = "/Cab0/FFF2";
+    String query = "SELECT i_chronicle_id, r_object_id, object_name, "
+        + "r_modify_date, "
+        + "DATETOSTRING_LOCAL(r_modify_date, ''yyyy-mm-dd hh:mi:ss'') "
+        + "AS r_modify_date_str "
+        + "FROM dm_sysobject "
+        + "WHERE FOLDER(''/Cab0'',descend) "
+        + "AND ((r_modify_date = DATE(''{0}'',''yyyy-mm-dd hh:mi:ss'') "
+        + "AND r_object_id > ''{1}'') "
+        + "OR (r_modify_date > DATE(''{0}'',''yyyy-mm-dd hh:mi:ss''))) "
+        + "ORDER BY r_modify_date, r_object_id";
+    insertCabinets("Cab0");
+    String folderId = FOLDER.pad("FFF2");
+    insertFolder(FEB_1970, folderId, folder);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder + "/aaa", folderId);
+    insertDocument(MAR_1970, DOCUMENT.pad("bbb"), folder + "/bbb", folderId);
+
+    checkModifiedDocIdsPushed(
+        ImmutableMap.of("documentum.modifiedDocumentsQuery", query,
+            "documentum.queryBatchSize", 1),
+        startPaths(folder),
+        new Checkpoint(JAN_1970, "0"),
+        makeExpectedDocIds(folder, "aaa", folder, "bbb"),
+        new Checkpoint(MAR_1970, DOCUMENT.pad("bbb")));
+  }
+
+  @Test
+  public void testModifiedDocumentsQuery_queryBatchSizeNoProgress()
+      throws Exception {
+    String folder = "/Cab0/FFF2";
+    // The UNION returns aaa on every page, so paging cannot advance.
+    String query = "SELECT i_chronicle_id, r_object_id, object_name, "
+        + "r_modify_date, "
+        + "DATETOSTRING_LOCAL(r_modify_date, ''yyyy-mm-dd hh:mi:ss'') "
+        + "AS r_modify_date_str "
+        + "FROM dm_sysobject "
+        + "WHERE r_object_id = ''" + DOCUMENT.pad("aaa") + "'' "
+        + "UNION "
+        + "SELECT i_chronicle_id, r_object_id, object_name, r_modify_date, "
+        + "DATETOSTRING_LOCAL(r_modify_date, ''yyyy-mm-dd hh:mi:ss'') "
+        + "AS r_modify_date_str "
+        + "FROM dm_sysobject "
+        + "WHERE r_modify_date > DATE(''{0}'',''yyyy-mm-dd hh:mi:ss'') "
+        + "ORDER BY r_modify_date, r_object_id";
+    insertCabinets("Cab0");
+    String folderId = FOLDER.pad("FFF2");
+    insertFolder(JAN_1970, folderId, folder);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder + "/aaa", folderId);
+    insertDocument(MAR_1970, DOCUMENT.pad("bbb"), folder + "/bbb", folderId);
+
+    checkModifiedDocIdsPushed(
+        ImmutableMap.of("documentum.modifiedDocumentsQuery", query,
+            "documentum.queryBatchSize", 1),
+        startPaths(folder),
+        new Checkpoint(FEB_1970, DOCUMENT.pad("aaa")),
+        makeExpectedDocIds(folder, "aaa", "bbb"),
+        new Checkpoint(MAR_1970, DOCUMENT.pad("bbb")));
+  }
+
+  @Test
+  public void testModifiedDocumentsQuery_queryBatchSizeUnordered()
+      throws Exception {
+    String folder = "/Cab0/FFF2";
+    // Paging this query would return bbb first and skip aaa.
+    String query = "SELECT i_chronicle_id, r_object_id, object_name, "
+        + "r_modify_date, "
+        + "DATETOSTRING_LOCAL(r_modify_date, ''yyyy-mm-dd hh:mi:ss'') "
+        + "AS r_modify_date_str "
+        + "FROM dm_sysobject "
+        + "WHERE FOLDER(''/Cab0'',descend) "
+        + "AND ((r_modify_date = DATE(''{0}'',''yyyy-mm-dd hh:mi:ss'') "
+        + "AND r_object_id > ''{1}'') "
+        + "OR (r_modify_date > DATE(''{0}'',''yyyy-mm-dd hh:mi:ss''))) "
+        + "ORDER BY r_object_id DESC";
+    insertCabinets("Cab0");
+    String folderId = FOLDER.pad("FFF2");
+    insertFolder(JAN_1970, folderId, folder);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder + "/aaa", folderId);
+    insertDocument(MAR_1970, DOCUMENT.pad("bbb"), folder + "/bbb", folderId);
+
+    checkModifiedDocIdsPushed(
+        ImmutableMap.of("documentum.modifiedDocumentsQuery", query,
+            "documentum.queryBatchSize", 1),
+        startPaths(folder),
+        new Checkpoint(JAN_1970, FOLDER.pad("FFF2")),
+        makeExpectedDocIds(folder, "bbb", "aaa"),
+        new Checkpoint(FEB_1970, DOCUMENT.pad("aaa")));
+  }
+
   @Test
   public void testModifiedDocumentsQuery_DQLError() throws Exception {
     String folder = "/Cab0/FFF2";
@@ -5621,6 +7101,312 @@ public class DocumentumAdaptorTest {
         new Checkpoint(FEB_1970, DOCUMENT.pad("bbb")));
   }
 
+  @Test
+  public void testModifiedDocumentsMultipleParents_cachedFolderPaths()
+      throws Exception {
+    String folder1Id = FOLDER.pad("FFF1");
+    String folder1 = "/FFF1";
+    insertFolder(EPOCH_1970, folder1Id, folder1);
+    String folder2Id = FOLDER.pad("FFF2");
+    String folder2 = "/FFF2";
+    insertFolder(EPOCH_1970, folder2Id, folder2);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder1 + "/aaa", folder1Id);
+    insertDocument(FEB_1970, DOCUMENT.pad("bbb"), folder1 + "/bbb", folder1Id,
+        folder2Id);
+
+    checkModifiedDocIdsPushed(
+        ImmutableMap.of("documentum.cacheFolderPaths", true),
+        startPaths(folder1, folder2),
+        new Checkpoint(JAN_1970, folder1Id),
+        new ImmutableList.Builder<Record>()
+           .addAll(makeExpectedDocIds(folder1, "aaa", "bbb"))
+           .addAll(makeExpectedDocIds(folder2, "bbb"))
+           .build(),
+        new Checkpoint(FEB_1970, DOCUMENT.pad("bbb")));
+  }
+
+  @Test
+  public void testModifiedDocuments_cachedFolderPathsMovedFolder()
+      throws Exception {
+    String folder1Id = FOLDER.pad("FFF1");
+    insertFolder(EPOCH_1970, folder1Id, "/FFF1");
+    String folder2Id = FOLDER.pad("FFF2");
+    insertFolder(EPOCH_1970, folder2Id, "/FFF1/FFF2");
+    insertFolder(EPOCH_1970, FOLDER.pad("FFF3"), "/FFF3");
+    String docId = DOCUMENT.pad("aaa");
+    insertDocument(FEB_1970, docId, "/FFF1/FFF2/aaa", folder2Id);
+
+    DocumentumAdaptor adaptor = getObjectUnderTest(
+        ImmutableMap.<String, Object>of(
+            "documentum.src", "/FFF1,/FFF3",
+            "documentum.cacheFolderPaths", true));
+    assertEquals(makeExpectedDocIds("/FFF1/FFF2", "aaa"),
+        getModifiedDocIdsPushed(adaptor, new Checkpoint(JAN_1970, folder1Id),
+            NO_EXCEPTION));
+
+    // Move FFF1 into FFF3. Only the moved folder gets a new r_modify_date.
+    executeUpdate(String.format("UPDATE dm_folder SET r_folder_path = "
+        + "'/FFF3/FFF1', r_modify_date = {ts '%s'} WHERE r_object_id = '%s'",
+        MAR_1970, folder1Id));
+    executeUpdate(String.format("UPDATE dm_folder SET r_folder_path = "
+        + "'/FFF3/FFF1/FFF2' WHERE r_object_id = '%s'", folder2Id));
+    executeUpdate(String.format("UPDATE dm_sysobject SET r_modify_date = "
+        + "{ts '%s'}, mock_object_path = '/FFF3/FFF1/FFF2/aaa' "
+        + "WHERE r_object_id = '%s'", MAR_1970, docId));
+
+    assertEquals(makeExpectedDocIds("/FFF3/FFF1/FFF2", "aaa"),
+        getModifiedDocIdsPushed(adaptor, new Checkpoint(FEB_1970, docId),
+            NO_EXCEPTION));
+  }
+
+  @Test
+  public void testModifiedDocuments_queryBatchSize() throws Exception {
+    String folderId = FOLDER.pad("FFF1");
+    String folder = "/FFF1";
+    insertFolder(JAN_1970, folderId, folder);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder + "/aaa", folderId);
+    insertDocument(FEB_1970, DOCUMENT.pad("bbb"), folder + "/bbb", folderId);
+    insertDocument(MAR_1970, DOCUMENT.pad("ccc"), folder + "/ccc", folderId);
+
+    checkModifiedDocIdsPushed(ImmutableMap.of("documentum.queryBatchSize", 2),
+        startPaths(folder),
+        new Checkpoint(JAN_1970, folderId),
+        makeExpectedDocIds(folder, "aaa", "bbb", "ccc"),
+        new Checkpoint(MAR_1970, DOCUMENT.pad("ccc")));
+  }
+
+  @Test
+  public void testModifiedDocuments_queryBatchSizeResumesAfterError()
+      throws Exception {
+    String folderId = FOLDER.pad("FFF1");
+    String folder = "/FFF1";
+    insertFolder(JAN_1970, folderId, folder);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder + "/aaa", folderId);
+    insertDocument(FEB_1970, DOCUMENT.pad("bbb"), folder + "/bbb", folderId);
+    insertDocument(MAR_1970, DOCUMENT.pad("ccc"), folder + "/ccc", folderId);
+
+    // The first page is pushed, but the second page fails on the
+    // first row.
+    DfException expectedCause = new DfException("Expected page failure");
+    DocumentumAdaptor adaptor = getObjectUnderTest(
+        new ExceptionalResultSetTestProxies(
+            "AS r_modify_date_str FROM dm_sysobject",
+            Iterators.forArray(Integer.MAX_VALUE, 0, Integer.MAX_VALUE),
+            expectedCause),
+        ImmutableMap.of("documentum.src", folder,
+            "documentum.queryBatchSize", 2));
+    adaptor.modifiedDocumentTraverser.setSleeper(NO_SLEEP);
+    assertEquals(makeExpectedDocIds(folder, "aaa", "bbb"),
+        getModifiedDocIdsPushed(adaptor, new Checkpoint(JAN_1970, folderId),
+            expectedCause));
+    assertEquals(new Checkpoint(FEB_1970, DOCUMENT.pad("bbb")),
+        adaptor.modifiedDocumentTraverser.getCheckpoint());
+
+    // The next poll resumes from the end of the first page.
+    assertEquals(makeExpectedDocIds(folder, "ccc"),
+        getModifiedDocIdsPushed(adaptor,
+            adaptor.modifiedDocumentTraverser.getCheckpoint(),
+            NO_EXCEPTION));
+    assertEquals(new Checkpoint(MAR_1970, DOCUMENT.pad("ccc")),
+        adaptor.modifiedDocumentTraverser.getCheckpoint());
+  }
+
+  @Test
+  public void testModifiedDocuments_adaptiveQueryBatchSize()
+      throws Exception {
+    String folderId = FOLDER.pad("FFF1");
+    String folder = "/FFF1";
+    insertFolder(JAN_1970, folderId, folder);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder + "/aaa", folderId);
+    insertDocument(FEB_1970, DOCUMENT.pad("bbb"), folder + "/bbb", folderId);
+    insertDocument(FEB_1970, DOCUMENT.pad("ccc"), folder + "/ccc", folderId);
+    insertDocument(MAR_1970, DOCUMENT.pad("ddd"), folder + "/ddd", folderId);
+    insertDocument(MAR_1970, DOCUMENT.pad("eee"), folder + "/eee", folderId);
+
+    // The pages are 1, 2 and 3 documents, growing after each full page.
+    DocumentumAdaptor adaptor = getObjectUnderTest(
+        new ImmutableMap.Builder<String, Object>()
+        .put("documentum.src", folder)
+        .put("documentum.queryBatchSize", 1)
+        .put("documentum.adaptiveQueryBatchSize", true)
+        .put("documentum.minQueryBatchSize", 1)
+        .put("documentum.maxQueryBatchSize", 10)
+        .put("documentum.queryBatchTargetSeconds", 3600)
+        .build());
+    assertEquals(
+        makeExpectedDocIds(folder, "aaa", "bbb", "ccc", "ddd", "eee"),
+        getModifiedDocIdsPushed(adaptor, new Checkpoint(JAN_1970, folderId),
+            NO_EXCEPTION));
+    assertEquals(new Checkpoint(MAR_1970, DOCUMENT.pad("eee")),
+        adaptor.modifiedDocumentTraverser.getCheckpoint());
+    assertEquals(3,
+        adaptor.modifiedDocumentTraverser.getAdaptiveBatchSize().get());
+  }
+
+  @Test
+  public void testModifiedDocuments_adaptiveQueryBatchSizeShrinksOnError()
+      throws Exception {
+    String folderId = FOLDER.pad("FFF1");
+    String folder = "/FFF1";
+    insertFolder(JAN_1970, folderId, folder);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder + "/aaa", folderId);
+    insertDocument(FEB_1970, DOCUMENT.pad("bbb"), folder + "/bbb", folderId);
+    insertDocument(MAR_1970, DOCUMENT.pad("ccc"), folder + "/ccc", folderId);
+
+    // The first page fails on the first row, which halves the size.
+    DfException expectedCause = new DfException("Expected page failure");
+    DocumentumAdaptor adaptor = getObjectUnderTest(
+        new ExceptionalResultSetTestProxies(
+            "AS r_modify_date_str FROM dm_sysobject",
+            Iterators.forArray(0, Integer.MAX_VALUE, Integer.MAX_VALUE),
+            expectedCause),
+        new ImmutableMap.Builder<String, Object>()
+        .put("documentum.src", folder)
+        .put("documentum.queryBatchSize", 4)
+        .put("documentum.adaptiveQueryBatchSize", true)
+        .put("documentum.minQueryBatchSize", 1)
+        .put("documentum.maxQueryBatchSize", 10)
+        .put("documentum.queryBatchTargetSeconds", 3600)
+        .build());
+    adaptor.modifiedDocumentTraverser.setSleeper(NO_SLEEP);
+    assertEquals(makeExpectedDocIds(folder),
+        getModifiedDocIdsPushed(adaptor, new Checkpoint(JAN_1970, folderId),
+            expectedCause));
+    assertEquals(2,
+        adaptor.modifiedDocumentTraverser.getAdaptiveBatchSize().get());
+
+    // The next poll reads a full page of 2, and then grows to 3.
+    assertEquals(makeExpectedDocIds(folder, "aaa", "bbb", "ccc"),
+        getModifiedDocIdsPushed(adaptor,
+            adaptor.modifiedDocumentTraverser.getCheckpoint(),
+            NO_EXCEPTION));
+    assertEquals(3,
+        adaptor.modifiedDocumentTraverser.getAdaptiveBatchSize().get());
+  }
+
+  @Test(expected = InvalidConfigurationException.class)
+  public void testAdaptiveQueryBatchSize_noQueryBatchSize() throws Exception {
+    getObjectUnderTest(
+        ImmutableMap.of("documentum.adaptiveQueryBatchSize", "true"));
+  }
+
+  @Test(expected = InvalidConfigurationException.class)
+  public void testAdaptiveQueryBatchSize_invalidBounds() throws Exception {
+    getObjectUnderTest(
+        ImmutableMap.of("documentum.queryBatchSize", "10",
+            "documentum.adaptiveQueryBatchSize", "true",
+            "documentum.minQueryBatchSize", "100",
+            "documentum.maxQueryBatchSize", "10"));
+  }
+
+  @Test
+  public void testModifiedDocuments_debounce() throws Exception {
+    String folderId = FOLDER.pad("FFF1");
+    String folder = "/FFF1";
+    insertFolder(JAN_1970, folderId, folder);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder + "/aaa", folderId);
+
+    // The document is held for the quiet period, but the checkpoint
+    // moves past it.
+    DocumentumAdaptor adaptor = getObjectUnderTest(
+        ImmutableMap.of("documentum.src", folder,
+            "documentum.debounceQuietSeconds", 3600));
+    assertEquals(ImmutableList.of(),
+        getModifiedDocIdsPushed(adaptor, new Checkpoint(JAN_1970, folderId),
+            NO_EXCEPTION));
+    assertEquals(new Checkpoint(FEB_1970, DOCUMENT.pad("aaa")),
+        adaptor.modifiedDocumentTraverser.getCheckpoint());
+    assertEquals(1, adaptor.getDocumentDebouncer().getPendingCount());
+
+    // Another change to the document is merged into the held one.
+    executeUpdate(String.format("UPDATE dm_sysobject SET r_modify_date = "
+        + "{ts '%s'} WHERE r_object_id = '%s'", MAR_1970, DOCUMENT.pad("aaa")));
+    assertEquals(ImmutableList.of(),
+        getModifiedDocIdsPushed(adaptor,
+            adaptor.modifiedDocumentTraverser.getCheckpoint(), NO_EXCEPTION));
+    assertEquals(1, adaptor.getDocumentDebouncer().getPendingCount());
+    assertEquals(1, adaptor.getDocumentDebouncer().getSuppressedCount());
+  }
+
+  @Test
+  public void testModifiedDocuments_debounceSavedCheckpoint()
+      throws Exception {
+    String folderId = FOLDER.pad("FFF1");
+    String folder = "/FFF1";
+    insertFolder(JAN_1970, folderId, folder);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder + "/aaa", folderId);
+    File checkpointFile = new File(temporaryFolder.getRoot(), "checkpoints");
+
+    // The saved checkpoint does not move past the held document.
+    DocumentumAdaptor adaptor = getObjectUnderTest(
+        ImmutableMap.of("documentum.src", folder,
+            "documentum.checkpointFile", checkpointFile.getPath(),
+            "documentum.debounceQuietSeconds", 3600));
+    assertEquals(ImmutableList.of(),
+        getModifiedDocIdsPushed(adaptor, new Checkpoint(JAN_1970, folderId),
+            NO_EXCEPTION));
+    assertEquals(new Checkpoint(FEB_1970, DOCUMENT.pad("aaa")),
+        adaptor.modifiedDocumentTraverser.getCheckpoint());
+    CheckpointStore store = new CheckpointStore(checkpointFile);
+    store.load();
+    assertEquals(new Checkpoint(JAN_1970, folderId),
+        store.get("modifiedDocuments"));
+
+    // A restarted adaptor reads the held document again.
+    adaptor = getObjectUnderTest(
+        ImmutableMap.of("documentum.src", folder,
+            "documentum.checkpointFile", checkpointFile.getPath()));
+    RecordingDocIdPusher pusher = new RecordingDocIdPusher();
+    adaptor.getModifiedDocIds(pusher);
+    assertEquals(makeExpectedDocIds(folder, "aaa"), pusher.getRecords());
+    store.load();
+    assertEquals(new Checkpoint(FEB_1970, DOCUMENT.pad("aaa")),
+        store.get("modifiedDocuments"));
+  }
+
+  @Test
+  public void testUpdatedPermissions_debouncedDocAndPermissions()
+      throws Exception {
+    Checkpoint docCheckpoint =
+        new Checkpoint(getNowPlusMinutes(-5), AUDITTRAIL.pad("125"));
+    String dateStr = getNowPlusMinutes(5);
+    insertSysObject(dateStr, DOCUMENT.pad("aaa"), "aaa",
+        START_PATH + "/aaa", "dm_document", START_PATH_ID);
+    insertAuditTrailAclEvent(dateStr, "123", DOCUMENT.pad("aaa"));
+
+    // The held document is not marked as pushed, so the permissions
+    // change still pushes it.
+    DocumentumAdaptor adaptor = getObjectUnderTest(
+        ImmutableMap.of("documentum.debounceQuietSeconds", 3600));
+    adaptor.modifiedDocumentTraverser.setCheckpoint(docCheckpoint);
+    adaptor.modifiedPermissionsTraverser.setCheckpoint(
+        Checkpoint.incremental());
+    RecordingDocIdPusher pusher = new RecordingDocIdPusher();
+    adaptor.getModifiedDocIds(pusher);
+    assertEquals(makeExpectedDocIds(START_PATH, "aaa"), pusher.getRecords());
+    assertEquals(1, adaptor.getDocumentDebouncer().getPendingCount());
+  }
+
+  @Test
+  public void testModifiedDocuments_debounceMaxPending() throws Exception {
+    String folderId = FOLDER.pad("FFF1");
+    String folder = "/FFF1";
+    insertFolder(JAN_1970, folderId, folder);
+    insertDocument(FEB_1970, DOCUMENT.pad("aaa"), folder + "/aaa", folderId);
+    insertDocument(MAR_1970, DOCUMENT.pad("bbb"), folder + "/bbb", folderId);
+
+    // Only one document can be held, so the first is pushed early.
+    DocumentumAdaptor adaptor = getObjectUnderTest(
+        ImmutableMap.of("documentum.src", folder,
+            "documentum.debounceQuietSeconds", 3600,
+            "documentum.debounceMaxPending", 1));
+    assertEquals(makeExpectedDocIds(folder, "aaa"),
+        getModifiedDocIdsPushed(adaptor, new Checkpoint(JAN_1970, folderId),
+            NO_EXCEPTION));
+    assertEquals(1, adaptor.getDocumentDebouncer().getPendingCount());
+    assertEquals(1, adaptor.getDocumentDebouncer().getForcedCount());
+  }
+
   @Test
   public void testModifiedDocumentsMultipleStartPaths() throws Exception {
     String folder1Id = FOLDER.pad("FFF1");
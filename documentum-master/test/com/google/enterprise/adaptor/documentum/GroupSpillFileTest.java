@@ -0,0 +1,122 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.enterprise.adaptor.GroupPrincipal;
+import com.google.enterprise.adaptor.Principal;
+import com.google.enterprise.adaptor.UserPrincipal;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/** Unit tests for {@link GroupSpillFile}. */
+public class GroupSpillFileTest {
+  private final GroupPrincipal group1 = new GroupPrincipal("Group1", "NS");
+  private final GroupPrincipal group2 = new GroupPrincipal("Group2", "NS");
+  private final GroupPrincipal group3 = new GroupPrincipal("Group3", "NS");
+  private final Principal user1 = new UserPrincipal("User1", "NS");
+  private final Principal user2 = new UserPrincipal("User2", "NS");
+
+  @Test
+  public void testGetGroups() throws IOException {
+    try (GroupSpillFile spillFile = new GroupSpillFile()) {
+      assertTrue(spillFile.isEmpty());
+      spillFile.write(ImmutableMap.of(group1, ImmutableSet.of(user1, group2),
+          group2, ImmutableSet.<Principal>of()));
+      spillFile.write(ImmutableMap.of(group1, ImmutableSet.of(user2)));
+      assertFalse(spillFile.isEmpty());
+
+      Map<GroupPrincipal, Collection<Principal>> groups = spillFile.getGroups(
+          ImmutableMap.of(group3, ImmutableSet.of(user2)));
+      assertEquals(3, groups.size());
+      assertEquals(ImmutableList.of(group1, group2, group3),
+          ImmutableList.copyOf(groups.keySet()));
+      assertEquals(ImmutableList.of(user1, group2, user2),
+          ImmutableList.copyOf(groups.get(group1)));
+      assertEquals(3, groups.get(group1).size());
+      assertTrue(groups.get(group2).isEmpty());
+      assertEquals(ImmutableSet.of(user2), groups.get(group3));
+      assertNull(groups.get(new GroupPrincipal("Group4", "NS")));
+      assertTrue(groups.containsKey(group3));
+    }
+  }
+
+  @Test
+  public void testGetChunks() throws IOException {
+    try (GroupSpillFile spillFile = new GroupSpillFile()) {
+      spillFile.write(ImmutableMap.of(group1, ImmutableSet.of(user1)));
+      spillFile.write(ImmutableMap.<GroupPrincipal, Collection<Principal>>of());
+      spillFile.write(ImmutableMap.of(group2, ImmutableSet.of(user1, user2),
+          group3, ImmutableSet.of(group1)));
+
+      List<Map<GroupPrincipal, Collection<Principal>>> chunks =
+          ImmutableList.copyOf(spillFile.getChunks());
+      assertEquals(2, chunks.size());
+      assertEquals(ImmutableMap.of(group1, ImmutableList.of(user1)),
+          chunks.get(0));
+      assertEquals(ImmutableMap.of(group2, ImmutableList.of(user1, user2),
+          group3, ImmutableList.of(group1)), chunks.get(1));
+      assertTrue(Iterables.getOnlyElement(chunks.get(1).get(group3))
+          .isGroup());
+    }
+  }
+
+  @Test
+  public void testGetChunks_groupInSeveralChunks() throws IOException {
+    try (GroupSpillFile spillFile = new GroupSpillFile()) {
+      spillFile.write(ImmutableMap.of(group1, ImmutableSet.of(user1)));
+      spillFile.write(ImmutableMap.of(group1, ImmutableSet.of(user2)));
+      spillFile.write(ImmutableMap.of(group2, ImmutableSet.of(user2)));
+
+      List<Map<GroupPrincipal, Collection<Principal>>> chunks =
+          ImmutableList.copyOf(spillFile.getChunks());
+      assertEquals(2, chunks.size());
+      assertEquals(ImmutableMap.of(group1, ImmutableList.of(user1, user2)),
+          chunks.get(0));
+      assertEquals(ImmutableMap.of(group2, ImmutableList.of(user2)),
+          chunks.get(1));
+    }
+  }
+
+  @Test
+  public void testWriteTo() throws IOException {
+    try (GroupSpillFile source = new GroupSpillFile();
+        GroupSpillFile target = new GroupSpillFile()) {
+      source.write(ImmutableMap.of(group1, ImmutableSet.of(user1)));
+      source.write(ImmutableMap.of(group1, ImmutableSet.of(user2)));
+      target.write(ImmutableMap.of(group2, ImmutableSet.of(group1)));
+      source.writeTo(target);
+
+      Map<GroupPrincipal, Collection<Principal>> groups = target.getGroups(
+          ImmutableMap.<GroupPrincipal, Collection<Principal>>of());
+      assertEquals(ImmutableList.of(group2, group1),
+          ImmutableList.copyOf(groups.keySet()));
+      assertEquals(ImmutableList.of(user1, user2),
+          ImmutableList.copyOf(groups.get(group1)));
+    }
+  }
+}
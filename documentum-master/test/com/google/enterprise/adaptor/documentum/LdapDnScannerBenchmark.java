@@ -0,0 +1,71 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import java.util.Objects;
+import java.util.Random;
+
+import javax.naming.InvalidNameException;
+
+/**
+ * Compares the time taken by {@link LdapDnScanner} and by parsing each
+ * DN into an {@code LdapName}. This is not run as part of the tests.
+ * Run it by hand with the test classpath:
+ *
+ * <pre>
+ * java com.google.enterprise.adaptor.documentum.LdapDnScannerBenchmark \
+ *     [dns] [suffixes] [iterations]
+ * </pre>
+ */
+public class LdapDnScannerBenchmark {
+  public static void main(String[] args) throws InvalidNameException {
+    int dnCount = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+    int suffixCount = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+    int iterations = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+
+    Random random = new Random(42);
+    String[] dns = new String[dnCount];
+    for (int i = 0; i < dnCount; i++) {
+      int suffix = random.nextInt(suffixCount);
+      dns[i] = "uid=user" + i + ",ou=dept" + random.nextInt(50)
+          + ",dc=corp" + suffix + ",dc=example,dc=com";
+    }
+
+    for (int iteration = 0; iteration < iterations; iteration++) {
+      long start = System.nanoTime();
+      String[] ldapNameDomains = new String[dnCount];
+      for (int i = 0; i < dnCount; i++) {
+        ldapNameDomains[i] = LdapDnScanner.getFirstDomainFromLdapName(dns[i]);
+      }
+      long ldapNameTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      String[] scannerDomains = new String[dnCount];
+      for (int i = 0; i < dnCount; i++) {
+        scannerDomains[i] = LdapDnScanner.getFirstDomain(dns[i]);
+      }
+      long scannerTime = System.nanoTime() - start;
+
+      for (int i = 0; i < dnCount; i++) {
+        if (!Objects.equals(ldapNameDomains[i], scannerDomains[i])) {
+          throw new AssertionError(dns[i] + ": " + ldapNameDomains[i]
+              + " != " + scannerDomains[i]);
+        }
+      }
+      System.out.printf("LdapName: %d ns/DN, scanner: %d ns/DN%n",
+          ldapNameTime / dnCount, scannerTime / dnCount);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import javax.naming.InvalidNameException;
+import org.junit.Test;
+
+/** Unit tests for {@link LdapDnScanner}. */
+public class LdapDnScannerTest {
+  @Test
+  public void testGetFirstDomain() throws InvalidNameException {
+    assertEquals("corp",
+        LdapDnScanner.getFirstDomain("uid=xyz,ou=eng,dc=corp,dc=com"));
+    // The memoized suffix gives the same answer.
+    assertEquals("corp",
+        LdapDnScanner.getFirstDomain("uid=abc,ou=eng,dc=corp,dc=com"));
+  }
+
+  @Test
+  public void testGetFirstDomain_noDc() throws InvalidNameException {
+    assertNull(LdapDnScanner.getFirstDomain("cn=Jane Doe,ou=eng"));
+    assertNull(LdapDnScanner.getFirstDomain(""));
+  }
+
+  @Test
+  public void testGetFirstDomain_invalid() {
+    for (String dn : new String[] {"is this a DN?", "cn=a, ", "cn=a,,dc=com",
+        "dc=com,cn", "=a,dc=com"}) {
+      try {
+        LdapDnScanner.getFirstDomain(dn);
+        fail("Expected an exception for " + dn);
+      } catch (InvalidNameException expected) {
+      }
+    }
+  }
+
+  /** Checks that the scanner matches the full parser. */
+  @Test
+  public void testGetFirstDomain_matchesLdapName()
+      throws InvalidNameException {
+    String[] dns = {
+        "cn=Jane Doe,ou=eng,dc=example,dc=com",
+        "CN=Jane Doe,OU=Eng,DC=Example,DC=com",
+        " cn = Jane Doe , dc = my corp , dc = com ",
+        "dc=corp.example,dc=com",
+        "cn=User1,dc=sub,ou=x,dc=example,dc=com",
+        "dc=",
+        "dcx=a,dc=b",
+        "2.5.4.3=Jane,0.9.2342.19200300.100.1.25=example",
+        "cn=Doe\\, Jane,dc=example,dc=com",
+        "cn=\"Doe, Jane\",dc=example,dc=com",
+        "cn=Jane+uid=jd,dc=example,dc=com",
+        "dc=a\\2cb,dc=com",
+        "cn=Jane;dc=example;dc=com",
+        "cn=#04024869,dc=example",
+    };
+    for (String dn : dns) {
+      assertEquals(dn, LdapDnScanner.getFirstDomainFromLdapName(dn),
+          LdapDnScanner.getFirstDomain(dn));
+    }
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.enterprise.adaptor.GroupPrincipal;
+import com.google.enterprise.adaptor.Principal;
+import com.google.enterprise.adaptor.UserPrincipal;
+
+import java.util.Set;
+import org.junit.Test;
+
+/** Unit tests for {@link PrincipalTable}. */
+public class PrincipalTableTest {
+  private final Principal user1 = new UserPrincipal("User1", "NS");
+  private final Principal user2 = new UserPrincipal("User2", "NS");
+  private final Principal group1 = new GroupPrincipal("Group1", "NS_Local");
+
+  @Test
+  public void testGetId() {
+    PrincipalTable table = new PrincipalTable();
+    int id1 = table.getId(user1);
+    int id2 = table.getId(user2);
+    assertEquals(id1, table.getId(new UserPrincipal("User1", "NS")));
+    assertFalse(id1 == id2);
+    assertEquals(user2, table.getPrincipal(id2));
+    assertEquals(2, table.size());
+  }
+
+  @Test
+  public void testBuildEmptySet() {
+    PrincipalTable table = new PrincipalTable();
+    PrincipalTable.SetBuilder builder = table.newSetBuilder();
+    assertTrue(builder.isEmpty());
+    assertEquals(ImmutableSet.of(), builder.build());
+  }
+
+  @Test
+  public void testBuildSet() {
+    PrincipalTable table = new PrincipalTable();
+    table.getId(group1);
+    Set<Principal> set = table.newSetBuilder()
+        .add(user2).add(group1).add(user1).add(user2).build();
+    assertEquals(ImmutableSet.of(user1, user2, group1), set);
+    assertEquals(ImmutableSet.of(user1, user2, group1).hashCode(),
+        set.hashCode());
+    assertTrue(set.contains(new UserPrincipal("User1", "NS")));
+    assertFalse(set.contains(new UserPrincipal("User3", "NS")));
+    assertFalse(set.contains("User1"));
+  }
+
+  @Test
+  public void testBuildLargeSet() {
+    PrincipalTable table = new PrincipalTable();
+    PrincipalTable.SetBuilder builder = table.newSetBuilder();
+    ImmutableSet.Builder<Principal> expected = ImmutableSet.builder();
+    for (int i = 0; i < 100; i++) {
+      Principal principal = new UserPrincipal("User" + i, "NS");
+      builder.add(principal);
+      expected.add(principal);
+    }
+    assertEquals(expected.build(), builder.build());
+  }
+}
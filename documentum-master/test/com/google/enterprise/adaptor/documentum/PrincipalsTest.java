@@ -16,11 +16,16 @@ package com.google.enterprise.adaptor.documentum;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.cache.CacheStats;
+import com.google.enterprise.adaptor.UserPrincipal;
 
 import com.documentum.fc.client.IDfSession;
 import com.documentum.fc.client.IDfUser;
 import com.documentum.fc.client.impl.typeddata.NoSuchAttributeException;
 import com.documentum.fc.common.DfException;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -34,6 +39,11 @@ public class PrincipalsTest {
     session = Proxies.newProxyInstance(IDfSession.class, new SessionMock());
   }
 
+  @After
+  public void tearDown() {
+    Principals.configureCache(100000, 0, 1440, 60);
+  }
+
   @Test
   public void testGetPrincipal_builtin() throws DfException {
     Principals principals = new Principals(session, "local", "global", null);
@@ -101,6 +111,39 @@ public class PrincipalsTest {
         .getName());
   }
 
+  @Test
+  public void testCacheStats() throws DfException {
+    Principals.configureCache(100000, 0, 1440, 60);
+    Principals principals = new Principals(session, "local", "global", null);
+    principals.getPrincipal("user:janedoe:ldap::", false);
+    principals.getPrincipal("user:janedoe:ldap::", false);
+    principals.getPrincipal("nobody", false);
+    principals.getPrincipal("nobody", false);
+    CacheStats stats = Principals.getCacheStats();
+    assertEquals(2, stats.hitCount());
+    assertEquals(2, stats.missCount());
+    assertEquals(2, stats.loadCount());
+    assertEquals(0, stats.evictionCount());
+    assertEquals(2, Principals.getCacheSize());
+  }
+
+  @Test
+  public void testCacheMaxBytes() throws DfException {
+    Principals.configureCache(100000, 1000, 1440, 60);
+    Principals principals = new Principals(session, "local", "global", null);
+    for (int i = 0; i < 20; i++) {
+      principals.getPrincipal("user:user" + i + ":ldap::", false);
+    }
+    assertTrue(Principals.getCacheStats().evictionCount() > 0);
+    assertTrue(Principals.getCacheSize() < 20);
+  }
+
+  @Test
+  public void testEstimateSize() {
+    assertEquals(96 + 2 * (5 + 4 + 2),
+        Principals.estimateSize("user1", new UserPrincipal("jane", "NS")));
+  }
+
   private static class SessionMock {
     public Object getObjectByQualification(String query) throws DfException {
       if (query.contains("user:")) {
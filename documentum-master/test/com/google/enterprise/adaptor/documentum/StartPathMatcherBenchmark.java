@@ -0,0 +1,76 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the time taken by {@link StartPathMatcher} and by a loop
+ * over the start paths. This is not run as part of the tests. Run it
+ * by hand with the test classpath:
+ *
+ * <pre>
+ * java com.google.enterprise.adaptor.documentum.StartPathMatcherBenchmark \
+ *     [startPaths] [paths] [iterations]
+ * </pre>
+ */
+public class StartPathMatcherBenchmark {
+  public static void main(String[] args) {
+    int startPathCount = (args.length > 0) ? Integer.parseInt(args[0]) : 600;
+    int pathCount = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+    int iterations = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+
+    Random random = new Random(42);
+    List<String> startPaths = new ArrayList<String>();
+    for (int i = 0; i < startPathCount; i++) {
+      startPaths.add(StartPathMatcherTest.randomPath(random) + "/S" + i);
+    }
+    String[] paths = new String[pathCount];
+    for (int i = 0; i < pathCount; i++) {
+      paths[i] = (i % 2 == 0)
+          ? startPaths.get(random.nextInt(startPathCount)) + "/doc"
+          : StartPathMatcherTest.randomPath(random) + "/doc";
+    }
+    StartPathMatcher matcher = new StartPathMatcher(startPaths);
+
+    for (int iteration = 0; iteration < iterations; iteration++) {
+      long start = System.nanoTime();
+      int loopCount = 0;
+      for (String path : paths) {
+        if (StartPathMatcherTest.isUnderStartPath(path, startPaths)) {
+          loopCount++;
+        }
+      }
+      long loopTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int matcherCount = 0;
+      for (String path : paths) {
+        if (matcher.matches(path)) {
+          matcherCount++;
+        }
+      }
+      long matcherTime = System.nanoTime() - start;
+
+      if (loopCount != matcherCount) {
+        throw new AssertionError(loopCount + " != " + matcherCount);
+      }
+      System.out.printf("loop: %d ns/path, matcher: %d ns/path%n",
+          loopTime / pathCount, matcherTime / pathCount);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+// Copyright 2017 Google Inc. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.enterprise.adaptor.documentum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Unit tests for {@link StartPathMatcher}. */
+public class StartPathMatcherTest {
+  @Test
+  public void testEmpty() {
+    StartPathMatcher matcher =
+        new StartPathMatcher(ImmutableList.<String>of());
+    assertFalse(matcher.matches("/"));
+    assertFalse(matcher.matches("/Folder1"));
+  }
+
+  @Test
+  public void testRoot() {
+    StartPathMatcher matcher = new StartPathMatcher(ImmutableList.of("/"));
+    assertTrue(matcher.matches("/"));
+    assertTrue(matcher.matches("/Folder1"));
+    assertTrue(matcher.matches("/Folder1/Folder2/doc"));
+  }
+
+  @Test
+  public void testStartPaths() {
+    StartPathMatcher matcher = new StartPathMatcher(
+        ImmutableList.of("/Folder1/Folder2", "/Folder3", "/Folder1/Fold"));
+    assertFalse(matcher.matches("/"));
+    assertFalse(matcher.matches("/Folder1"));
+    assertTrue(matcher.matches("/Folder1/Folder2"));
+    assertTrue(matcher.matches("/Folder1/Folder2/"));
+    assertTrue(matcher.matches("/Folder1/Folder2/doc"));
+    assertFalse(matcher.matches("/Folder1/Folder22"));
+    assertFalse(matcher.matches("/Folder1/Folder"));
+    assertTrue(matcher.matches("/Folder1/Fold/doc"));
+    assertTrue(matcher.matches("/Folder3"));
+    assertTrue(matcher.matches("/Folder3/Folder4/doc"));
+    assertFalse(matcher.matches("/Folder"));
+    assertFalse(matcher.matches("/Folder4/Folder3"));
+  }
+
+  @Test
+  public void testNestedStartPaths() {
+    StartPathMatcher matcher = new StartPathMatcher(
+        ImmutableList.of("/Folder1/Folder2", "/Folder1"));
+    assertTrue(matcher.matches("/Folder1"));
+    assertTrue(matcher.matches("/Folder1/doc"));
+    assertTrue(matcher.matches("/Folder1/Folder2/doc"));
+  }
+
+  @Test
+  public void testRegion() {
+    StartPathMatcher matcher =
+        new StartPathMatcher(ImmutableList.of("/Folder1/Folder2"));
+    String id = "Folder1/Folder2/doc:0901081f80001001";
+    assertTrue(matcher.matches(id, 0, id.length() - 17));
+    assertTrue(matcher.matches(id, 0, "Folder1/Folder2".length()));
+    assertFalse(matcher.matches(id, 0, "Folder1/Fold".length()));
+    assertFalse(matcher.matches(id, 0, "Folder1".length()));
+  }
+
+  /** Compares the matcher to a loop over many start paths. */
+  @Test
+  public void testManyStartPaths() {
+    Random random = new Random(42);
+    List<String> startPaths = new ArrayList<String>();
+    for (int i = 0; i < 600; i++) {
+      startPaths.add(randomPath(random));
+    }
+    StartPathMatcher matcher = new StartPathMatcher(startPaths);
+    for (int i = 0; i < 10000; i++) {
+      String path = randomPath(random) + "/doc" + random.nextInt(3);
+      assertEquals(path, isUnderStartPath(path, startPaths),
+          matcher.matches(path));
+    }
+    for (String startPath : startPaths) {
+      assertTrue(startPath, matcher.matches(startPath));
+    }
+  }
+
+  /** Generates a path of up to four segments from a small alphabet. */
+  static String randomPath(Random random) {
+    StringBuilder path = new StringBuilder();
+    int depth = 1 + random.nextInt(4);
+    for (int i = 0; i < depth; i++) {
+      path.append("/F").append(random.nextInt(8));
+    }
+    return path.toString();
+  }
+
+  /** The former implementation, which loops over the start paths. */
+  static boolean isUnderStartPath(String path, List<String> startPaths) {
+    for (String startPath : startPaths) {
+      if (startPath.equals("/")) {
+        return true;
+      }
+      if (startPath.equals(path) || path.startsWith(startPath + "/")) {
+        return true;
+      }
+    }
+    return false;
+  }
+}